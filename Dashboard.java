@@ -20,6 +20,7 @@
  * - Header with user info and logout
  * - Section panels for different features
  * - Status bar showing current user and role
+ * - Database status (shown while the database is unavailable)
  * - Responsive layout with GridBagLayout
  * 
  * Window Management:
@@ -34,6 +35,9 @@
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.function.Consumer;
+import db.CircuitBreaker;
+import db.DBConnection;
 import gui.TaskManager;
 import gui.PomodoroTimer;
 import gui.ScheduleManager;
@@ -45,6 +49,9 @@ public class Dashboard extends JFrame {
     private final String role;
     private final String branch;
     private final Integer semester;
+    private JLabel dbStatusLabel;
+    private final Consumer<CircuitBreaker.State> healthListener =
+        state -> SwingUtilities.invokeLater(() -> showDatabaseState(state));
 
     public Dashboard(String userEmail, String role, String branch, Integer semester) {
         this.userEmail = userEmail;
@@ -171,6 +178,14 @@ public class Dashboard extends JFrame {
         statusLabel.setFont(Theme.UI_FONT);
         statusLabel.setForeground(Theme.TEXT_WHITE);
         statusBar.add(statusLabel, BorderLayout.WEST);
+
+        // Degraded-mode indicator, driven by the database circuit breaker
+        dbStatusLabel = new JLabel();
+        dbStatusLabel.setFont(Theme.UI_FONT);
+        dbStatusLabel.setForeground(Theme.TEXT_WHITE);
+        statusBar.add(dbStatusLabel, BorderLayout.EAST);
+        showDatabaseState(DBConnection.getCircuitState());
+        DBConnection.addHealthListener(healthListener);
         mainPanel.add(statusBar, BorderLayout.SOUTH);
 
         add(mainPanel);
@@ -193,7 +208,21 @@ public class Dashboard extends JFrame {
         setVisible(true);
     }
 
+    @Override
+    public void dispose() {
+        DBConnection.removeHealthListener(healthListener);
+        super.dispose();
+    }
+
     // ------------------- Helper Methods -------------------
+    private void showDatabaseState(CircuitBreaker.State state) {
+        switch (state) {
+            case OPEN -> dbStatusLabel.setText("⚠ Database unavailable - retrying");
+            case HALF_OPEN -> dbStatusLabel.setText("⏳ Reconnecting to database...");
+            default -> dbStatusLabel.setText("");
+        }
+    }
+
     private JPanel createSectionPanel(String title, String sectionType) {
         JPanel panel = new JPanel();
         panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
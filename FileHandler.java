@@ -1,4 +1,6 @@
 import javax.swing.*;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.*;
 import javax.swing.tree.*;
@@ -8,7 +10,21 @@ import java.io.*;
 import java.sql.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.List;
+import db.CancelToken;
+import gui.AsyncUi;
 import gui.Theme;
+import gui.TransferDialog;
+import repository.Branch;
+import repository.ExportScope;
+import repository.FileEntry;
+import repository.FileFolder;
+import repository.FileRepository;
+import repository.FileTreeCache;
+import repository.ReferenceCache;
+import repository.StudyGroup;
+import repository.UploadRequest;
+import storage.TransferProgress;
 
 /**
  * Unified File Management System for StudySync
@@ -16,18 +32,14 @@ import gui.Theme;
  * Features:
  * - Universal file upload for all users
  * - Theme-consistent UI components
- * - Hierarchical file organization
+ * - Hierarchical file organization, loaded one tree level at a time on expand
+ * - "Download all" of any tree node (group, semester, subject) as one ZIP
  * - Simple and intuitive interface
  * 
  * Organization:
  * Group → Branch → Semester → Subject
  */
 public class FileHandler {
-    // Database connection settings
-    private static final String URL = "jdbc:mariadb://localhost:3306/pdfshare";
-    private static final String USER = "pdfshare";
-    private static final String PASS = "toor";
-
     // File upload dialog components
     private static final File[] selectedFile = new File[1];
     private static JDialog uploadDialog;
@@ -35,21 +47,41 @@ public class FileHandler {
     private static JTextField courseCodeField;
     private static JLabel selectedFileLabel;
     private static JButton uploadBtn;
+    private static JProgressBar uploadProgress;
+    private static CancelToken uploadToken;
     private static JComboBox<String> branchBox;
     private static JComboBox<Integer> semesterBox;
     private static JComboBox<String> groupBox;
 
     // Store the current file list table for refreshing
     private static JTable currentFileTable;
+    private static JTree currentFileTree;
+    private static Map<DefaultMutableTreeNode, ExportScope> currentExportScopes;
+    // Folders that were open before the tree was reloaded; opened again as they reappear
+    private static final Set<ExportScope> reopenScopes = new HashSet<>();
     private static String currentUserRole;
     private static String currentUserBranch;
     private static Integer currentUserSemester;
     private static boolean isDeleteMode; // Track whether we're in delete mode
+    private static ExportScope currentScope = ExportScope.ALL; // Tree folder the table shows
+    private static final AsyncUi.Latest tableLoad = new AsyncUi.Latest();
+
+    // Files per page of the table, newest first; "Load older files" fetches the next page
+    private static final int TABLE_LIMIT = Integer.getInteger("studysync.files.tableLimit", 500);
+    // Paging state: where the next page starts, whether there may be one, and the folder's file count
+    private static FileEntry lastTableRow;
+    private static boolean olderFilesLeft;
+    private static long currentScopeFiles;
+    private static JLabel tableStatus;
+    private static JButton loadOlderBtn;
     // Removed unused fields
     
     // Constants
     private static final Color DELETE_BUTTON_COLOR = new Color(220, 53, 69); // Red color for delete buttons
 
+    // Data access
+    private static final FileRepository fileRepository = new FileRepository();
+
     /**
      * Show the file upload dialog with Theme styling
      */
@@ -110,28 +142,29 @@ public class FileHandler {
             Theme.styleLabel(label);
         }
 
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASS)) {
-            // Load study groups
-            String groupSql = "SELECT group_name FROM study_groups WHERE is_active = TRUE ORDER BY group_name";
-            PreparedStatement groupStmt = conn.prepareStatement(groupSql);
-            ResultSet groupRs = groupStmt.executeQuery();
-            while (groupRs.next()) {
-                groupBox.addItem(groupRs.getString("group_name"));
-            }
-            
-            // Load branches
-            String branchSql = "SELECT branch_name FROM branches WHERE is_active = TRUE ORDER BY branch_name";
-            PreparedStatement branchStmt = conn.prepareStatement(branchSql);
-            ResultSet branchRs = branchStmt.executeQuery();
-            while (branchRs.next()) {
-                branchBox.addItem(branchRs.getString("branch_name"));
-            }
+        try {
+            // Load study groups and branches in the background; the combos stay
+            // disabled until they are filled
+            groupBox.setEnabled(false);
+            branchBox.setEnabled(false);
+            AsyncUi.load(() -> new UploadChoices(ReferenceCache.groups(), ReferenceCache.branches()),
+                choices -> {
+                    for (StudyGroup group : choices.groups()) {
+                        groupBox.addItem(group.name());
+                    }
+                    for (Branch branch : choices.branches()) {
+                        branchBox.addItem(branch.name());
+                    }
+                    groupBox.setEnabled(true);
 
-            // Set default branch for students
-            if (userBranch != null) {
-                branchBox.setSelectedItem(userBranch);
-                branchBox.setEnabled(false);
-            }
+                    // Set default branch for students
+                    if (userBranch != null) {
+                        branchBox.setSelectedItem(userBranch);
+                    } else {
+                        branchBox.setEnabled(true);
+                    }
+                },
+                ex -> JOptionPane.showMessageDialog(uploadDialog, "Error: " + ex.getMessage()));
 
             // Add semesters 1-8
             for (int i = 1; i <= 8; i++) {
@@ -190,6 +223,13 @@ public class FileHandler {
             gbc.gridx = 1;
             formPanel.add(filePanel, gbc);
             
+            // Upload progress, shown while the file is sent
+            gbc.gridx = 0; gbc.gridy++; gbc.gridwidth = 2;
+            uploadProgress = new JProgressBar(0, 1000);
+            uploadProgress.setStringPainted(true);
+            uploadProgress.setVisible(false);
+            formPanel.add(uploadProgress, gbc);
+
             // Buttons
             gbc.gridx = 0; gbc.gridy++; gbc.gridwidth = 2;
             JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 0));
@@ -227,24 +267,60 @@ public class FileHandler {
             // Upload action
             uploadBtn.addActionListener(e -> {
                 if (validateForm()) {
-                    try {
-                        uploadSelectedFile(uploadedBy);
+                    UploadRequest request = createUploadRequest(uploadedBy);
+                    CancelToken token = new CancelToken();
+                    uploadToken = token;
+                    uploadBtn.setEnabled(false);
+                    uploadBtn.setText("Uploading...");
+                    uploadProgress.setValue(0);
+                    uploadProgress.setString("Starting upload...");
+                    uploadProgress.setVisible(true);
+                    uploadDialog.pack();
+                    TransferProgress progress = (sent, total) -> SwingUtilities.invokeLater(
+                        () -> showUploadProgress(sent, total));
+                    AsyncUi.load(() -> fileRepository.upload(request, progress, token), fileTagId -> {
+                        uploadToken = null;
                         JOptionPane.showMessageDialog(uploadDialog, "File uploaded successfully!");
                         uploadDialog.dispose();
                         // Refresh file list if it exists
                         if (currentFileTable != null) {
                             refreshFileList();
                         }
-                    } catch (Exception ex) {
+                    }, ex -> {
+                        uploadToken = null;
+                        uploadBtn.setText("Upload");
+                        uploadBtn.setEnabled(true);
+                        uploadProgress.setVisible(false);
+                        if (token.isCancelled()) {
+                            return;
+                        }
+                        String resumeHint = FileRepository.isResumable(selectedFile[0].length())
+                            ? "\nUpload the same file again to continue where it stopped." : "";
                         JOptionPane.showMessageDialog(uploadDialog,
-                            "Upload failed: " + ex.getMessage(),
+                            "Upload failed: " + ex.getMessage() + resumeHint,
                             "Error",
                             JOptionPane.ERROR_MESSAGE);
-                    }
+                    });
                 }
             });
 
-            cancelBtn.addActionListener(e -> uploadDialog.dispose());
+            // Cancel stops a running upload first; a second click closes the dialog
+            cancelBtn.addActionListener(e -> {
+                if (uploadToken != null) {
+                    uploadToken.cancel();
+                    uploadProgress.setString("Cancelling...");
+                } else {
+                    uploadDialog.dispose();
+                }
+            });
+            uploadDialog.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) {
+                    if (uploadToken != null) {
+                        uploadToken.cancel();
+                    }
+                }
+            });
 
             // Show dialog
             uploadDialog.pack();
@@ -256,6 +332,16 @@ public class FileHandler {
         }
     }
 
+    private static void showUploadProgress(long sent, long total) {
+        if (total > 0) {
+            uploadProgress.setValue((int) (sent * 1000 / total));
+        }
+        uploadProgress.setString(TransferDialog.formatSize(sent) + " of " + TransferDialog.formatSize(total));
+    }
+
+    private record UploadChoices(List<StudyGroup> groups, List<Branch> branches) {
+    }
+
     private static boolean validateForm() {
         if (selectedFile[0] == null) {
             JOptionPane.showMessageDialog(uploadDialog,
@@ -281,72 +367,16 @@ public class FileHandler {
         return true;
     }
 
-    private static void uploadSelectedFile(String uploadedBy) throws Exception {
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASS)) {
-            conn.setAutoCommit(false);
-            try {
-                // Get branch_code for selected branch
-                String branchCodeSql = "SELECT branch_code FROM branches WHERE branch_name = ?";
-                PreparedStatement branchStmt = conn.prepareStatement(branchCodeSql);
-                branchStmt.setString(1, (String) branchBox.getSelectedItem());
-                ResultSet branchRs = branchStmt.executeQuery();
-                
-                if (!branchRs.next()) {
-                    throw new Exception("Selected branch not found");
-                }
-                String branchCode = branchRs.getString("branch_code");
-
-                // Get group_code for selected group
-                String groupCodeSql = "SELECT group_code FROM study_groups WHERE group_name = ?";
-                PreparedStatement groupStmt = conn.prepareStatement(groupCodeSql);
-                groupStmt.setString(1, (String) groupBox.getSelectedItem());
-                ResultSet groupRs = groupStmt.executeQuery();
-                
-                if (!groupRs.next()) {
-                    throw new Exception("Selected group not found");
-                }
-                String groupCode = groupRs.getString("group_code");
-
-                // Create or get subject
-                String subjectSql = "INSERT INTO subjects (name, course_code, branch_code, semester, group_code, created_by) " +
-                                  "VALUES (?, ?, ?, ?, ?, ?) " +
-                                  "ON DUPLICATE KEY UPDATE id=LAST_INSERT_ID(id)";
-                
-                PreparedStatement subjectStmt = conn.prepareStatement(subjectSql, Statement.RETURN_GENERATED_KEYS);
-                subjectStmt.setString(1, subjectNameField.getText().trim());
-                subjectStmt.setString(2, courseCodeField.getText().trim());
-                subjectStmt.setString(3, branchCode);
-                subjectStmt.setInt(4, (Integer) semesterBox.getSelectedItem());
-                subjectStmt.setString(5, groupCode);
-                subjectStmt.setString(6, uploadedBy);
-                subjectStmt.executeUpdate();
-
-                ResultSet subjectRs = subjectStmt.getGeneratedKeys();
-                if (!subjectRs.next()) {
-                    throw new Exception("Failed to create subject");
-                }
-                int subjectId = subjectRs.getInt(1);
-
-                // Generate file tag ID
-                String fileTagId = generateFileTagId(branchCode, (Integer) semesterBox.getSelectedItem());
-                
-                // Upload file
-                byte[] fileData = Files.readAllBytes(selectedFile[0].toPath());
-                String fileSql = "INSERT INTO files (file_tag_id, filename, filedata, subject_id, uploaded_by) VALUES (?, ?, ?, ?, ?)";
-                PreparedStatement fileStmt = conn.prepareStatement(fileSql);
-                fileStmt.setString(1, fileTagId);
-                fileStmt.setString(2, selectedFile[0].getName());
-                fileStmt.setBytes(3, fileData);
-                fileStmt.setInt(4, subjectId);
-                fileStmt.setString(5, uploadedBy);
-                fileStmt.executeUpdate();
-
-                conn.commit();
-            } catch (Exception e) {
-                conn.rollback();
-                throw e;
-            }
-        }
+    // Snapshot of the form, taken on the UI thread before the upload starts
+    private static UploadRequest createUploadRequest(String uploadedBy) {
+        return new UploadRequest(
+            (String) groupBox.getSelectedItem(),
+            (String) branchBox.getSelectedItem(),
+            (Integer) semesterBox.getSelectedItem(),
+            subjectNameField.getText().trim(),
+            courseCodeField.getText().trim(),
+            selectedFile[0].toPath(),
+            uploadedBy);
     }
 
     /**
@@ -359,6 +389,123 @@ public class FileHandler {
         currentUserSemester = userSemester;
         isDeleteMode = deleteMode;
 
+        // Query off the UI thread; the panel shows a loading state meanwhile
+        AsyncUi.showLoading(containerPanel, "Loading files...");
+        AsyncUi.load(FileHandler::loadListing,
+            listing -> showFiles(userRole, containerPanel, listing),
+            e -> JOptionPane.showMessageDialog(null, "Error loading files: " + e.getMessage()));
+    }
+
+    // What the file view opens with: the tree's top level and the newest files.
+    // Both are bounded, so opening costs the same however many files there are.
+    private record FileListing(List<FileFolder> groups, List<FileEntry> files) {
+    }
+
+    private static FileListing loadListing() throws SQLException {
+        return new FileListing(FileTreeCache.children(ExportScope.ALL, CancelToken.NONE),
+            fileRepository.findInScope(ExportScope.ALL, TABLE_LIMIT, CancelToken.NONE));
+    }
+
+    // A folder of the tree; its children are loaded when it is first expanded
+    private static final class FolderNode extends DefaultMutableTreeNode {
+        private static final long serialVersionUID = 1L;
+
+        final transient FileFolder folder; // tree nodes are never serialized
+        boolean loaded;
+
+        FolderNode(FileFolder folder) {
+            super(folder, !folder.isSubject());
+            this.folder = folder;
+            if (!folder.isSubject()) {
+                add(new DefaultMutableTreeNode("Loading..."));
+            }
+        }
+
+        // Name without the counts, e.g. for file names
+        String label() {
+            Integer semester = folder.scope().semester();
+            return semester != null && !folder.isSubject()
+                ? "Semester " + semester + " (" + folder.name() + ")"
+                : folder.name();
+        }
+
+        @Override
+        public String toString() {
+            return label() + "  (" + folder.files() + (folder.files() == 1 ? " file, " : " files, ")
+                + TransferDialog.formatSize(folder.bytes()) + ")";
+        }
+    }
+
+    // Replace a node's children (a folder's "Loading..." placeholder, or the whole level on
+    // reload) with the folders below scope: one aggregate query, or cached
+    private static void loadChildren(JTree tree, Map<DefaultMutableTreeNode, ExportScope> exportScopes,
+                                     DefaultMutableTreeNode node, ExportScope scope) {
+        DefaultTreeModel treeModel = (DefaultTreeModel) tree.getModel();
+        AsyncUi.load(() -> FileTreeCache.children(scope, CancelToken.NONE), folders -> {
+            exportScopes.keySet().removeIf(n -> n != node && n.isNodeAncestor(node));
+            node.removeAllChildren();
+            List<FolderNode> reopen = new ArrayList<>();
+            for (FileFolder folder : folders) {
+                FolderNode child = new FolderNode(folder);
+                exportScopes.put(child, folder.scope());
+                node.add(child);
+                if (reopenScopes.remove(folder.scope())) {
+                    reopen.add(child);
+                }
+            }
+            treeModel.nodeStructureChanged(node);
+            if (scope.equals(currentScope)) {
+                currentScopeFiles = folderFiles(node);
+                updateTableStatus();
+            }
+            for (FolderNode child : reopen) {
+                tree.expandPath(new TreePath(child.getPath())); // loads its children in turn
+            }
+        }, e -> {
+            if (node instanceof FolderNode folder) {
+                folder.loaded = false; // expanding again retries
+            }
+            if (node.getChildCount() > 0 && !(node.getFirstChild() instanceof FolderNode)) {
+                ((DefaultMutableTreeNode) node.getFirstChild()).setUserObject("Could not load: " + e.getMessage());
+                treeModel.nodeChanged(node.getFirstChild());
+            }
+        });
+    }
+
+    // Live file count of a tree node's folder; for the root, of all groups
+    private static long folderFiles(DefaultMutableTreeNode node) {
+        if (node instanceof FolderNode folder) {
+            return folder.folder.files();
+        }
+        long files = 0;
+        for (int i = 0; i < node.getChildCount(); i++) {
+            if (node.getChildAt(i) instanceof FolderNode folder) {
+                files += folder.folder.files();
+            }
+        }
+        return files;
+    }
+
+    // After an upload or delete: drop the cached levels and reload the tree from the top,
+    // opening the folders that were open so their counts are current too
+    private static void refreshTree() {
+        FileTreeCache.invalidate();
+        JTree tree = currentFileTree;
+        if (tree == null) {
+            return;
+        }
+        DefaultMutableTreeNode root = (DefaultMutableTreeNode) tree.getModel().getRoot();
+        reopenScopes.clear();
+        Enumeration<TreePath> expanded = tree.getExpandedDescendants(new TreePath(root));
+        while (expanded != null && expanded.hasMoreElements()) {
+            if (expanded.nextElement().getLastPathComponent() instanceof FolderNode node) {
+                reopenScopes.add(node.folder.scope());
+            }
+        }
+        loadChildren(tree, currentExportScopes, root, ExportScope.ALL);
+    }
+
+    private static void showFiles(String userRole, JPanel containerPanel, FileListing listing) {
         // Create main panel with split pane for tree and table
         JSplitPane mainSplitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT);
         mainSplitPane.setDividerLocation(250); // Width of the tree panel
@@ -370,111 +517,53 @@ public class FileHandler {
         fileTree.setBackground(Theme.BG_PRIMARY);
         fileTree.setForeground(Theme.TEXT_PRIMARY);
         
-        // Add selection listener to the tree
-        fileTree.addTreeSelectionListener(e -> {
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode) fileTree.getLastSelectedPathComponent();
-            if (node != null && node.isLeaf()) {
-                String nodeStr = node.getUserObject().toString();
-                // Filter the table to show only files for the selected subject
-                if (currentFileTable != null) {
-                    TableRowSorter<TableModel> sorter = new TableRowSorter<>(currentFileTable.getModel());
-                    currentFileTable.setRowSorter(sorter);
-                    RowFilter<Object, Object> subjectFilter = new RowFilter<Object, Object>() {
-                        @Override
-                        public boolean include(Entry<?, ?> entry) {
-                            return entry.getStringValue(2).equals(nodeStr); // Column 2 is Subject
-                        }
-                    };
-                    sorter.setRowFilter(subjectFilter);
-                }
-            } else {
-                // Clear filter when a non-leaf node is selected
-                if (currentFileTable != null) {
-                    currentFileTable.setRowSorter(null);
+        // What "Download all" exports for each node
+        Map<DefaultMutableTreeNode, ExportScope> exportScopes = new HashMap<>();
+        exportScopes.put(root, ExportScope.ALL);
+        addDownloadAllMenu(fileTree, exportScopes);
+        
+        // Children of a folder are queried when it is first expanded
+        fileTree.addTreeWillExpandListener(new TreeWillExpandListener() {
+            @Override
+            public void treeWillExpand(TreeExpansionEvent event) {
+                if (event.getPath().getLastPathComponent() instanceof FolderNode node && !node.loaded) {
+                    node.loaded = true;
+                    loadChildren(fileTree, exportScopes, node, node.folder.scope());
                 }
             }
+
+            @Override
+            public void treeWillCollapse(TreeExpansionEvent event) {
+            }
         });
         
-        // Create detail panel for file list
-        JPanel detailPanel = new JPanel(new BorderLayout());
-        detailPanel.setBackground(Theme.BG_PRIMARY);
-        
-        // Create card layout for file lists
-        CardLayout cardLayout = new CardLayout();
-        JPanel cardPanel = new JPanel(cardLayout);
-        cardPanel.setBackground(Theme.BG_PRIMARY);
-        
-        Map<String, DefaultMutableTreeNode> groupNodes = new HashMap<>();
-        Map<String, DefaultMutableTreeNode> semesterNodes = new HashMap<>();
-        Map<String, DefaultMutableTreeNode> subjectNodes = new HashMap<>();
-        
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASS)) {
-            // Build the tree structure query
-            StringBuilder structureSQL = new StringBuilder(
-                "SELECT DISTINCT g.group_name, s.semester, s.name as subject_name, s.id as subject_id, b.branch_name " +
-                "FROM subjects s " +
-                "JOIN branches b ON s.branch_code = b.branch_code " +
-                "JOIN study_groups g ON s.group_code = g.group_code " +
-                "JOIN files f ON f.subject_id = s.id " +
-                "WHERE f.is_deleted = FALSE");
-
-            // No filters for students - all files are accessible
-            structureSQL.append(" ORDER BY g.group_name, s.semester, s.name");
-
-            try (PreparedStatement stmt = conn.prepareStatement(structureSQL.toString())) {
-                // No parameters needed for the query - all files are visible
-                
-                // Execute query and build tree
-                ResultSet rs = stmt.executeQuery();
-                while (rs.next()) {
-                    String groupName = rs.getString("group_name");
-                    int semester = rs.getInt("semester");
-                    String subjectName = rs.getString("subject_name");
-                    int subjectId = rs.getInt("subject_id");
-                    
-                    // Create/get group node
-                    String branchName = rs.getString("branch_name");
-                    
-                    // Create/get group node (Study Materials -> Group)
-                    String groupKey = groupName;
-                    DefaultMutableTreeNode groupNode = groupNodes.computeIfAbsent(groupKey, k -> {
-                        DefaultMutableTreeNode node = new DefaultMutableTreeNode(groupName);
-                        root.add(node);
-                        return node;
-                    });
-                    
-                    // Create/get semester node (Group -> Semester)
-                    String semesterKey = groupKey + "-" + semester + "-" + branchName;
-                    DefaultMutableTreeNode semesterNode = semesterNodes.computeIfAbsent(semesterKey, k -> {
-                        DefaultMutableTreeNode node = new DefaultMutableTreeNode("Semester " + semester + " (" + branchName + ")");
-                        groupNode.add(node);
-                        return node;
-                    });
-                    
-                    // Create subject node (Semester -> Subject)
-                    String subjectKey = semesterKey + "-" + subjectId;
-                    if (!subjectNodes.containsKey(subjectKey)) {
-                        DefaultMutableTreeNode subjectNode = new DefaultMutableTreeNode(subjectName);
-                        semesterNode.add(subjectNode);
-                        subjectNodes.put(subjectKey, subjectNode);
-                    }
-                    
-                    // Create a panel for this subject's files
-                    JPanel filePanel = createFileListPanel(subjectId, userRole);
-                    cardPanel.add(filePanel, subjectKey);
-                }
+        try {
+            // Top level only (no filters for students - all files are accessible)
+            for (FileFolder group : listing.groups()) {
+                FolderNode groupNode = new FolderNode(group);
+                exportScopes.put(groupNode, group.scope());
+                root.add(groupNode);
             }
+            treeModel.nodeStructureChanged(root);
+            currentFileTree = fileTree;
+            currentExportScopes = exportScopes;
+            reopenScopes.clear();
 
-            // Retrieve full file list for the table (separate query)
-            String filesSql = "SELECT f.id, f.filename, s.name as subject_name, s.course_code, b.branch_name, s.semester, g.group_name, f.uploaded_by, f.upload_time " +
-                              "FROM files f " +
-                              "JOIN subjects s ON f.subject_id = s.id " +
-                              "JOIN branches b ON s.branch_code = b.branch_code " +
-                              "JOIN study_groups g ON s.group_code = g.group_code " +
-                              "WHERE f.is_deleted = FALSE " +
-                              "ORDER BY f.upload_time DESC";
-            PreparedStatement filesStmt = conn.prepareStatement(filesSql);
-            ResultSet rs = filesStmt.executeQuery();
+            // Selecting a folder lists its newest files in the table
+            fileTree.addTreeSelectionListener(e -> {
+                DefaultMutableTreeNode node = (DefaultMutableTreeNode) fileTree.getLastSelectedPathComponent();
+                ExportScope scope = node == null ? null : exportScopes.get(node);
+                if (scope == null || scope.equals(currentScope)) {
+                    return;
+                }
+                currentScope = scope;
+                currentScopeFiles = folderFiles(node);
+                tableLoad.load(token -> fileRepository.findInScope(scope, TABLE_LIMIT, token),
+                    FileHandler::showTableRows, ex -> JOptionPane.showMessageDialog(null, "Error loading files: " + ex.getMessage()));
+            });
+
+            // The table starts with the newest files overall
+            List<FileEntry> files = listing.files();
 
         // Create split pane for tree and table (reuse existing mainSplitPane and fileTree)
         JScrollPane treeScroll = new JScrollPane(fileTree);
@@ -504,23 +593,9 @@ public class FileHandler {
             model.addColumn("Actions");
 
             // Populate table
-            while (rs.next()) {
-                int fileId = rs.getInt("id");
-                String filename = rs.getString("filename");
-                
-                model.addRow(new Object[]{
-                    fileId,
-                    filename,
-                    rs.getString("subject_name"),
-                    rs.getString("course_code"),
-                    rs.getString("branch_name"),
-                    rs.getInt("semester"),
-                    rs.getString("group_name"),
-                    rs.getString("uploaded_by"),
-                    rs.getTimestamp("upload_time"),
-                    createActionPanel(fileId, filename, userRole)
-                });
-            }
+            addRows(model, files, userRole);
+            currentScope = ExportScope.ALL; // the table opens on the root
+            currentScopeFiles = folderFiles(root);
 
             // Create and configure table
             currentFileTable = new JTable(model);
@@ -584,6 +659,21 @@ public class FileHandler {
             actionButton.setIconTextGap(10);
             actionButton.setPreferredSize(new Dimension(200, 40));
             bottomPanel.add(actionButton);
+
+            // How much of the folder is listed, and the next page on request
+            tableStatus = new JLabel();
+            tableStatus.setForeground(Theme.TEXT_SECONDARY);
+            loadOlderBtn = Theme.createSecondaryButton("Load older files");
+            loadOlderBtn.addActionListener(e -> {
+                ExportScope scope = currentScope;
+                FileEntry after = lastTableRow;
+                tableLoad.load(token -> fileRepository.findInScope(scope, after, TABLE_LIMIT, token),
+                    FileHandler::appendTableRows, ex -> JOptionPane.showMessageDialog(null, "Error loading files: " + ex.getMessage()));
+            });
+            bottomPanel.add(tableStatus);
+            bottomPanel.add(loadOlderBtn);
+            lastTableRow = null;
+            pageLoaded(files);
             
             // Update button state based on selection
             final JButton finalActionButton = actionButton;
@@ -695,7 +785,67 @@ public class FileHandler {
         }
     }
 
-    private static JPanel createActionPanel(int fileId, String filename, String userRole) {
+    // Right-click on a tree node: export everything below it
+    private static void addDownloadAllMenu(JTree fileTree, Map<DefaultMutableTreeNode, ExportScope> exportScopes) {
+        fileTree.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                showMenu(e);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                showMenu(e);
+            }
+
+            private void showMenu(MouseEvent e) {
+                TreePath path = fileTree.getPathForLocation(e.getX(), e.getY());
+                if (!e.isPopupTrigger() || path == null) {
+                    return;
+                }
+                fileTree.setSelectionPath(path);
+                DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getLastPathComponent();
+                ExportScope scope = exportScopes.get(node);
+                if (scope == null) {
+                    return;
+                }
+                JPopupMenu menu = new JPopupMenu();
+                JMenuItem downloadAll = new JMenuItem("📦 Download all as ZIP...");
+                downloadAll.addActionListener(ev -> downloadAll(scope,
+                    node instanceof FolderNode folder ? folder.label() : node.getUserObject().toString()));
+                menu.add(downloadAll);
+                menu.show(fileTree, e.getX(), e.getY());
+            }
+        });
+    }
+
+    // Export a whole group, semester or subject into one ZIP file
+    private static void downloadAll(ExportScope scope, String label) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(label.replaceAll("[\\\\/:*?\"<>|]", "_") + ".zip"));
+        if (chooser.showSaveDialog(null) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File saveFile = chooser.getSelectedFile();
+        TransferDialog transfer = TransferDialog.start(null, "Exporting " + saveFile.getName());
+        AsyncUi.load(() -> fileRepository.exportZip(scope, saveFile.toPath(), transfer.getProgress(),
+                transfer.getToken()), count -> {
+            transfer.close();
+            JOptionPane.showMessageDialog(null, count == 0
+                ? "No files to export."
+                : "Exported " + count + " files to " + saveFile.getName());
+        }, e -> {
+            transfer.close();
+            if (!transfer.isCancelled()) {
+                JOptionPane.showMessageDialog(null,
+                    "Export failed: " + e.getMessage(),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
+
+    private static JPanel createActionPanel(FileEntry file, String userRole) {
         JPanel panel = new JPanel();
         panel.setLayout(new FlowLayout(FlowLayout.CENTER, 5, 0));
         panel.setBackground(Theme.BG_PRIMARY);
@@ -708,158 +858,110 @@ public class FileHandler {
         viewBtn.setCursor(new Cursor(Cursor.HAND_CURSOR));
 
         // Add view action
-        viewBtn.addActionListener(e -> viewFile(fileId, filename));
+        viewBtn.addActionListener(e -> viewFile(file));
         
         panel.add(viewBtn);
         return panel;
     }
     
     // Helper method to view PDF files
-    private static void viewFile(int fileId, String filename) {
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASS)) {
-            String sql = "SELECT filedata FROM files WHERE id = ? AND is_deleted = FALSE";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setInt(1, fileId);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                byte[] fileData = rs.getBytes("filedata");
-                Path tempFile = Files.createTempFile("studysync_", "_" + filename);
-                Files.write(tempFile, fileData);
-                Desktop.getDesktop().open(tempFile.toFile());
-                tempFile.toFile().deleteOnExit();
-            } else {
-                throw new Exception("File not found or has been deleted");
+    private static void viewFile(FileEntry file) {
+        // Fetch a local copy in the background (from the view cache if viewed before), then open it
+        TransferDialog transfer = TransferDialog.start(null, "Opening " + file.filename());
+        AsyncUi.load(() -> fileRepository.view(file, transfer.getProgress(), transfer.getToken())
+                .orElseThrow(() -> new Exception("File not found or has been deleted")), localFile -> {
+            transfer.close();
+            try {
+                Desktop.getDesktop().open(localFile.toFile());
+            } catch (Exception ex) {
+                showViewError(ex);
             }
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(null,
-                "Error viewing file: " + ex.getMessage(),
-                "Error",
-                JOptionPane.ERROR_MESSAGE);
+        }, ex -> {
+            transfer.close();
+            if (!transfer.isCancelled()) {
+                showViewError(ex);
+            }
+        });
+    }
+
+    private static void showViewError(Throwable ex) {
+        JOptionPane.showMessageDialog(null,
+            "Error viewing file: " + ex.getMessage(),
+            "Error",
+            JOptionPane.ERROR_MESSAGE);
+    }
+
+    // Removed showFileActions method as context menus are no longer used
+    
+    private static void addRows(DefaultTableModel model, List<FileEntry> files, String userRole) {
+        for (FileEntry file : files) {
+            model.addRow(new Object[]{
+                file.id(),
+                file.filename(),
+                file.subjectName(),
+                file.courseCode(),
+                file.branchName(),
+                file.semester(),
+                file.groupName(),
+                file.uploadedBy(),
+                file.uploadTime(),
+                createActionPanel(file, userRole)
+            });
         }
     }
 
-    private static JPanel createFileListPanel(int subjectId, String userRole) {
-        JPanel panel = new JPanel(new BorderLayout());
-        panel.setBackground(Theme.BG_PRIMARY);
-        
-        DefaultListModel<FileItem> listModel = new DefaultListModel<>();
-        JList<FileItem> fileList = new JList<>(listModel);
-        fileList.setCellRenderer(new FileListCellRenderer());
-        
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASS)) {
-            String sql = "SELECT id, filename, uploaded_by, upload_time FROM files WHERE subject_id = ? AND is_deleted = FALSE ORDER BY upload_time DESC";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setInt(1, subjectId);
-            ResultSet rs = stmt.executeQuery();
-            
-            while (rs.next()) {
-                FileItem item = new FileItem(
-                    rs.getInt("id"),
-                    rs.getString("filename"),
-                    rs.getString("uploaded_by"),
-                    rs.getTimestamp("upload_time")
-                );
-                listModel.addElement(item);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+    // Replace the table's rows with the first page of a folder
+    private static void showTableRows(List<FileEntry> files) {
+        if (currentFileTable != null) {
+            DefaultTableModel model = (DefaultTableModel) currentFileTable.getModel();
+            model.setRowCount(0); // Clear existing rows
+            addRows(model, files, currentUserRole);
+            lastTableRow = null;
+            pageLoaded(files);
         }
-        
-        JScrollPane scrollPane = new JScrollPane(fileList);
-        scrollPane.setBorder(BorderFactory.createEmptyBorder());
-        panel.add(scrollPane, BorderLayout.CENTER);
-        
-        return panel;
     }
-    
-    private static class FileItem {
-        @SuppressWarnings("unused")
-        final int id;  // Used for database operations
-        final String filename;
-        final String uploadedBy;
-        final Timestamp uploadTime;
-        
-        FileItem(int id, String filename, String uploadedBy, Timestamp uploadTime) {
-            this.id = id;
-            this.filename = filename;
-            this.uploadedBy = uploadedBy;
-            this.uploadTime = uploadTime;
+
+    // Add the next (older) page below the rows already listed
+    private static void appendTableRows(List<FileEntry> files) {
+        if (currentFileTable != null) {
+            addRows((DefaultTableModel) currentFileTable.getModel(), files, currentUserRole);
+            pageLoaded(files);
         }
-        
-        @Override
-        public String toString() {
-            return filename;
+    }
+
+    private static void pageLoaded(List<FileEntry> page) {
+        if (!page.isEmpty()) {
+            lastTableRow = page.get(page.size() - 1);
         }
+        olderFilesLeft = page.size() == TABLE_LIMIT; // a full page: there may be more
+        updateTableStatus();
     }
-    
-    private static class FileListCellRenderer extends DefaultListCellRenderer {
-        @Override
-        public Component getListCellRendererComponent(JList<?> list, Object value, 
-                int index, boolean isSelected, boolean cellHasFocus) {
-            
-            JLabel label = (JLabel) super.getListCellRendererComponent(
-                list, value, index, isSelected, cellHasFocus);
-            
-            if (value instanceof FileItem) {
-                FileItem item = (FileItem) value;
-                label.setIcon(new JLabel("📄").getIcon());
-                label.setText(item.filename);
-                label.setFont(new Font("Dialog", Font.PLAIN, 12));
-                label.setToolTipText(String.format("Uploaded by: %s on %s", 
-                    item.uploadedBy, item.uploadTime));
-            }
-            
-            if (!isSelected) {
-                label.setBackground(Theme.BG_PRIMARY);
-                label.setForeground(Theme.TEXT_PRIMARY);
-            }
-            
-            return label;
+
+    // "Showing the newest 500 of 1234 files" while older files are not listed yet
+    private static void updateTableStatus() {
+        if (currentFileTable == null || tableStatus == null) {
+            return;
         }
+        int shown = currentFileTable.getModel().getRowCount();
+        if (olderFilesLeft) {
+            tableStatus.setText("Showing the newest " + shown
+                + (currentScopeFiles > shown ? " of " + currentScopeFiles : "") + " files");
+        } else {
+            tableStatus.setText(shown + (shown == 1 ? " file" : " files"));
+        }
+        loadOlderBtn.setVisible(olderFilesLeft);
     }
-    
-    // Removed showFileActions method as context menus are no longer used
-    
+
     private static void refreshFileList() {
-        // We don't need this anymore as the table is updated directly in deleteFile method
-        // Only refresh if there's some other reason than deletion
+        // After an upload: reload the tree counts and the selected folder's first page
+        refreshTree(); // counts changed
         if (currentFileTable != null) {
-            try (Connection conn = DriverManager.getConnection(URL, USER, PASS)) {
-                String filesSql = "SELECT f.id, f.filename, s.name as subject_name, s.course_code, " +
-                                "b.branch_name, s.semester, g.group_name, f.uploaded_by, f.upload_time " +
-                                "FROM files f " +
-                                "JOIN subjects s ON f.subject_id = s.id " +
-                                "JOIN branches b ON s.branch_code = b.branch_code " +
-                                "JOIN study_groups g ON s.group_code = g.group_code " +
-                                "WHERE f.is_deleted = FALSE " +
-                                "ORDER BY f.upload_time DESC";
-                PreparedStatement stmt = conn.prepareStatement(filesSql);
-                ResultSet rs = stmt.executeQuery();
-                
-                DefaultTableModel model = (DefaultTableModel) currentFileTable.getModel();
-                model.setRowCount(0); // Clear existing rows
-                
-                while (rs.next()) {
-                    model.addRow(new Object[]{
-                        rs.getInt("id"),
-                        rs.getString("filename"),
-                        rs.getString("subject_name"),
-                        rs.getString("course_code"),
-                        rs.getString("branch_name"),
-                        rs.getInt("semester"),
-                        rs.getString("group_name"),
-                        rs.getString("uploaded_by"),
-                        rs.getTimestamp("upload_time"),
-                        createActionPanel(rs.getInt("id"), rs.getString("filename"), currentUserRole)
-                    });
-                }
-            } catch (SQLException e) {
-                JOptionPane.showMessageDialog(null, 
-                    "Error refreshing file list: " + e.getMessage(),
-                    "Error",
-                    JOptionPane.ERROR_MESSAGE);
-            }
+            ExportScope scope = currentScope;
+            tableLoad.load(token -> fileRepository.findInScope(scope, TABLE_LIMIT, token),
+                FileHandler::showTableRows, e -> JOptionPane.showMessageDialog(null, 
+                "Error refreshing file list: " + e.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE));
         }
     }
 
@@ -873,29 +975,6 @@ public class FileHandler {
             JOptionPane.INFORMATION_MESSAGE);
     }
 
-    // Generate unique file tag ID
-    private static String generateFileTagId(String branchCode, int semester) throws SQLException {
-        String prefix = branchCode + "_S" + semester + "_";
-        int sequence = 1;
-        
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASS)) {
-            // Get the highest sequence number for this branch and semester
-            String sql = "SELECT file_tag_id FROM files " +
-                        "WHERE file_tag_id LIKE ? " +
-                        "ORDER BY file_tag_id DESC LIMIT 1";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setString(1, prefix + "%");
-            ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                String lastId = rs.getString("file_tag_id");
-                sequence = Integer.parseInt(lastId.substring(lastId.lastIndexOf("_") + 1)) + 1;
-            }
-        }
-        
-        return prefix + String.format("%03d", sequence);
-    }
-
     // Download file
     public static void downloadFile(int id, String filename) {
         JFileChooser chooser = new JFileChooser();
@@ -904,14 +983,12 @@ public class FileHandler {
         
         if (result == JFileChooser.APPROVE_OPTION) {
             File saveFile = chooser.getSelectedFile();
-            try (Connection conn = DriverManager.getConnection(URL, USER, PASS)) {
-                String sql = "SELECT filedata FROM files WHERE id = ?";
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                stmt.setInt(1, id);
-                ResultSet rs = stmt.executeQuery();
-                
-                if (rs.next()) {
-                    Files.write(saveFile.toPath(), rs.getBytes("filedata"));
+            // Stream to disk in the background; report back on the UI thread
+            TransferDialog transfer = TransferDialog.start(null, "Downloading " + saveFile.getName());
+            AsyncUi.load(() -> fileRepository.download(id, saveFile.toPath(), transfer.getProgress(), transfer.getToken())
+                .isPresent(), found -> {
+                transfer.close();
+                if (found) {
                     JOptionPane.showMessageDialog(null, "File downloaded successfully!");
                 } else {
                     JOptionPane.showMessageDialog(null, 
@@ -919,68 +996,46 @@ public class FileHandler {
                         "Download Error",
                         JOptionPane.ERROR_MESSAGE);
                 }
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(null, 
-                    "Download failed: " + e.getMessage(),
-                    "Error",
-                    JOptionPane.ERROR_MESSAGE);
-            }
+            }, e -> {
+                transfer.close();
+                if (!transfer.isCancelled()) {
+                    JOptionPane.showMessageDialog(null,
+                        "Download failed: " + e.getMessage(),
+                        "Error",
+                        JOptionPane.ERROR_MESSAGE);
+                }
+            });
         }
     }
 
     // Delete file (teacher only)
     public static void deleteFile(int id) {
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASS)) {
-            conn.setAutoCommit(false);
-            try {
-                // Get file info before deletion for tree update
-                String fileInfoSql = "SELECT f.id, f.subject_id FROM files f WHERE f.id = ? AND f.is_deleted = FALSE";
-                PreparedStatement fileInfoStmt = conn.prepareStatement(fileInfoSql);
-                fileInfoStmt.setInt(1, id);
-                ResultSet fileInfoRs = fileInfoStmt.executeQuery();
-                
-                if (!fileInfoRs.next()) {
-                    throw new Exception("File not found or already deleted");
-                }
-                
-                // Perform the deletion
-                String sql = "UPDATE files SET is_deleted = TRUE, delete_time = CURRENT_TIMESTAMP WHERE id = ? AND is_deleted = FALSE";
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                stmt.setInt(1, id);
-                
-                int rows = stmt.executeUpdate();
-                if (rows > 0) {
-                    conn.commit();
-                    
-                    // Update UI - only update the file list, no tree rebuild needed
-                    if (currentFileTable != null) {
-                        DefaultTableModel model = (DefaultTableModel) currentFileTable.getModel();
-                        for (int i = 0; i < model.getRowCount(); i++) {
-                            if ((int)model.getValueAt(i, 0) == id) {
-                                model.removeRow(i);
-                                break;
-                            }
+        AsyncUi.load(() -> fileRepository.softDelete(id), deleted -> {
+            if (deleted) {
+                refreshTree(); // counts changed
+                // Drop the row from the table; the tree reloads its counts above
+                if (currentFileTable != null) {
+                    DefaultTableModel model = (DefaultTableModel) currentFileTable.getModel();
+                    for (int i = 0; i < model.getRowCount(); i++) {
+                        if ((int)model.getValueAt(i, 0) == id) {
+                            model.removeRow(i);
+                            break;
                         }
                     }
-                    
-                    JOptionPane.showMessageDialog(null, "File deleted successfully!");
-                } else {
-                    conn.rollback();
-                    JOptionPane.showMessageDialog(null, 
-                        "File not found or already deleted!",
-                        "Delete Error",
-                        JOptionPane.ERROR_MESSAGE);
+                    updateTableStatus();
                 }
-            } catch (Exception e) {
-                conn.rollback();
-                throw e;
+                
+                JOptionPane.showMessageDialog(null, "File deleted successfully!");
+            } else {
+                JOptionPane.showMessageDialog(null, 
+                    "File not found or already deleted!",
+                    "Delete Error",
+                    JOptionPane.ERROR_MESSAGE);
             }
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(null, 
-                "Delete failed: " + e.getMessage(),
-                "Error",
-                JOptionPane.ERROR_MESSAGE);
-        }
+        }, e -> JOptionPane.showMessageDialog(null, 
+            "Delete failed: " + e.getMessage(),
+            "Error",
+            JOptionPane.ERROR_MESSAGE));
     }
 
     /**
@@ -1,3 +1,12 @@
+import db.DBConnection;
+import db.DbExecutor;
+import gui.LaunchTimer;
+import repository.ReferenceCache;
+import repository.StorageReclaimer;
+import repository.StorageScrubber;
+import repository.UploadSessionRepository;
+import storage.LocalBlobStore;
+
 /**
  * StudySync - Academic Task Management System
  * Entry point for the application
@@ -18,6 +27,12 @@
  * - Database: MariaDB for data persistence
  * - Authentication: Role-based access control
  * 
+ * Startup:
+ * - The connection pool is primed and the reference data (branches, groups, subjects)
+ *   is fetched in parallel on background threads while the login window is built
+ * - Time-to-interactive is logged on every launch (see LaunchTimer)
+ * - Upload sessions abandoned for longer than their TTL are cleaned up
+ *
  * @version 1.0
  * @since 2025-10-22
  */
@@ -27,6 +42,35 @@ public class Main {
      * Uses SwingUtilities.invokeLater for thread safety in GUI creation
      */
     public static void main(String[] args) {
+        LaunchTimer.start();
+
+        // Warm up in the background while Swing starts
+        DbExecutor.run(() -> {
+            DBConnection.prime();
+            LaunchTimer.mark("connection pool primed");
+        }).exceptionally(e -> {
+            System.err.println("Could not prime connection pool: " + e.getMessage());
+            return null;
+        });
+        ReferenceCache.prefetch().whenComplete((ignored, e) ->
+            LaunchTimer.mark(e == null ? "reference data loaded" : "reference data prefetch failed"));
+        DbExecutor.run(() -> {
+            int abandoned = new UploadSessionRepository(LocalBlobStore.getDefault()).purgeAbandoned();
+            if (abandoned > 0) {
+                System.out.println("Removed " + abandoned + " abandoned upload session(s)");
+            }
+        }).exceptionally(e -> {
+            System.err.println("Could not clean up upload sessions: " + e.getMessage());
+            return null;
+        });
+
+        // Space of deleted files, reclaimed in the background without competing with the UI
+        StorageReclaimer.startInBackground();
+
+        // Stored contents checked against their checksums, at a limited rate
+        // (off unless -Dstudysync.scrub.enabled=true; normally tools.Scrub runs on one host)
+        StorageScrubber.startInBackground();
+
         javax.swing.SwingUtilities.invokeLater(() -> new UserAuth());
     }
 }
@@ -22,19 +22,23 @@
  * - Password masking
  * 
  * @see Dashboard
- * @see DBConnection
+ * @see UserRepository
  */
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.Map;
 import java.util.HashMap;
 import gui.Theme;
 import gui.ErrorHandler;
 import gui.AnimatedLogo;
-import db.DBConnection;
+import gui.AsyncUi;
+import gui.LaunchTimer;
+import repository.Branch;
+import repository.ReferenceCache;
+import repository.UserRepository;
 
 public class UserAuth extends JFrame {
 
@@ -252,6 +256,7 @@ public class UserAuth extends JFrame {
         add(backgroundPanel);
         setVisible(true);
         pack(); // Adjust frame size to content
+        LaunchTimer.mark("login window shown");
     }
 
     // ✅ Styled text field with StudySync branding
@@ -386,10 +391,8 @@ private JPasswordField createPasswordField(String placeholder) {
         register();
     }
 
-    // ✅ Database Connection
-    private Connection connect() throws Exception {
-        return DBConnection.getConnection();
-    }
+    // ✅ Data access
+    private final UserRepository userRepository = new UserRepository();
 
     // ✅ Register logic
     private void register() {
@@ -439,38 +442,32 @@ if ("teacher".equalsIgnoreCase(selectedRole)) {
 
     
 
-    // ✅ STEP 2: First check if email exists
-    try (Connection conn = this.connect()) {
-        // Check if email already exists
-        String checkSql = "SELECT COUNT(*) FROM users WHERE email = ?";
-        PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-        checkStmt.setString(1, email);
-        ResultSet rs = checkStmt.executeQuery();
-        rs.next();
-        if (rs.getInt(1) > 0) {
-            ErrorHandler.showDuplicateEmailError(this);
-            return;
-        }
-
-        // If email doesn't exist, proceed with registration
-        String sql = "INSERT INTO users (email, password, role, branch_code, current_semester) VALUES (?, ?, ?, ?, ?)";
-        PreparedStatement stmt = conn.prepareStatement(sql);
-        stmt.setString(1, email);
-        stmt.setString(2, password);
-        stmt.setString(3, selectedRole);  // Already converted to lowercase
-        stmt.setString(4, branch != null ? branchNameToCodeMap.get(branch) : null);
-        stmt.setObject(5, semester); // setObject handles null for non-student roles
-        stmt.executeUpdate();
-        ErrorHandler.showRegistrationSuccess(this);
-    } catch (SQLException e) {
-        if (e.getMessage().contains("Duplicate entry")) {
-            ErrorHandler.showDuplicateEmailError(this);
-        } else {
-            ErrorHandler.showError(this, "SQL Error", e);
-        }
-    } catch (Exception e) {
-        ErrorHandler.showError(this, "Error occurred", e);
-    }
+    // ✅ STEP 2: Register unless the email already exists (runs off the UI thread)
+    String branchCode = branch != null ? branchNameToCodeMap.get(branch) : null;
+    setBusy(true);
+    AsyncUi.load(
+        () -> userRepository.register(email, password,
+            selectedRole,  // Already converted to lowercase
+            branchCode,
+            semester),
+        registered -> {
+            setBusy(false);
+            if (!registered) {
+                ErrorHandler.showDuplicateEmailError(this);
+                return;
+            }
+            ErrorHandler.showRegistrationSuccess(this);
+        },
+        e -> {
+            setBusy(false);
+            if (e instanceof SQLException && e.getMessage().contains("Duplicate entry")) {
+                ErrorHandler.showDuplicateEmailError(this);
+            } else if (e instanceof SQLException) {
+                ErrorHandler.showError(this, "SQL Error", e);
+            } else {
+                ErrorHandler.showError(this, "Error occurred", e);
+            }
+        });
 }
 
     // ✅ Login logic with role restriction
@@ -504,23 +501,14 @@ if ("teacher".equalsIgnoreCase(selectedRole)) {
             return;
         }
 
-        try (Connection conn = connect()) {
-            String sql = "SELECT u.role, " +
-                   "CASE WHEN u.role = 'student' THEN u.branch_code ELSE NULL END as branch_code, " +
-                   "CASE WHEN u.role = 'student' THEN COALESCE(b.branch_name, '') ELSE NULL END as branch_name, " +
-                   "CASE WHEN u.role = 'student' THEN u.current_semester ELSE NULL END as current_semester " +
-                   "FROM users u " +
-                   "LEFT JOIN branches b ON u.branch_code = b.branch_code " +
-                   "WHERE u.email=? AND u.password=?";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setString(1, email);
-            stmt.setString(2, password);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                String actualRole = rs.getString("role");
-                String branch = rs.getString("branch_name");
-                Integer semester = rs.getObject("current_semester", Integer.class);
+        // Check credentials off the UI thread; the form stays responsive meanwhile
+        setBusy(true);
+        AsyncUi.load(() -> userRepository.authenticate(email, password), account -> {
+            setBusy(false);
+            if (account.isPresent()) {
+                String actualRole = account.get().role();
+                String branch = account.get().branchName();
+                Integer semester = account.get().semester();
 
                 if (!selectedRole.equals(actualRole)) {
                     ErrorHandler.showRoleMismatchError(this, actualRole);
@@ -534,36 +522,52 @@ if ("teacher".equalsIgnoreCase(selectedRole)) {
             } else {
                 ErrorHandler.showInvalidCredentialsError(this);
             }
-        } catch (Exception e) {
+        }, e -> {
+            setBusy(false);
             ErrorHandler.showError(this, "Error occurred", e);
-        }
+        });
+    }
+
+    // Loading state while a login or registration is in flight
+    private void setBusy(boolean busy) {
+        loginBtn.setEnabled(!busy);
+        registerBtn.setEnabled(!busy);
+        AsyncUi.setBusy(this, busy);
     }
 
     private Map<String, String> branchNameToCodeMap = new HashMap<>();
 
     private void loadBranchesFromDatabase() {
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT branch_code, branch_name FROM branches WHERE is_active = TRUE ORDER BY branch_name")) {
+        // Stay empty and disabled until the branches arrive
+        branchBox.setModel(new DefaultComboBoxModel<>());
+        branchBox.setEnabled(false);
+        branchBox.setToolTipText("Loading branches...");
 
+        AsyncUi.load(ReferenceCache::branches, branches -> {
             DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>();
             branchNameToCodeMap.clear();
-            while (rs.next()) {
-                String branchName = rs.getString("branch_name");
-                String branchCode = rs.getString("branch_code");
+            for (Branch b : branches) {
+                String branchName = b.name();
+                String branchCode = b.code();
                 if (branchName != null && branchCode != null) {
                     model.addElement(branchName);
                     branchNameToCodeMap.put(branchName, branchCode);
                 }
             }
             branchBox.setModel(model);
-        } catch (Exception e) {
+            branchBox.setEnabled(true);
+            branchBox.setToolTipText(null);
+            LaunchTimer.interactive();
+        }, e -> {
             ErrorHandler.showError(this, "Error loading branches", e);
             branchBox.setModel(new DefaultComboBoxModel<>(new String[]{
                 "CSE AI", "AIDS", "CSE CY", "CSE",
                 "EEE", "ECE", "MECH", "CIVIL"
             }));
-        }
+            branchBox.setEnabled(true);
+            branchBox.setToolTipText(null);
+            LaunchTimer.interactive();
+        });
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,126 @@
+package db;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets the UI abandon a query that is still running
+ *
+ * A repository brackets each execution with begin()/end(); cancel() from any thread
+ * marks the token cancelled and, if a statement is executing, asks the server to stop
+ * it (Statement.cancel). Statements started on a cancelled token fail immediately.
+ *
+ * Every statement run through a token also gets a query timeout
+ * (studysync.db.queryTimeoutSec, default 15, 0 disables).
+ *
+ * Usage:
+ * CancelToken token = new CancelToken();
+ * DbExecutor.supply(() -> repository.findForTeacher(..., token));
+ * ...
+ * token.cancel(); // the user typed again
+ *
+ * Statement.cancel() is sent from a DbExecutor thread, never from the caller, since the
+ * driver opens a separate connection to deliver it.
+ */
+public final class CancelToken {
+
+    /** For calls that cannot be cancelled; still applies the query timeout */
+    public static final CancelToken NONE = new CancelToken(false);
+
+    private static final int QUERY_TIMEOUT_SECONDS = Integer.getInteger("studysync.db.queryTimeoutSec", 15);
+    private static final AtomicLong cancelledStatements = new AtomicLong();
+
+    private final boolean cancellable;
+    private boolean cancelled;
+    private Statement running;
+
+    public CancelToken() {
+        this(true);
+    }
+
+    private CancelToken(boolean cancellable) {
+        this.cancellable = cancellable;
+    }
+
+    /**
+     * Call right before executing the statement
+     *
+     * @throws SQLException if the token was already cancelled
+     */
+    public void begin(Statement statement) throws SQLException {
+        if (QUERY_TIMEOUT_SECONDS > 0) {
+            statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+        }
+        if (!cancellable) {
+            return;
+        }
+        synchronized (this) {
+            if (cancelled) {
+                throw new SQLException("Query cancelled", "70100");
+            }
+            running = statement;
+        }
+    }
+
+    /**
+     * Call once the statement's results have been read (in a finally block).
+     * After this returns, cancel() no longer touches the statement.
+     */
+    public void end(Statement statement) {
+        if (!cancellable) {
+            return;
+        }
+        synchronized (this) {
+            if (running == statement) {
+                running = null;
+            }
+        }
+    }
+
+    /**
+     * Mark the token cancelled and stop its running statement, if any. Safe to call
+     * from the event dispatch thread and more than once.
+     */
+    public void cancel() {
+        if (!cancellable) {
+            return;
+        }
+        Statement statement;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            statement = running;
+        }
+        if (statement != null) {
+            DbExecutor.run(() -> cancelIfRunning(statement));
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return statements stopped server-side since startup
+     */
+    public static long getCancelledStatements() {
+        return cancelledStatements.get();
+    }
+
+    // Holding the lock keeps end() (and therefore the statement's return to the
+    // connection's cache) from racing with the cancel
+    private synchronized void cancelIfRunning(Statement statement) {
+        if (running != statement) {
+            return;
+        }
+        try {
+            statement.cancel();
+            cancelledStatements.incrementAndGet();
+        } catch (SQLException e) {
+            System.err.println("Could not cancel query: " + e.getMessage());
+        }
+    }
+}
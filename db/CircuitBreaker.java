@@ -0,0 +1,150 @@
+package db;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Stops calls to the database while it is down
+ *
+ * States:
+ * - CLOSED: calls go through; consecutive transient failures are counted
+ * - OPEN: after failureThreshold failures in a row, calls fail immediately with
+ *   DatabaseUnavailableException for openMillis
+ * - HALF_OPEN: once openMillis has passed, a single probe call is let through.
+ *   Success closes the breaker, failure opens it again. Other callers keep failing
+ *   fast while the probe is running.
+ *
+ * Listeners are told about every state change (on the thread that caused it), which
+ * is how the UI learns that the application is running degraded.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final List<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+    private long timesOpened;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Call before contacting the database
+     *
+     * @throws DatabaseUnavailableException if the breaker is open, or half-open with its probe already running
+     */
+    public void acquirePermission() throws DatabaseUnavailableException {
+        State changed = null;
+        synchronized (this) {
+            if (state == State.OPEN) {
+                long waited = System.currentTimeMillis() - openedAt;
+                if (waited < openMillis) {
+                    throw unavailable(openMillis - waited);
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = false;
+                changed = state;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probeInFlight) {
+                    throw unavailable(0);
+                }
+                probeInFlight = true;
+            }
+        }
+        notifyListeners(changed);
+    }
+
+    /**
+     * The permitted call reached the database
+     */
+    public void onSuccess() {
+        State changed = null;
+        synchronized (this) {
+            consecutiveFailures = 0;
+            probeInFlight = false;
+            if (state != State.CLOSED) {
+                state = State.CLOSED;
+                changed = state;
+                System.out.println("Database '" + name + "' reachable again, circuit closed");
+            }
+        }
+        notifyListeners(changed);
+    }
+
+    /**
+     * The permitted call failed with a transient (connection-level) error
+     */
+    public void onFailure() {
+        State changed = null;
+        synchronized (this) {
+            probeInFlight = false;
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+                timesOpened++;
+                changed = state;
+                System.err.println("Database '" + name + "' unavailable after " + consecutiveFailures
+                    + " failures, failing fast for " + openMillis + " ms");
+            }
+        }
+        notifyListeners(changed);
+    }
+
+    /**
+     * The permitted call failed for a reason unrelated to availability (e.g. bad SQL).
+     * Releases a half-open probe without changing the state.
+     */
+    public synchronized void onIgnoredFailure() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long getTimesOpened() {
+        return timesOpened;
+    }
+
+    public void addListener(Consumer<State> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<State> listener) {
+        listeners.remove(listener);
+    }
+
+    private DatabaseUnavailableException unavailable(long retryAfterMillis) {
+        return new DatabaseUnavailableException("Database '" + name + "' is temporarily unavailable"
+            + (retryAfterMillis > 0 ? ", retrying in " + (retryAfterMillis + 999) / 1000 + "s" : ", reconnecting"),
+            retryAfterMillis);
+    }
+
+    private void notifyListeners(State changed) {
+        if (changed == null) {
+            return;
+        }
+        for (Consumer<State> listener : listeners) {
+            try {
+                listener.accept(changed);
+            } catch (RuntimeException e) {
+                System.err.println("Circuit breaker listener failed: " + e.getMessage());
+            }
+        }
+    }
+}
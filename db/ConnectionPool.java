@@ -0,0 +1,580 @@
+package db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded JDBC Connection Pool
+ *
+ * Keeps a set of physical database connections open and lends them out to callers,
+ * so a click in the UI costs a pool checkout instead of a TCP + authentication handshake.
+ *
+ * Pool Rules:
+ * - Never holds more than maxSize physical connections (borrowers wait up to borrowTimeout)
+ * - Keeps at least minSize connections open once started
+ * - Validates a connection on borrow if it has been idle for a while
+ * - Closes connections idle longer than idleTimeout (down to minSize)
+ * - Retires connections older than maxLifetime, even if they are healthy
+ *
+ * Borrowed connections are handed out behind a proxy: calling close() returns the
+ * physical connection to the pool instead of closing it, so the usual
+ * try-with-resources pattern keeps working unchanged.
+ *
+ * Leak Protection:
+ * - Statements created on a borrowed connection are closed when it is returned,
+ *   together with their result sets
+ * - The borrower's stack trace is recorded; a warning is printed if the connection
+ *   is held longer than leakDetectionThreshold
+ *
+ * Prepared Statement Cache:
+ * - Each physical connection prepares a {@link NamedQuery} once and keeps the
+ *   statement for its whole lifetime, so repeated clicks skip parse/plan work
+ *
+ * Live gauges (active, idle, waiting threads, borrow latency) are available through
+ * {@link ConnectionPoolMXBean}.
+ *
+ * @see DBConnection
+ */
+public class ConnectionPool implements ConnectionPoolMXBean {
+
+    /**
+     * Pool sizing and lifecycle limits
+     */
+    public static class Settings {
+        public int minSize = 2;
+        public int maxSize = 10;
+        public long borrowTimeoutMillis = 10_000;
+        public long idleTimeoutMillis = 5 * 60_000;
+        public long maxLifetimeMillis = 30 * 60_000;
+        public int validationTimeoutSeconds = 2;
+        public long housekeepingIntervalMillis = 30_000;
+        // Connections used more recently than this are trusted without a ping
+        public long validationBypassMillis = 500;
+        // Warn when a connection is held longer than this (0 disables leak detection)
+        public long leakDetectionThresholdMillis = 60_000;
+    }
+
+    private final String name;
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Settings settings;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    // Telemetry
+    private final Set<Lease> activeLeases = ConcurrentHashMap.newKeySet();
+    private final LatencyHistogram borrowLatency = new LatencyHistogram();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final AtomicLong statementsClosedOnReturn = new AtomicLong();
+
+    public ConnectionPool(String name, String url, String user, String password, Settings settings) {
+        this.name = name;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-" + name + "-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeep,
+            settings.housekeepingIntervalMillis, settings.housekeepingIntervalMillis, TimeUnit.MILLISECONDS);
+
+        if (settings.leakDetectionThresholdMillis > 0) {
+            long interval = Math.max(1_000, settings.leakDetectionThresholdMillis / 4);
+            this.housekeeper.scheduleWithFixedDelay(this::detectLeaks, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Borrow a connection from the pool, waiting up to borrowTimeout if all are in use
+     *
+     * @return Connection whose close() hands it back to the pool
+     * @throws SQLException if no connection becomes available in time or the database is unreachable
+     */
+    public Connection borrow() throws SQLException {
+        return borrow(null);
+    }
+
+    /**
+     * Borrow a connection and run a callback once the borrower hands it back
+     *
+     * @param onReturn called after the connection has been returned (may be null)
+     * @return Connection whose close() hands it back to the pool
+     * @throws SQLException if no connection becomes available in time or the database is unreachable
+     */
+    public Connection borrow(Runnable onReturn) throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool '" + name + "' has been shut down");
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(settings.borrowTimeoutMillis);
+        try {
+            if (!permits.tryAcquire(settings.borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.incrementAndGet();
+                throw new SQLTransientConnectionException("Timed out after " + settings.borrowTimeoutMillis
+                    + " ms waiting for a database connection (pool '" + name + "', max " + settings.maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            while (true) {
+                PooledConnection pc = idle.pollFirst();
+                if (pc != null) {
+                    if (isUsable(pc)) {
+                        return lease(pc, start, onReturn);
+                    }
+                    destroy(pc);
+                    continue;
+                }
+
+                // Nothing idle: open a new physical connection if we are under the cap
+                if (reserveSlot()) {
+                    return lease(create(), start, onReturn);
+                }
+
+                // At the cap with our permit held, so an idle connection is on its way back
+                long remaining = deadline - System.nanoTime();
+                pc = idle.pollFirst(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+                if (pc == null) {
+                    borrowTimeouts.incrementAndGet();
+                    throw new SQLTransientConnectionException("Timed out waiting for an idle connection (pool '" + name + "')");
+                }
+                idle.offerFirst(pc);
+            }
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        } catch (InterruptedException e) {
+            permits.release();
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    /**
+     * Open connections until the pool holds at least minSize of them
+     */
+    public void fillToMinimum() {
+        while (!closed && totalConnections.get() < settings.minSize) {
+            if (!reserveSlot()) {
+                return;
+            }
+            try {
+                idle.offerLast(create());
+            } catch (SQLException e) {
+                System.err.println("Pool '" + name + "': could not open connection: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Close every idle connection and stop handing out new ones.
+     * Connections still borrowed are closed when they are returned.
+     */
+    public void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destroy(pc);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // ---------------- Gauges ----------------
+
+    @Override
+    public int getActiveConnections() {
+        return activeLeases.size();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    @Override
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return settings.maxSize;
+    }
+
+    @Override
+    public int getThreadsAwaitingConnection() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public long getBorrowCount() {
+        return borrowLatency.getCount();
+    }
+
+    @Override
+    public long getBorrowTimeouts() {
+        return borrowTimeouts.get();
+    }
+
+    @Override
+    public long getLeaksDetected() {
+        return leaksDetected.get();
+    }
+
+    @Override
+    public long getStatementsClosedOnReturn() {
+        return statementsClosedOnReturn.get();
+    }
+
+    @Override
+    public double getBorrowLatencyP50Millis() {
+        return borrowLatency.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getBorrowLatencyP99Millis() {
+        return borrowLatency.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getBorrowLatencyMaxMillis() {
+        return borrowLatency.getMaxMillis();
+    }
+
+    @Override
+    public String getBorrowLatencyHistogram() {
+        return borrowLatency.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pool '%s': active=%d idle=%d total=%d/%d waiting=%d borrows=%d timeouts=%d leaks=%d p50=%.0fms p99=%.0fms",
+            name, getActiveConnections(), getIdleConnections(), getTotalConnections(), getMaxConnections(),
+            getThreadsAwaitingConnection(), getBorrowCount(), getBorrowTimeouts(), getLeaksDetected(),
+            getBorrowLatencyP50Millis(), getBorrowLatencyP99Millis());
+    }
+
+    // ---------------- Internals ----------------
+
+    private boolean reserveSlot() {
+        while (true) {
+            int current = totalConnections.get();
+            if (current >= settings.maxSize) {
+                return false;
+            }
+            if (totalConnections.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        try {
+            return new PooledConnection(DriverManager.getConnection(url, user, password));
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        long now = System.currentTimeMillis();
+        if (now - pc.createdAt >= settings.maxLifetimeMillis) {
+            return false;
+        }
+        if (now - pc.lastUsedAt < settings.validationBypassMillis) {
+            return true;
+        }
+        try {
+            return pc.connection.isValid(settings.validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection lease(PooledConnection pc, long borrowStartNanos, Runnable onReturn) {
+        Lease lease = new Lease(pc, onReturn);
+        activeLeases.add(lease);
+        borrowLatency.record(System.nanoTime() - borrowStartNanos);
+        return (Connection) Proxy.newProxyInstance(
+            ConnectionPool.class.getClassLoader(),
+            new Class<?>[]{Connection.class, StatementCache.class},
+            lease);
+    }
+
+    private void release(Lease lease) {
+        PooledConnection pc = lease.pc;
+        activeLeases.remove(lease);
+        lease.releaseNamedStatements();
+        lease.closeStatements();
+        if (lease.leakReported) {
+            System.err.println("Pool '" + name + "': previously reported connection returned after "
+                + lease.heldMillis() + " ms (borrowed by thread " + lease.borrowThread + ")");
+        }
+
+        try {
+            boolean reusable = !closed
+                && !pc.connection.isClosed()
+                && System.currentTimeMillis() - pc.createdAt < settings.maxLifetimeMillis;
+
+            if (reusable) {
+                try {
+                    // Never hand an open transaction or read-only flag to the next borrower
+                    if (!pc.connection.getAutoCommit()) {
+                        pc.connection.rollback();
+                        pc.connection.setAutoCommit(true);
+                    }
+                    if (pc.connection.isReadOnly()) {
+                        pc.connection.setReadOnly(false);
+                    }
+                    pc.connection.clearWarnings();
+                } catch (SQLException e) {
+                    reusable = false;
+                }
+            }
+
+            if (reusable) {
+                pc.lastUsedAt = System.currentTimeMillis();
+                idle.offerFirst(pc);
+            } else {
+                destroy(pc);
+            }
+        } catch (SQLException e) {
+            destroy(pc);
+        } finally {
+            permits.release();
+            if (lease.onReturn != null) {
+                lease.onReturn.run();
+            }
+        }
+    }
+
+    private void destroy(PooledConnection pc) {
+        totalConnections.decrementAndGet();
+        try {
+            pc.connection.close();
+        } catch (SQLException e) {
+            // Already broken - nothing more to do
+        }
+    }
+
+    private void detectLeaks() {
+        long threshold = settings.leakDetectionThresholdMillis;
+        for (Lease lease : activeLeases) {
+            if (!lease.leakReported && lease.heldMillis() > threshold) {
+                lease.leakReported = true;
+                leaksDetected.incrementAndGet();
+                System.err.println("Pool '" + name + "': possible connection leak - connection held for "
+                    + lease.heldMillis() + " ms by thread " + lease.borrowThread + ". Borrowed at:");
+                lease.borrowSite.printStackTrace();
+            }
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection pc : idle.toArray(new PooledConnection[0])) {
+            boolean expired = now - pc.createdAt >= settings.maxLifetimeMillis;
+            boolean idleTooLong = now - pc.lastUsedAt >= settings.idleTimeoutMillis
+                && totalConnections.get() > settings.minSize;
+            if ((expired || idleTooLong) && idle.remove(pc)) {
+                destroy(pc);
+            }
+        }
+        fillToMinimum();
+    }
+
+    /**
+     * Implemented by every borrowed connection; use {@link QueryRegistry#prepare} rather than calling it directly
+     */
+    interface StatementCache {
+        PreparedStatement prepareNamed(NamedQuery query) throws SQLException;
+    }
+
+    // Physical connection plus the bookkeeping the pool needs
+    private static class PooledConnection {
+        final Connection connection;
+        final long createdAt;
+        volatile long lastUsedAt;
+        // Only touched by the current borrower, so no locking needed
+        final Map<NamedQuery, PreparedStatement> statementCache = new HashMap<>();
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.createdAt = System.currentTimeMillis();
+            this.lastUsedAt = this.createdAt;
+        }
+    }
+
+    // Logical connection handed to one borrower; close() returns it to the pool
+    private class Lease implements InvocationHandler {
+        private final PooledConnection pc;
+        private final Runnable onReturn;
+        private final AtomicBoolean returned = new AtomicBoolean();
+        private final List<Statement> statements = new ArrayList<>();
+        private final List<NamedStatement> namedStatements = new ArrayList<>();
+
+        // Leak tracking
+        final long borrowedAt = System.currentTimeMillis();
+        final String borrowThread = Thread.currentThread().getName();
+        final Throwable borrowSite;
+        volatile boolean leakReported;
+
+        Lease(PooledConnection pc, Runnable onReturn) {
+            this.pc = pc;
+            this.onReturn = onReturn;
+            this.borrowSite = settings.leakDetectionThresholdMillis > 0
+                ? new Throwable("Connection borrowed by " + borrowThread)
+                : null;
+        }
+
+        long heldMillis() {
+            return System.currentTimeMillis() - borrowedAt;
+        }
+
+        synchronized void track(Statement stmt) {
+            // Drop statements the caller already closed so long-held connections don't accumulate them
+            if (statements.size() >= 32) {
+                statements.removeIf(s -> {
+                    try {
+                        return s.isClosed();
+                    } catch (SQLException e) {
+                        return true;
+                    }
+                });
+            }
+            statements.add(stmt);
+        }
+
+        synchronized PreparedStatement prepareNamed(NamedQuery query) throws SQLException {
+            PreparedStatement ps = pc.statementCache.get(query);
+            if (ps == null || ps.isClosed()) {
+                ps = query.returnsGeneratedKeys()
+                    ? pc.connection.prepareStatement(query.getSql(), Statement.RETURN_GENERATED_KEYS)
+                    : pc.connection.prepareStatement(query.getSql());
+                query.recordPrepare();
+                pc.statementCache.put(query, ps);
+            } else {
+                ps.clearParameters();
+            }
+            PreparedStatement handle = NamedStatement.wrap(ps, query, true);
+            namedStatements.add(NamedStatement.handlerOf(handle));
+            return handle;
+        }
+
+        // Reset cached statements for the next borrower without closing them
+        synchronized void releaseNamedStatements() {
+            for (NamedStatement named : namedStatements) {
+                try {
+                    named.release();
+                } catch (SQLException e) {
+                    // The connection is validated again before its next use
+                }
+            }
+            namedStatements.clear();
+        }
+
+        // Close whatever the borrower left open (closing a statement also closes its result sets)
+        synchronized void closeStatements() {
+            for (Statement stmt : statements) {
+                try {
+                    if (!stmt.isClosed()) {
+                        stmt.close();
+                        statementsClosedOnReturn.incrementAndGet();
+                    }
+                } catch (SQLException e) {
+                    // Statement is unusable anyway
+                }
+            }
+            statements.clear();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || pc.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + name + "] " + pc.connection;
+                default:
+                    break;
+            }
+
+            if (returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (method.getDeclaringClass() == StatementCache.class) {
+                return prepareNamed((NamedQuery) args[0]);
+            }
+            Object result;
+            try {
+                result = method.invoke(pc.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            // Raw SQL is traced under its normalized text (see QueryTracer)
+            if (method.getName().equals("prepareStatement")) {
+                NamedQuery adhoc = QueryTracer.adhoc((String) args[0]);
+                adhoc.recordPrepare();
+                result = NamedStatement.wrap((PreparedStatement) result, adhoc, false);
+            } else if (method.getName().equals("createStatement")) {
+                result = QueryTracer.traceStatement((Statement) result);
+            }
+            if (result instanceof Statement) {
+                track((Statement) result);
+            }
+            return result;
+        }
+    }
+}
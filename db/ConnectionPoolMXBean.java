@@ -0,0 +1,34 @@
+package db;
+
+/**
+ * Live pool gauges published over JMX (jconsole / VisualVM: studysync.db -> ConnectionPool)
+ *
+ * @see ConnectionPool
+ */
+public interface ConnectionPoolMXBean {
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getTotalConnections();
+
+    int getMaxConnections();
+
+    int getThreadsAwaitingConnection();
+
+    long getBorrowCount();
+
+    long getBorrowTimeouts();
+
+    long getLeaksDetected();
+
+    long getStatementsClosedOnReturn();
+
+    double getBorrowLatencyP50Millis();
+
+    double getBorrowLatencyP99Millis();
+
+    double getBorrowLatencyMaxMillis();
+
+    String getBorrowLatencyHistogram();
+}
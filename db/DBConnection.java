@@ -1,49 +1,368 @@
 package db;
 
+import java.lang.management.ManagementFactory;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.management.ObjectName;
 
 /**
  * Database Connection Manager
- * 
+ *
  * This class provides centralized database connection management for the StudySync application.
- * It implements the singleton pattern for connection handling and ensures consistent
- * database access across the application.
- * 
+ * Every data path in the application borrows its connections from here, so all of them
+ * share bounded connection pools instead of opening a new physical connection per click.
+ *
  * Connection Details:
  * - Database: pdfshare (StudySync main database)
  * - Type: MariaDB (Compatible with MySQL)
  * - Port: 3306 (Default MariaDB port)
  * - Host: localhost (Local development database)
- * 
+ *
+ * Read/Write Routing:
+ * - getWriteConnection() always goes to the primary
+ * - getReadConnection() goes to a read replica (round robin) when replicas are configured,
+ *   and falls back to the primary if none is reachable
+ * - Read-your-writes: after this session writes, reads stay on the primary for
+ *   studysync.db.readYourWritesMs so a just-uploaded file is never missing from the list.
+ *   The desktop client is one user session, so stickiness is tracked per JVM.
+ * - getMaintenanceConnection() is for background jobs (reclaimer, scrubber): it goes to the
+ *   primary without making this session's reads sticky
+ *
+ * Pool Settings (overridable with -D system properties):
+ * - studysync.db.pool.minSize (default 2)
+ * - studysync.db.pool.maxSize (default 10)
+ * - studysync.db.pool.borrowTimeoutMs (default 10000)
+ * - studysync.db.pool.idleTimeoutMs (default 300000)
+ * - studysync.db.pool.maxLifetimeMs (default 1800000)
+ * - studysync.db.pool.leakThresholdMs (default 60000, 0 disables leak warnings)
+ * - studysync.db.replicas (comma-separated JDBC URLs, default none)
+ * - studysync.db.readYourWritesMs (default 5000)
+ * - studysync.db.queryTimeoutSec (default 15, applied to cancellable UI queries; see CancelToken)
+ * - prime() opens the minimum connections ahead of time; Main calls it at startup
+ *
+ * Outages:
+ * - Transient failures to get a primary connection (server restarting, connection refused,
+ *   too many connections) are retried with jittered exponential backoff (RetryPolicy)
+ * - After studysync.db.breaker.failureThreshold failures in a row the circuit breaker opens:
+ *   calls fail fast with DatabaseUnavailableException instead of adding connection attempts,
+ *   and a single probe is let through every studysync.db.breaker.openMs
+ * - isDegraded() / addHealthListener() let the UI show that the database is unavailable
+ * - Settings: studysync.db.retry.maxAttempts (default 3), studysync.db.retry.baseDelayMs (100),
+ *   studysync.db.retry.maxDelayMs (2000), studysync.db.breaker.failureThreshold (5),
+ *   studysync.db.breaker.openMs (5000)
+ *
+ * Prepared Statements:
+ * - Queries are declared in QueryRegistry and prepared once per pooled connection
+ * - Replica URLs should also carry useServerPrepStmts=true
+ *
+ * Monitoring:
+ * - QueryRegistry.report() prints per-query execution counts and latency
+ * - QueryTracer.report() adds ad-hoc SQL, rows/blob bytes, connection wait and slow-query
+ *   samples (studysync.db.slowQueryMs, default 500; studysync.db.printStatsOnExit=true
+ *   prints it at shutdown)
+ * - getPoolStats() returns live gauges (active, idle, waiting threads, borrow latency)
+ * - Every pool is registered over JMX as studysync.db:type=ConnectionPool,name=...
+ *
  * Security Features:
  * - Centralized credential management
- * - Connection pooling support
+ * - Connection pooling with validation on borrow
  * - Automatic resource cleanup
- * 
+ *
  * Usage:
- * try (Connection conn = DBConnection.getConnection()) {
- *     // Perform database operations
+ * try (Connection conn = DBConnection.getReadConnection()) {
+ *     // Perform read-only queries
  * } catch (Exception e) {
  *     // Handle connection errors
  * }
- * 
+ * Closing the connection returns it to the pool.
+ *
  * @see java.sql.Connection
+ * @see ConnectionPool
  * @see org.mariadb.jdbc.Driver
  */
 public class DBConnection {
     // Database connection configuration
-    private static final String URL = "jdbc:mariadb://localhost:3306/pdfshare";
-    private static final String USER = "pdfshare"; 
+    // Server-side prepared statements pair with the per-connection statement cache
+    private static final String URL = "jdbc:mariadb://localhost:3306/pdfshare?useServerPrepStmts=true";
+    private static final String USER = "pdfshare";
     private static final String PASS = "toor";
 
+    // Replica routing configuration
+    private static final String REPLICA_URLS = System.getProperty("studysync.db.replicas", "");
+    private static final long READ_YOUR_WRITES_MILLIS = Long.getLong("studysync.db.readYourWritesMs", 5_000);
+    private static final long REPLICA_RETRY_MILLIS = 30_000;
+
+    // Outage handling for the primary
+    private static final RetryPolicy RETRY = new RetryPolicy(
+        Integer.getInteger("studysync.db.retry.maxAttempts", 3),
+        Long.getLong("studysync.db.retry.baseDelayMs", 100),
+        Long.getLong("studysync.db.retry.maxDelayMs", 2_000));
+    private static final CircuitBreaker BREAKER = new CircuitBreaker("primary",
+        Integer.getInteger("studysync.db.breaker.failureThreshold", 5),
+        Long.getLong("studysync.db.breaker.openMs", 5_000));
+
+    private static ConnectionPool pool;
+    private static List<Replica> replicas = Collections.emptyList();
+    private static final AtomicInteger nextReplica = new AtomicInteger();
+
+    // Read-your-writes tracking
+    private static final AtomicInteger writesInFlight = new AtomicInteger();
+    private static volatile long lastWriteFinishedAt;
+
+    /**
+     * Provides a pooled connection to the primary database.
+     * Same as getWriteConnection(); kept for callers that mix reads and writes.
+     *
+     * @return Connection object for database operations; close() returns it to the pool
+     * @throws SQLException if no connection could be obtained
+     */
+    public static Connection getConnection() throws SQLException {
+        return getWriteConnection();
+    }
+
+    /**
+     * Provides a pooled connection to the primary for statements that modify data.
+     * Reads issued shortly after it is returned are routed to the primary as well.
+     *
+     * @return Connection to the primary; close() returns it to the pool
+     * @throws SQLException if no connection could be obtained
+     */
+    public static Connection getWriteConnection() throws SQLException {
+        ConnectionPool primary = getPool();
+        writesInFlight.incrementAndGet();
+        try {
+            return acquire(() -> primary.borrow(DBConnection::writeFinished));
+        } catch (SQLException e) {
+            writesInFlight.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Provides a pooled connection to the primary for background maintenance writes.
+     * Unlike getWriteConnection() it leaves read routing alone: nobody waits to read
+     * these changes back, so the UI keeps reading from replicas while a job runs.
+     *
+     * @return Connection to the primary; close() returns it to the pool
+     * @throws SQLException if no connection could be obtained
+     */
+    public static Connection getMaintenanceConnection() throws SQLException {
+        ConnectionPool primary = getPool();
+        return acquire(primary::borrow);
+    }
+
+    // A physical connection to the primary outside the pools, for a lock held as long as a
+    // job runs (MaintenanceLease); close() closes it
+    static Connection openDedicatedConnection() throws SQLException {
+        getPool(); // loads the driver
+        return acquire(() -> DriverManager.getConnection(URL, USER, PASS));
+    }
+
+    /**
+     * Provides a pooled, read-only connection for queries.
+     * Uses a replica when one is configured and reachable, unless this session
+     * wrote recently (read-your-writes), in which case the primary is used.
+     *
+     * @return Connection for read-only work; close() returns it to the pool
+     * @throws SQLException if no connection could be obtained
+     */
+    public static Connection getReadConnection() throws SQLException {
+        ConnectionPool primary = getPool();
+        List<Replica> candidates = replicas;
+        if (candidates.isEmpty() || isStickyToPrimary()) {
+            return acquire(primary::borrow);
+        }
+
+        int start = Math.floorMod(nextReplica.getAndIncrement(), candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            Replica replica = candidates.get((start + i) % candidates.size());
+            long now = System.currentTimeMillis();
+            if (replica.downUntil > now) {
+                continue;
+            }
+            Connection conn = null;
+            try {
+                conn = replica.pool.borrow();
+                conn.setReadOnly(true);
+                return conn;
+            } catch (SQLException e) {
+                if (conn != null) {
+                    conn.close();
+                }
+                replica.downUntil = now + REPLICA_RETRY_MILLIS;
+                System.err.println("Replica '" + replica.pool.getName() + "' unavailable, reading from primary for "
+                    + REPLICA_RETRY_MILLIS / 1000 + "s: " + e.getMessage());
+            }
+        }
+        return acquire(primary::borrow);
+    }
+
+    /**
+     * Open minSize connections on the primary and every replica up front, so the first
+     * queries after startup do not pay for the TCP/TLS handshake and authentication.
+     * Safe to call from a background thread while the UI starts.
+     */
+    public static void prime() throws SQLException {
+        // Creating the pool fills it; borrowing once reports failures to the retry policy
+        // and circuit breaker instead of only logging them
+        ConnectionPool primary = getPool();
+        acquire(primary::borrow).close();
+        for (Replica replica : replicas) {
+            replica.pool.fillToMinimum();
+        }
+    }
+
+    /**
+     * @return true while the primary is considered down and calls fail fast
+     */
+    public static boolean isDegraded() {
+        return BREAKER.getState() != CircuitBreaker.State.CLOSED;
+    }
+
+    public static CircuitBreaker.State getCircuitState() {
+        return BREAKER.getState();
+    }
+
+    /**
+     * Be told when the primary goes down (OPEN), is being probed (HALF_OPEN) or
+     * recovers (CLOSED). Called on the thread that observed the change.
+     */
+    public static void addHealthListener(Consumer<CircuitBreaker.State> listener) {
+        BREAKER.addListener(listener);
+    }
+
+    public static void removeHealthListener(Consumer<CircuitBreaker.State> listener) {
+        BREAKER.removeListener(listener);
+    }
+
+    /**
+     * Live gauges of the primary pool: active/idle connections, waiting threads,
+     * borrow latency histogram, detected leaks. Values are read at call time.
+     */
+    public static ConnectionPoolMXBean getPoolStats() {
+        return getPool();
+    }
+
+    /**
+     * Live gauges of every pool, primary first, then replicas
+     */
+    public static List<ConnectionPoolMXBean> getAllPoolStats() {
+        List<ConnectionPoolMXBean> stats = new ArrayList<>();
+        stats.add(getPool());
+        for (Replica replica : replicas) {
+            stats.add(replica.pool);
+        }
+        return stats;
+    }
+
     /**
-     * Provides a connection to the database
-     * 
-     * @return Connection object for database operations
-     * @throws Exception if connection fails or driver not found
+     * Close all pooled connections (called automatically on JVM exit)
      */
-    public static Connection getConnection() throws Exception {
-        Class.forName("org.mariadb.jdbc.Driver");
-        return DriverManager.getConnection(URL, USER, PASS);
+    public static synchronized void shutdown() {
+        if (pool != null && Boolean.getBoolean("studysync.db.printStatsOnExit")) {
+            System.out.println(QueryTracer.report());
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        for (Replica replica : replicas) {
+            replica.pool.shutdown();
+        }
+        replicas = Collections.emptyList();
+    }
+
+    // Borrow from the primary through the circuit breaker, retrying transient failures.
+    // Only the borrow is retried: a statement that failed half way may already have
+    // changed data, so callers decide about re-running their own work.
+    private static Connection acquire(RetryPolicy.SqlCall<Connection> borrow) throws SQLException {
+        return RETRY.execute(() -> {
+            BREAKER.acquirePermission();
+            try {
+                Connection conn = borrow.call();
+                BREAKER.onSuccess();
+                return conn;
+            } catch (SQLException e) {
+                if (RetryPolicy.isTransient(e)) {
+                    BREAKER.onFailure();
+                } else {
+                    BREAKER.onIgnoredFailure();
+                }
+                throw e;
+            }
+        });
+    }
+
+    private static boolean isStickyToPrimary() {
+        return writesInFlight.get() > 0
+            || System.currentTimeMillis() - lastWriteFinishedAt < READ_YOUR_WRITES_MILLIS;
+    }
+
+    private static void writeFinished() {
+        lastWriteFinishedAt = System.currentTimeMillis();
+        writesInFlight.decrementAndGet();
+    }
+
+    private static synchronized ConnectionPool getPool() {
+        if (pool == null) {
+            try {
+                Class.forName("org.mariadb.jdbc.Driver");
+            } catch (ClassNotFoundException e) {
+                System.err.println("MariaDB driver not on classpath, relying on JDBC auto-loading");
+            }
+            pool = new ConnectionPool("primary", URL, USER, PASS, loadPoolSettings());
+            pool.fillToMinimum();
+            registerMBean(pool);
+
+            List<Replica> configured = new ArrayList<>();
+            for (String replicaUrl : REPLICA_URLS.split(",")) {
+                if (!replicaUrl.isBlank()) {
+                    ConnectionPool replicaPool = new ConnectionPool("replica-" + (configured.size() + 1),
+                        replicaUrl.trim(), USER, PASS, loadPoolSettings());
+                    registerMBean(replicaPool);
+                    configured.add(new Replica(replicaPool));
+                }
+            }
+            replicas = Collections.unmodifiableList(configured);
+
+            Runtime.getRuntime().addShutdownHook(new Thread(DBConnection::shutdown, "db-pool-shutdown"));
+        }
+        return pool;
+    }
+
+    private static ConnectionPool.Settings loadPoolSettings() {
+        ConnectionPool.Settings settings = new ConnectionPool.Settings();
+        settings.minSize = Integer.getInteger("studysync.db.pool.minSize", settings.minSize);
+        settings.maxSize = Integer.getInteger("studysync.db.pool.maxSize", settings.maxSize);
+        settings.borrowTimeoutMillis = Long.getLong("studysync.db.pool.borrowTimeoutMs", settings.borrowTimeoutMillis);
+        settings.idleTimeoutMillis = Long.getLong("studysync.db.pool.idleTimeoutMs", settings.idleTimeoutMillis);
+        settings.maxLifetimeMillis = Long.getLong("studysync.db.pool.maxLifetimeMs", settings.maxLifetimeMillis);
+        settings.leakDetectionThresholdMillis = Long.getLong("studysync.db.pool.leakThresholdMs", settings.leakDetectionThresholdMillis);
+        return settings;
+    }
+
+    private static void registerMBean(ConnectionPool pool) {
+        try {
+            ObjectName objectName = new ObjectName("studysync.db:type=ConnectionPool,name=" + pool.getName());
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(pool, objectName);
+            }
+        } catch (Exception e) {
+            System.err.println("Warning: Could not register pool metrics over JMX: " + e.getMessage());
+        }
+    }
+
+    // A read replica and when it may be tried again after a failure
+    private static class Replica {
+        final ConnectionPool pool;
+        volatile long downUntil;
+
+        Replica(ConnectionPool pool) {
+            this.pool = pool;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,30 @@
+package db;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Thrown without contacting the database while the circuit breaker is open
+ *
+ * The database recently failed several connection attempts in a row, so calls fail
+ * fast instead of piling more connection attempts onto a server that is recovering.
+ * It is never retried by {@link RetryPolicy}.
+ *
+ * @see CircuitBreaker
+ */
+public class DatabaseUnavailableException extends SQLTransientConnectionException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public DatabaseUnavailableException(String message, long retryAfterMillis) {
+        super(message, "08001");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return milliseconds until the breaker lets the next probe through
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
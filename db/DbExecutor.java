@@ -0,0 +1,77 @@
+package db;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs database work off the caller's thread
+ *
+ * Every call gets its own virtual thread, so blocking JDBC never holds up the
+ * Swing event dispatch thread. Concurrency against the database is still bounded
+ * by the connection pool: extra calls simply wait for a free connection.
+ *
+ * Usage:
+ * DbExecutor.supply(() -> repository.findBySubject(subjectId))
+ *     .whenCompleteAsync((files, error) -> { ... }, SwingUtilities::invokeLater);
+ *
+ * Checked exceptions thrown by the call complete the future exceptionally
+ * (wrapped in a CompletionException).
+ */
+public final class DbExecutor {
+
+    /**
+     * A unit of database work that returns a value
+     */
+    @FunctionalInterface
+    public interface DbCall<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * A unit of database work without a result
+     */
+    @FunctionalInterface
+    public interface DbTask {
+        void run() throws Exception;
+    }
+
+    private static final ExecutorService EXECUTOR =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("studysync-db-", 0).factory());
+
+    private static final AtomicInteger inFlight = new AtomicInteger();
+
+    private DbExecutor() {
+    }
+
+    public static <T> CompletableFuture<T> supply(DbCall<T> call) {
+        inFlight.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }, EXECUTOR);
+    }
+
+    public static CompletableFuture<Void> run(DbTask task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return calls submitted but not finished yet
+     */
+    public static int getInFlight() {
+        return inFlight.get();
+    }
+}
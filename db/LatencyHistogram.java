@@ -0,0 +1,96 @@
+package db;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Latency Histogram
+ *
+ * Counts timings into fixed millisecond buckets so they can be recorded from many
+ * threads without contention and read at any time as a live gauge.
+ *
+ * Bucket upper bounds (ms): 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, +inf
+ *
+ * Percentiles are reported as the upper bound of the bucket they fall in, which is
+ * precise enough to spot a pool that has started queueing.
+ */
+public class LatencyHistogram {
+    private static final long[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record one observation
+     *
+     * @param nanos elapsed time in nanoseconds
+     */
+    public void record(long nanos) {
+        long millis = nanos / 1_000_000;
+        int i = 0;
+        while (i < BUCKET_BOUNDS_MS.length && millis >= BUCKET_BOUNDS_MS[i]) {
+            i++;
+        }
+        buckets.incrementAndGet(i);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / 1_000_000.0 / n;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Estimate a percentile from the bucket counts
+     *
+     * @param percentile value between 0 and 100
+     * @return bucket upper bound in ms (or the observed max for the overflow bucket)
+     */
+    public double getPercentileMillis(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return i < BUCKET_BOUNDS_MS.length ? BUCKET_BOUNDS_MS[i] : getMaxMillis();
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * @return bucket counts, e.g. "<1ms=40 <2ms=3 ... >=10000ms=0"
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < buckets.length(); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            if (i < BUCKET_BOUNDS_MS.length) {
+                sb.append('<').append(BUCKET_BOUNDS_MS[i]).append("ms=");
+            } else {
+                sb.append(">=").append(BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1]).append("ms=");
+            }
+            sb.append(buckets.get(i));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,61 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Lets only one client at a time run a background maintenance job
+ *
+ * Every desktop client schedules the reclaimer (and may schedule the scrubber), but they
+ * share one database and one blob store, so a run only starts where the lease is
+ * granted. The lease is a MariaDB named lock (GET_LOCK) held on a dedicated connection
+ * outside the pools: holding it for the length of a run takes no pooled connection and
+ * does not trip leak detection. The server releases the lock when the connection
+ * closes, so a client that dies or loses the database gives the lease up with it.
+ *
+ * Usage:
+ * try (MaintenanceLease lease = MaintenanceLease.tryAcquire("studysync.reclaim")) {
+ *     if (lease == null) {
+ *         return; // running on another client
+ *     }
+ *     ...
+ * }
+ */
+public final class MaintenanceLease implements AutoCloseable {
+    private final Connection connection;
+
+    private MaintenanceLease(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Take the lease without waiting
+     *
+     * @return the lease, or null if another client holds it
+     */
+    public static MaintenanceLease tryAcquire(String name) throws SQLException {
+        Connection conn = DBConnection.openDedicatedConnection();
+        try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.LEASE_ACQUIRE)) {
+            stmt.setString(1, name);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next() && rs.getInt("granted") == 1) {
+                return new MaintenanceLease(conn);
+            }
+        } catch (SQLException | RuntimeException e) {
+            conn.close();
+            throw e;
+        }
+        conn.close();
+        return null;
+    }
+
+    /**
+     * Give the lease up (closing the connection releases the lock)
+     */
+    @Override
+    public void close() throws SQLException {
+        connection.close();
+    }
+}
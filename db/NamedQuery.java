@@ -0,0 +1,124 @@
+package db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named, parameterized SQL statement from the {@link QueryRegistry}
+ *
+ * Each pooled connection prepares a named query once and reuses the prepared
+ * statement for every later execution. The query also keeps its own metrics:
+ * - executions and latency histogram
+ * - errors
+ * - prepares (roughly one per pooled connection when the cache is working)
+ * - rows fetched, blob bytes read and written, slow executions (see QueryTracer)
+ *
+ * SQL that bypasses the registry is tracked by QueryTracer under its normalized text.
+ */
+public final class NamedQuery {
+    private final String name;
+    private final String sql;
+    private final boolean returnsGeneratedKeys;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong prepares = new AtomicLong();
+    private final AtomicLong rowsFetched = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong slowExecutions = new AtomicLong();
+    private final AtomicLong lastSampledAt = new AtomicLong();
+
+    NamedQuery(String name, String sql, boolean returnsGeneratedKeys) {
+        this.name = name;
+        this.sql = sql;
+        this.returnsGeneratedKeys = returnsGeneratedKeys;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public boolean returnsGeneratedKeys() {
+        return returnsGeneratedKeys;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getExecutions() {
+        return latency.getCount();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getPrepares() {
+        return prepares.get();
+    }
+
+    public long getRowsFetched() {
+        return rowsFetched.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getSlowExecutions() {
+        return slowExecutions.get();
+    }
+
+    void recordExecution(long nanos) {
+        latency.record(nanos);
+    }
+
+    void recordError() {
+        errors.incrementAndGet();
+    }
+
+    void recordPrepare() {
+        prepares.incrementAndGet();
+    }
+
+    void recordRows(long rows) {
+        rowsFetched.addAndGet(rows);
+    }
+
+    void recordBytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    void recordBytesWritten(long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    /**
+     * Count a slow execution
+     *
+     * @return true if this one should be sampled (at most one sample per interval)
+     */
+    boolean recordSlow(long nowMillis, long sampleIntervalMillis) {
+        slowExecutions.incrementAndGet();
+        long last = lastSampledAt.get();
+        return nowMillis - last >= sampleIntervalMillis && lastSampledAt.compareAndSet(last, nowMillis);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-32s execs=%d prepares=%d errors=%d mean=%.1fms p99=%.0fms max=%.0fms"
+                + " rows=%d blobIn=%dB blobOut=%dB slow=%d",
+            name, getExecutions(), getPrepares(), getErrors(),
+            latency.getMeanMillis(), latency.getPercentileMillis(99), latency.getMaxMillis(),
+            getRowsFetched(), getBytesRead(), getBytesWritten(), getSlowExecutions());
+    }
+}
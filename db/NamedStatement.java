@@ -0,0 +1,141 @@
+package db;
+
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Caller-facing handle for a prepared {@link NamedQuery}
+ *
+ * Times every execution into the query's metrics, counts rows and blob bytes through
+ * QueryTracer, and remembers bind parameters (redacted to type and size) so slow
+ * executions can be sampled. For statements owned by a pooled
+ * connection's cache, close() only resets the handle (closes its last result set, clears
+ * parameters, any query timeout and any fetch size) so the physical prepared statement stays ready for the
+ * next borrower.
+ */
+class NamedStatement implements InvocationHandler {
+    private final PreparedStatement statement;
+    private final NamedQuery query;
+    private final boolean cached;
+    private ResultSet lastResult;
+    private final Map<Integer, String> binds = new TreeMap<>();
+    private boolean timeoutChanged;
+    private boolean fetchSizeChanged;
+    private boolean closed;
+
+    private NamedStatement(PreparedStatement statement, NamedQuery query, boolean cached) {
+        this.statement = statement;
+        this.query = query;
+        this.cached = cached;
+    }
+
+    static PreparedStatement wrap(PreparedStatement statement, NamedQuery query, boolean cached) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+            NamedStatement.class.getClassLoader(),
+            new Class<?>[]{PreparedStatement.class},
+            new NamedStatement(statement, query, cached));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        switch (name) {
+            case "close":
+                release();
+                return null;
+            case "isClosed":
+                return closed || statement.isClosed();
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return query.getName() + ": " + query.getSql();
+            default:
+                break;
+        }
+
+        if (closed) {
+            throw new SQLException("Statement '" + query.getName() + "' has already been closed");
+        }
+
+        if (name.equals("setQueryTimeout")) {
+            timeoutChanged = true;
+        } else if (name.equals("setFetchSize")) {
+            fetchSizeChanged = true;
+        } else if (name.equals("clearParameters")) {
+            binds.clear();
+        } else if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+            binds.put((Integer) args[0], name.equals("setNull") ? "NULL" : QueryTracer.redact(args[1]));
+            if (args[1] instanceof byte[]) {
+                query.recordBytesWritten(((byte[]) args[1]).length);
+            } else if (args[1] instanceof InputStream && args.length == 3 && args[2] instanceof Number) {
+                // setBinaryStream(index, stream, length): the driver sends exactly length bytes
+                long length = ((Number) args[2]).longValue();
+                binds.put((Integer) args[0], "stream(" + length + ")");
+                query.recordBytesWritten(length);
+            }
+        }
+
+        boolean timed = name.startsWith("execute");
+        long start = timed ? System.nanoTime() : 0;
+        try {
+            Object result = method.invoke(statement, args);
+            if (timed) {
+                long nanos = System.nanoTime() - start;
+                query.recordExecution(nanos);
+                QueryTracer.afterExecute(query, nanos, binds);
+            }
+            if (result instanceof ResultSet) {
+                result = QueryTracer.traceResultSet((ResultSet) result, query);
+                lastResult = (ResultSet) result;
+            }
+            return result;
+        } catch (InvocationTargetException e) {
+            if (timed) {
+                query.recordError();
+            }
+            throw e.getCause();
+        }
+    }
+
+    // Called on close() and when the owning connection goes back to the pool
+    synchronized void release() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        binds.clear();
+        if (!cached) {
+            statement.close();
+            return;
+        }
+        if (lastResult != null && !lastResult.isClosed()) {
+            lastResult.close();
+        }
+        lastResult = null;
+        if (!statement.isClosed()) {
+            statement.clearParameters();
+            if (timeoutChanged) {
+                statement.setQueryTimeout(0);
+                timeoutChanged = false;
+            }
+            if (fetchSizeChanged) {
+                statement.setFetchSize(0);
+                fetchSizeChanged = false;
+            }
+        }
+    }
+
+    static NamedStatement handlerOf(PreparedStatement proxy) {
+        return (NamedStatement) Proxy.getInvocationHandler(proxy);
+    }
+}
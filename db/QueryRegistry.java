@@ -0,0 +1,468 @@
+package db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Central Registry of Named SQL Queries
+ *
+ * Every SQL statement the application runs on a hot path is declared here once,
+ * under a stable name. This gives one place to read and tune each query, and lets
+ * pooled connections prepare each statement once and reuse it.
+ *
+ * Usage:
+ * try (Connection conn = DBConnection.getReadConnection()) {
+ *     PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.BRANCHES_ACTIVE);
+ *     ResultSet rs = stmt.executeQuery();
+ *     ...
+ * }
+ *
+ * Statements from prepare() belong to the connection's cache: closing them (or the
+ * connection) resets them, it does not discard the server-side prepared statement.
+ * Use a given named statement for one result set at a time per connection.
+ *
+ * Optional filters are written as "(? IS NULL OR column = ?)" so each query keeps a
+ * single SQL text and therefore a single cached plan.
+ *
+ * @see NamedQuery
+ * @see ConnectionPool
+ */
+public final class QueryRegistry {
+    private static final Map<String, NamedQuery> QUERIES = new LinkedHashMap<>();
+
+    // ---------------- Reference data ----------------
+
+    public static final NamedQuery BRANCHES_ACTIVE = register("branches.active",
+        "SELECT branch_code, branch_name FROM branches WHERE is_active = TRUE ORDER BY branch_name");
+
+    public static final NamedQuery BRANCH_CODE_BY_NAME = register("branches.codeByName",
+        "SELECT branch_code FROM branches WHERE branch_name = ?");
+
+    public static final NamedQuery GROUPS_ACTIVE = register("groups.active",
+        "SELECT group_code, group_name FROM study_groups WHERE is_active = TRUE ORDER BY group_name");
+
+    public static final NamedQuery GROUP_CODE_BY_NAME = register("groups.codeByName",
+        "SELECT group_code FROM study_groups WHERE group_name = ?");
+
+    public static final NamedQuery GROUPS_FOR_BRANCH = register("groups.forBranch",
+        "SELECT DISTINCT g.group_code, g.group_name " +
+        "FROM study_groups g " +
+        "JOIN subjects s ON s.group_code = g.group_code " +
+        "WHERE s.branch_code = ? AND g.is_active = TRUE " +
+        "ORDER BY g.group_name");
+
+    // ---------------- Subjects ----------------
+
+    public static final NamedQuery SUBJECTS_FOR_FILTER = register("subjects.forFilter",
+        "SELECT id, name, course_code FROM subjects " +
+        "WHERE branch_code = ? AND group_code = ? AND semester = ? " +
+        "ORDER BY name");
+
+    // Whole catalog for the startup prefetch (a few hundred rows at most)
+    public static final NamedQuery SUBJECTS_CATALOG = register("subjects.catalog",
+        "SELECT id, name, course_code, branch_code, group_code, semester FROM subjects ORDER BY name");
+
+    // Insert or reuse the subject; LAST_INSERT_ID(id) makes the existing id the generated key
+    public static final NamedQuery SUBJECT_UPSERT = registerInsert("subjects.upsert",
+        "INSERT INTO subjects (name, course_code, branch_code, semester, group_code, created_by) " +
+        "VALUES (?, ?, ?, ?, ?, ?) " +
+        "ON DUPLICATE KEY UPDATE id=LAST_INSERT_ID(id)");
+
+    // ---------------- Files ----------------
+
+    public static final NamedQuery FILES_BY_SUBJECT = register("files.bySubject",
+        "SELECT id, file_tag_id, filename, uploaded_by, upload_time, content_hash FROM files " +
+        "WHERE subject_id = ? AND is_deleted = FALSE " +
+        "ORDER BY upload_time DESC");
+
+    // Study Materials tree, one level per query (FileRepository.findFolders); counts come from
+    // idx_files_subject_live without reading the rows
+    public static final NamedQuery FILES_TREE_GROUPS = register("files.treeGroups",
+        "SELECT g.group_name, COUNT(*) AS files, COALESCE(SUM(f.file_size), 0) AS bytes " +
+        "FROM files f " +
+        "JOIN subjects s ON f.subject_id = s.id " +
+        "JOIN study_groups g ON s.group_code = g.group_code " +
+        "WHERE f.is_deleted = FALSE " +
+        "GROUP BY g.group_name ORDER BY g.group_name");
+
+    public static final NamedQuery FILES_TREE_SEMESTERS = register("files.treeSemesters",
+        "SELECT s.semester, b.branch_name, COUNT(*) AS files, COALESCE(SUM(f.file_size), 0) AS bytes " +
+        "FROM files f " +
+        "JOIN subjects s ON f.subject_id = s.id " +
+        "JOIN branches b ON s.branch_code = b.branch_code " +
+        "JOIN study_groups g ON s.group_code = g.group_code " +
+        "WHERE f.is_deleted = FALSE AND g.group_name = ? " +
+        "GROUP BY s.semester, b.branch_name ORDER BY s.semester, b.branch_name");
+
+    public static final NamedQuery FILES_TREE_SUBJECTS = register("files.treeSubjects",
+        "SELECT s.id AS subject_id, s.name AS subject_name, COUNT(*) AS files, COALESCE(SUM(f.file_size), 0) AS bytes " +
+        "FROM files f " +
+        "JOIN subjects s ON f.subject_id = s.id " +
+        "JOIN branches b ON s.branch_code = b.branch_code " +
+        "JOIN study_groups g ON s.group_code = g.group_code " +
+        "WHERE f.is_deleted = FALSE AND g.group_name = ? AND b.branch_name = ? AND s.semester = ? " +
+        "GROUP BY s.id, s.name ORDER BY s.name");
+
+    private static final String FILE_LIST_COLUMNS =
+        "SELECT f.id, f.file_tag_id, f.filename, s.id as subject_id, s.name as subject_name, s.course_code, " +
+        "b.branch_name, s.semester, g.group_name, f.uploaded_by, f.upload_time, f.content_hash " +
+        "FROM files f " +
+        "JOIN subjects s ON f.subject_id = s.id " +
+        "JOIN branches b ON s.branch_code = b.branch_code " +
+        "JOIN study_groups g ON s.group_code = g.group_code ";
+
+    // Pages of the table, newest first: files older than the previous page's last (upload_time, id)
+    private static final String FILE_PAGE =
+        "AND (? IS NULL OR f.upload_time < ? OR (f.upload_time = ? AND f.id < ?)) " +
+        "ORDER BY f.upload_time DESC, f.id DESC LIMIT ?";
+
+    // Newest files of a group or semester (or of all groups); idx_files_live_recent keeps LIMIT cheap
+    public static final NamedQuery FILES_IN_SCOPE = register("files.inScope",
+        FILE_LIST_COLUMNS +
+        "WHERE f.is_deleted = FALSE " +
+        "AND (? IS NULL OR g.group_name = ?) " +
+        "AND (? IS NULL OR b.branch_name = ?) " +
+        "AND (? IS NULL OR s.semester = ?) " +
+        FILE_PAGE);
+
+    // A subject's newest files, read in order from idx_files_subject_live
+    public static final NamedQuery FILES_IN_SUBJECT = register("files.inSubject",
+        FILE_LIST_COLUMNS +
+        "WHERE f.subject_id = ? AND f.is_deleted = FALSE " +
+        FILE_PAGE);
+
+    // ZIP export of a group, semester or subject: the file list only (FileRepository.exportZip)
+    public static final NamedQuery FILES_EXPORT = register("files.export",
+        "SELECT f.id, f.filename, s.name AS subject_name, s.course_code, b.branch_name, s.semester, " +
+        "g.group_name, f.content_hash, COALESCE(f.file_size, OCTET_LENGTH(f.filedata)) AS size " +
+        "FROM files f " +
+        "JOIN subjects s ON f.subject_id = s.id " +
+        "JOIN branches b ON s.branch_code = b.branch_code " +
+        "JOIN study_groups g ON s.group_code = g.group_code " +
+        "WHERE f.is_deleted = FALSE " +
+        "AND (? IS NULL OR g.group_name = ?) " +
+        "AND (? IS NULL OR b.branch_name = ?) " +
+        "AND (? IS NULL OR s.semester = ?) " +
+        "AND (? IS NULL OR s.id = ?) " +
+        "ORDER BY g.group_name, s.semester, b.branch_name, s.name, f.filename, f.id");
+
+    // Numeric, not text order: CSE_S3_1000 comes after CSE_S3_999
+    public static final NamedQuery FILE_LAST_TAG = register("files.lastTag",
+        "SELECT MAX(CAST(SUBSTRING_INDEX(file_tag_id, '_', -1) AS UNSIGNED)) AS last_sequence FROM files " +
+        "WHERE file_tag_id LIKE ?");
+
+    public static final NamedQuery FILE_INSERT = registerInsert("files.insert",
+        "INSERT INTO files (file_tag_id, filename, content_hash, file_size, subject_id, uploaded_by) VALUES (?, ?, ?, ?, ?, ?)");
+
+    // tools.BulkIngest: the same file imported into the same subject before
+    public static final NamedQuery FILE_FIND_DUPLICATE = register("files.findDuplicate",
+        "SELECT id FROM files WHERE subject_id = ? AND filename = ? AND content_hash = ? AND is_deleted = FALSE LIMIT 1");
+
+    // Contents live in the blob store (content_hash) or, for rows not yet migrated, inline in filedata
+    public static final NamedQuery FILE_DATA_BY_ID = register("files.dataById",
+        "SELECT filename, content_hash, COALESCE(file_size, OCTET_LENGTH(filedata)) AS size, filedata " +
+        "FROM files WHERE id = ? AND is_deleted = FALSE");
+
+    public static final NamedQuery FILE_DATA_BY_TAG = register("files.dataByTag",
+        "SELECT filename, content_hash, COALESCE(file_size, OCTET_LENGTH(filedata)) AS size, filedata " +
+        "FROM files WHERE file_tag_id = ? AND is_deleted = FALSE");
+
+    public static final NamedQuery FILE_SOFT_DELETE_BY_TAG = register("files.softDeleteByTag",
+        "UPDATE files SET is_deleted = TRUE, delete_time = CURRENT_TIMESTAMP WHERE file_tag_id = ? AND is_deleted = FALSE");
+
+    public static final NamedQuery FILE_SOFT_DELETE = register("files.softDelete",
+        "UPDATE files SET is_deleted = TRUE, delete_time = CURRENT_TIMESTAMP WHERE id = ? AND is_deleted = FALSE");
+
+    public static final NamedQuery FILE_HASH_BY_ID = register("files.hashById",
+        "SELECT content_hash FROM files WHERE id = ?");
+
+    public static final NamedQuery FILE_HASH_BY_TAG = register("files.hashByTag",
+        "SELECT content_hash FROM files WHERE file_tag_id = ?");
+
+    // tools.BlobMigrator: rows still stored inline, in id order so a run can continue where it stopped
+    public static final NamedQuery FILES_INLINE_BATCH = register("files.inlineBatch",
+        "SELECT id FROM files WHERE content_hash IS NULL AND filedata IS NOT NULL AND id > ? ORDER BY id LIMIT ?");
+
+    public static final NamedQuery FILE_INLINE_DATA = register("files.inlineData",
+        "SELECT is_deleted, OCTET_LENGTH(filedata) AS size, filedata FROM files WHERE id = ? AND content_hash IS NULL");
+
+    public static final NamedQuery FILE_MOVE_TO_STORE = register("files.moveToStore",
+        "UPDATE files SET content_hash = ?, file_size = ?, filedata = NULL " +
+        "WHERE id = ? AND content_hash IS NULL AND is_deleted = ?");
+
+    // ---------------- Blobs (reference counts) ----------------
+
+    // ref_count = live (not deleted) files pointing at the blob
+    public static final NamedQuery BLOB_ADD_REF = register("blobs.addRef",
+        "INSERT INTO blobs (content_hash, size, ref_count) VALUES (?, ?, 1) " +
+        "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1, unreferenced_at = NULL");
+
+    // A blob only referenced by deleted files (migrated rows)
+    public static final NamedQuery BLOB_REGISTER = register("blobs.register",
+        "INSERT IGNORE INTO blobs (content_hash, size, ref_count, unreferenced_at) VALUES (?, ?, 0, CURRENT_TIMESTAMP)");
+
+    public static final NamedQuery BLOB_RELEASE_REF = register("blobs.releaseRef",
+        "UPDATE blobs SET unreferenced_at = IF(ref_count <= 1, CURRENT_TIMESTAMP, unreferenced_at), " +
+        "ref_count = GREATEST(ref_count - 1, 0) WHERE content_hash = ?");
+
+    public static final NamedQuery STORAGE_LOGICAL = register("storage.logical",
+        "SELECT COUNT(*) AS files, COALESCE(SUM(file_size), 0) AS bytes FROM files " +
+        "WHERE is_deleted = FALSE AND content_hash IS NOT NULL");
+
+    public static final NamedQuery STORAGE_PHYSICAL = register("storage.physical",
+        "SELECT COUNT(*) AS blobs, COALESCE(SUM(size), 0) AS bytes, " +
+        "COALESCE(SUM(ref_count = 0), 0) AS unreferenced, " +
+        "COALESCE(SUM(CASE WHEN ref_count = 0 THEN size ELSE 0 END), 0) AS unreferenced_bytes FROM blobs");
+
+    public static final NamedQuery STORAGE_MOST_SHARED = register("storage.mostShared",
+        "SELECT b.content_hash, b.size, b.ref_count, MIN(f.filename) AS filename FROM blobs b " +
+        "JOIN files f ON f.content_hash = b.content_hash AND f.is_deleted = FALSE " +
+        "WHERE b.ref_count > 1 " +
+        "GROUP BY b.content_hash, b.size, b.ref_count " +
+        "ORDER BY (b.ref_count - 1) * b.size DESC LIMIT ?");
+
+    public static final NamedQuery FILES_INLINE_REMAINING = register("files.inlineRemaining",
+        "SELECT COUNT(*) AS files, COALESCE(SUM(OCTET_LENGTH(filedata)), 0) AS bytes FROM files " +
+        "WHERE content_hash IS NULL AND filedata IS NOT NULL");
+
+    // ---------------- Upload sessions ----------------
+
+    public static final NamedQuery UPLOAD_SESSION_FIND = register("uploadSessions.find",
+        "SELECT id, filename, file_size, chunk_size, bytes_committed, content_hash FROM upload_sessions " +
+        "WHERE uploaded_by = ? AND source_key = ? AND status = 'open' ORDER BY id DESC LIMIT 1");
+
+    public static final NamedQuery UPLOAD_SESSION_INSERT = registerInsert("uploadSessions.insert",
+        "INSERT INTO upload_sessions (uploaded_by, source_key, filename, file_size, chunk_size) VALUES (?, ?, ?, ?, ?)");
+
+    // Resuming counts as activity, so the session is not purged under the upload
+    public static final NamedQuery UPLOAD_SESSION_TOUCH = register("uploadSessions.touch",
+        "UPDATE upload_sessions SET updated_at = CURRENT_TIMESTAMP WHERE id = ? AND status = 'open'");
+
+    public static final NamedQuery UPLOAD_CHUNKS_LIST = register("uploadSessions.chunks",
+        "SELECT chunk_index, chunk_hash FROM upload_session_chunks WHERE session_id = ? ORDER BY chunk_index");
+
+    public static final NamedQuery UPLOAD_CHUNK_SAVE = register("uploadSessions.saveChunk",
+        "INSERT INTO upload_session_chunks (session_id, chunk_index, chunk_hash) VALUES (?, ?, ?) " +
+        "ON DUPLICATE KEY UPDATE chunk_hash = VALUES(chunk_hash)");
+
+    public static final NamedQuery UPLOAD_CHUNKS_TRUNCATE = register("uploadSessions.truncateChunks",
+        "DELETE FROM upload_session_chunks WHERE session_id = ? AND chunk_index >= ?");
+
+    public static final NamedQuery UPLOAD_SESSION_CHECKPOINT = register("uploadSessions.checkpoint",
+        "UPDATE upload_sessions SET bytes_committed = ?, updated_at = CURRENT_TIMESTAMP " +
+        "WHERE id = ? AND status = 'open'");
+
+    // All chunks sent and the staged file moved into the blob store
+    public static final NamedQuery UPLOAD_SESSION_STAGED = register("uploadSessions.staged",
+        "UPDATE upload_sessions SET content_hash = ?, bytes_committed = file_size, updated_at = CURRENT_TIMESTAMP " +
+        "WHERE id = ? AND status = 'open'");
+
+    public static final NamedQuery UPLOAD_SESSION_COMPLETE = register("uploadSessions.complete",
+        "UPDATE upload_sessions SET status = 'completed', file_id = ? WHERE id = ? AND status = 'open'");
+
+    public static final NamedQuery UPLOAD_SESSIONS_STALE = register("uploadSessions.stale",
+        "SELECT id FROM upload_sessions " +
+        "WHERE status = 'open' AND updated_at < CURRENT_TIMESTAMP - INTERVAL ? SECOND");
+
+    // Re-checks idleness so a session resumed meanwhile is left alone
+    public static final NamedQuery UPLOAD_SESSION_ABANDON = register("uploadSessions.abandon",
+        "UPDATE upload_sessions SET status = 'abandoned' " +
+        "WHERE id = ? AND status = 'open' AND updated_at < CURRENT_TIMESTAMP - INTERVAL ? SECOND");
+
+    public static final NamedQuery UPLOAD_SESSIONS_DELETE_FINISHED = register("uploadSessions.deleteFinished",
+        "DELETE FROM upload_sessions " +
+        "WHERE status <> 'open' AND updated_at < CURRENT_TIMESTAMP - INTERVAL ? SECOND");
+
+    // ---------------- Reclaimer ----------------
+
+    // Soft-deleted rows past the retention window that still hold legacy inline contents
+    public static final NamedQuery RECLAIM_INLINE_BATCH = register("reclaim.inlineBatch",
+        "SELECT id, OCTET_LENGTH(filedata) AS size FROM files " +
+        "WHERE is_deleted = TRUE AND filedata IS NOT NULL " +
+        "AND delete_time < CURRENT_TIMESTAMP - INTERVAL ? SECOND AND id > ? " +
+        "ORDER BY id LIMIT ?");
+
+    // Gives up after 1 s instead of queueing behind interactive writers (error 1205)
+    public static final NamedQuery RECLAIM_INLINE_CLEAR = register("reclaim.inlineClear",
+        "SET STATEMENT innodb_lock_wait_timeout = 1 FOR " +
+        "UPDATE files SET filedata = NULL WHERE id = ? AND is_deleted = TRUE");
+
+    public static final NamedQuery RECLAIM_BLOBS_BATCH = register("reclaim.blobsBatch",
+        "SELECT content_hash, size FROM blobs " +
+        "WHERE ref_count = 0 AND unreferenced_at < CURRENT_TIMESTAMP - INTERVAL ? SECOND AND content_hash > ? " +
+        "ORDER BY content_hash LIMIT ?");
+
+    // Re-checks the count: a new upload of the same content may have revived the blob
+    public static final NamedQuery RECLAIM_BLOB_DELETE = register("reclaim.blobDelete",
+        "SET STATEMENT innodb_lock_wait_timeout = 1 FOR " +
+        "DELETE FROM blobs WHERE content_hash = ? AND ref_count = 0 " +
+        "AND unreferenced_at < CURRENT_TIMESTAMP - INTERVAL ? SECOND");
+
+    // Everything the blob store must keep: registered blobs, live files (even if a count is off)
+    // and uploads staged but not yet recorded
+    public static final NamedQuery RECLAIM_LIVE_HASHES = register("reclaim.liveHashes",
+        "SELECT content_hash FROM blobs " +
+        "UNION SELECT content_hash FROM files WHERE is_deleted = FALSE AND content_hash IS NOT NULL " +
+        "UNION SELECT content_hash FROM upload_sessions WHERE status = 'open' AND content_hash IS NOT NULL");
+
+    // tools.Reclaim --compact: rebuilds the table online to return freed pages to the file system
+    public static final NamedQuery RECLAIM_COMPACT_FILES = register("reclaim.compactFiles",
+        "OPTIMIZE TABLE files");
+
+    // MaintenanceLease: a named lock, granted (1) only if no other connection holds it
+    public static final NamedQuery LEASE_ACQUIRE = register("lease.acquire",
+        "SELECT GET_LOCK(?, 0) AS granted");
+
+    // ---------------- Scrubber ----------------
+
+    // Live blobs not verified within the interval, in hash order (verified_at is the resume point)
+    public static final NamedQuery SCRUB_BATCH = register("scrub.batch",
+        "SELECT content_hash, size FROM blobs " +
+        "WHERE ref_count > 0 AND (verified_at IS NULL OR verified_at < CURRENT_TIMESTAMP - INTERVAL ? SECOND) " +
+        "AND content_hash > ? ORDER BY content_hash LIMIT ?");
+
+    public static final NamedQuery SCRUB_RECORD = register("scrub.record",
+        "UPDATE blobs SET verified_at = CURRENT_TIMESTAMP, scrub_status = ?, scrub_error = ? WHERE content_hash = ?");
+
+    public static final NamedQuery SCRUB_DAMAGED_FILES = register("scrub.damagedFiles",
+        "SELECT b.content_hash, b.scrub_status, b.scrub_error, b.verified_at, f.id, f.filename, f.uploaded_by " +
+        "FROM blobs b JOIN files f ON f.content_hash = b.content_hash AND f.is_deleted = FALSE " +
+        "WHERE b.scrub_status IN ('corrupt', 'missing') ORDER BY b.verified_at DESC, f.id");
+
+    // ---------------- Tasks ----------------
+
+    private static final String TASK_COLUMNS =
+        "SELECT t.*, b.branch_name " +
+        "FROM tasks t " +
+        "LEFT JOIN branches b ON t.branch_code = b.branch_code ";
+
+    // Optional keyword (4x LIKE) and status filters shared by the task list queries
+    private static final String TASK_OPTIONAL_FILTERS =
+        "AND (? IS NULL OR LOWER(t.title) LIKE ? OR LOWER(t.description) LIKE ? " +
+        "OR LOWER(t.priority) LIKE ? OR LOWER(t.status) LIKE ?) " +
+        "AND (? IS NULL OR t.status = ?) " +
+        "ORDER BY t.created_at DESC";
+
+    // Students see their own tasks plus teacher tasks for their branch and semester
+    public static final NamedQuery TASKS_FOR_STUDENT = register("tasks.forStudent",
+        TASK_COLUMNS +
+        "WHERE (t.created_by = ? OR (t.branch_code = (SELECT branch_code FROM branches WHERE branch_name = ?) " +
+        "AND t.semester = ? AND EXISTS (SELECT 1 FROM users u WHERE u.email = t.created_by AND u.role = 'teacher'))) " +
+        TASK_OPTIONAL_FILTERS);
+
+    // Teachers see the tasks they created, optionally narrowed by branch and semester
+    public static final NamedQuery TASKS_FOR_TEACHER = register("tasks.forTeacher",
+        TASK_COLUMNS +
+        "WHERE t.created_by = ? " +
+        "AND (? IS NULL OR t.branch_code = (SELECT branch_code FROM branches WHERE branch_name = ?)) " +
+        "AND (? IS NULL OR t.semester = ?) " +
+        TASK_OPTIONAL_FILTERS);
+
+    public static final NamedQuery TASKS_CALENDAR_TEACHER = register("tasks.calendarTeacher",
+        TASK_COLUMNS +
+        "WHERE t.created_by = ?");
+
+    public static final NamedQuery TASKS_CALENDAR_STUDENT = register("tasks.calendarStudent",
+        TASK_COLUMNS +
+        "WHERE (t.created_by = ? OR (t.semester = (SELECT current_semester FROM users WHERE email = ?) " +
+        "AND t.branch_code = (SELECT branch_code FROM users WHERE email = ?)))");
+
+    public static final NamedQuery TASK_BY_ID = register("tasks.byId",
+        TASK_COLUMNS +
+        "WHERE t.id = ?");
+
+    public static final NamedQuery TASK_INSERT = register("tasks.insert",
+        "INSERT INTO tasks (title, description, priority, status, created_by, due_date, " +
+        "branch_code, semester) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+
+    public static final NamedQuery TASK_UPDATE = register("tasks.update",
+        "UPDATE tasks SET title=?, description=?, priority=?, status=?, due_date=?, " +
+        "branch_code=?, semester=? WHERE id=?");
+
+    public static final NamedQuery TASK_DELETE = register("tasks.delete",
+        "DELETE FROM tasks WHERE id=?");
+
+    public static final NamedQuery TASK_COMPLETE = register("tasks.complete",
+        "UPDATE tasks SET status='completed', completed_at=CURRENT_TIMESTAMP WHERE id=?");
+
+    // ---------------- Users ----------------
+
+    public static final NamedQuery USER_EMAIL_EXISTS = register("users.emailExists",
+        "SELECT COUNT(*) FROM users WHERE email = ?");
+
+    public static final NamedQuery USER_INSERT = register("users.insert",
+        "INSERT INTO users (email, password, role, branch_code, current_semester) VALUES (?, ?, ?, ?, ?)");
+
+    public static final NamedQuery USER_LOGIN = register("users.login",
+        "SELECT u.role, " +
+        "CASE WHEN u.role = 'student' THEN u.branch_code ELSE NULL END as branch_code, " +
+        "CASE WHEN u.role = 'student' THEN COALESCE(b.branch_name, '') ELSE NULL END as branch_name, " +
+        "CASE WHEN u.role = 'student' THEN u.current_semester ELSE NULL END as current_semester " +
+        "FROM users u " +
+        "LEFT JOIN branches b ON u.branch_code = b.branch_code " +
+        "WHERE u.email=? AND u.password=?");
+
+    private QueryRegistry() {
+    }
+
+    /**
+     * Get the prepared statement for a named query on this connection.
+     * Pooled connections return their cached statement (prepared on first use);
+     * any other connection gets a fresh statement that is still timed.
+     *
+     * @param conn connection from DBConnection
+     * @param query one of the QueryRegistry constants
+     * @return statement ready for parameters; close() resets it
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public static PreparedStatement prepare(Connection conn, NamedQuery query) throws SQLException {
+        if (conn instanceof ConnectionPool.StatementCache) {
+            return ((ConnectionPool.StatementCache) conn).prepareNamed(query);
+        }
+        PreparedStatement ps = query.returnsGeneratedKeys()
+            ? conn.prepareStatement(query.getSql(), Statement.RETURN_GENERATED_KEYS)
+            : conn.prepareStatement(query.getSql());
+        query.recordPrepare();
+        return NamedStatement.wrap(ps, query, false);
+    }
+
+    public static NamedQuery get(String name) {
+        return QUERIES.get(name);
+    }
+
+    public static Collection<NamedQuery> all() {
+        return Collections.unmodifiableCollection(QUERIES.values());
+    }
+
+    /**
+     * @return one line of metrics per registered query
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (NamedQuery query : QUERIES.values()) {
+            sb.append(query).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static NamedQuery register(String name, String sql) {
+        return add(new NamedQuery(name, sql, false));
+    }
+
+    private static NamedQuery registerInsert(String name, String sql) {
+        return add(new NamedQuery(name, sql, true));
+    }
+
+    private static NamedQuery add(NamedQuery query) {
+        if (QUERIES.putIfAbsent(query.getName(), query) != null) {
+            throw new IllegalStateException("Duplicate query name: " + query.getName());
+        }
+        return query;
+    }
+}
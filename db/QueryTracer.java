@@ -0,0 +1,338 @@
+package db;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * JDBC tracing for everything handed out by DBConnection
+ *
+ * Every statement is timed against a {@link NamedQuery}: registry queries under their
+ * name, anything else (raw prepareStatement/createStatement) under its normalized SQL,
+ * with literals replaced by "?" so the same statement with different values shares one
+ * histogram. Result sets are wrapped to count rows fetched and blob bytes read;
+ * setBytes() counts blob bytes written.
+ *
+ * Slow statements (studysync.db.slowQueryMs, default 500) are counted per query and
+ * sampled: at most one sample per query every studysync.db.slowQuerySampleMs (default
+ * 10000) is logged and kept (last 50). Samples never contain bind values, only their
+ * types and sizes, e.g. [1=String(24), 2=Integer, 3=bytes(1048576)].
+ *
+ * Connection wait time is the pool's borrow latency histogram, included in report().
+ *
+ * Usage:
+ * System.out.println(QueryTracer.report());
+ * or -Dstudysync.db.printStatsOnExit=true
+ */
+public final class QueryTracer {
+    private static final long SLOW_NANOS = Long.getLong("studysync.db.slowQueryMs", 500) * 1_000_000;
+    private static final long SAMPLE_INTERVAL_MILLIS = Long.getLong("studysync.db.slowQuerySampleMs", 10_000);
+    private static final int MAX_SAMPLES = 50;
+    private static final int MAX_ADHOC_QUERIES = 500;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Map<String, NamedQuery> ADHOC = new ConcurrentHashMap<>();
+    private static final NamedQuery ADHOC_OVERFLOW = new NamedQuery("adhoc:other", "(too many distinct statements)", false);
+    private static final Deque<SlowStatement> SAMPLES = new ArrayDeque<>();
+
+    /**
+     * One sampled slow execution
+     *
+     * @param binds redacted bind parameters (types and sizes only)
+     */
+    public record SlowStatement(long timestamp, String query, String sql, double millis, String binds, String thread) {
+        @Override
+        public String toString() {
+            return String.format("%s %.0fms on %s binds=%s sql=%s", query, millis, thread, binds, sql);
+        }
+    }
+
+    private QueryTracer() {
+    }
+
+    // ---------------- Recording ----------------
+
+    /**
+     * Metrics for SQL that is not in the QueryRegistry, keyed by its normalized text
+     */
+    static NamedQuery adhoc(String sql) {
+        String normalized = normalize(sql);
+        NamedQuery query = ADHOC.get(normalized);
+        if (query != null) {
+            return query;
+        }
+        if (ADHOC.size() >= MAX_ADHOC_QUERIES) {
+            return ADHOC_OVERFLOW;
+        }
+        return ADHOC.computeIfAbsent(normalized, k -> new NamedQuery("adhoc:" + abbreviate(k, 26), k, false));
+    }
+
+    /**
+     * Called by statement wrappers after each execution
+     */
+    static void afterExecute(NamedQuery query, long nanos, Map<Integer, String> binds) {
+        if (nanos < SLOW_NANOS) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!query.recordSlow(now, SAMPLE_INTERVAL_MILLIS)) {
+            return;
+        }
+        SlowStatement sample = new SlowStatement(now, query.getName(), abbreviate(query.getSql(), 200),
+            nanos / 1_000_000.0, binds == null ? "[]" : binds.toString(), Thread.currentThread().getName());
+        synchronized (SAMPLES) {
+            if (SAMPLES.size() >= MAX_SAMPLES) {
+                SAMPLES.removeFirst();
+            }
+            SAMPLES.addLast(sample);
+        }
+        System.err.println("Slow query: " + sample);
+    }
+
+    /**
+     * Describe a bind value without revealing it
+     */
+    static String redact(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof String) {
+            return "String(" + ((String) value).length() + ")";
+        }
+        if (value instanceof byte[]) {
+            return "bytes(" + ((byte[]) value).length + ")";
+        }
+        if (value instanceof InputStream || value instanceof Reader) {
+            return "stream";
+        }
+        return value.getClass().getSimpleName();
+    }
+
+    // ---------------- Wrappers ----------------
+
+    /**
+     * Count rows and blob bytes read through this result set into the query's metrics
+     */
+    static ResultSet traceResultSet(ResultSet rs, NamedQuery query) {
+        if (rs == null || (Proxy.isProxyClass(rs.getClass())
+                && Proxy.getInvocationHandler(rs) instanceof TracingResultSet)) {
+            return rs;
+        }
+        return (ResultSet) Proxy.newProxyInstance(QueryTracer.class.getClassLoader(),
+            new Class<?>[]{ResultSet.class}, new TracingResultSet(rs, query));
+    }
+
+    /**
+     * Time a plain Statement; each execute(sql) is recorded under the normalized sql
+     */
+    static Statement traceStatement(Statement statement) {
+        return (Statement) Proxy.newProxyInstance(QueryTracer.class.getClassLoader(),
+            new Class<?>[]{Statement.class}, new TracingStatement(statement));
+    }
+
+    private static final class TracingResultSet implements InvocationHandler {
+        private final ResultSet rs;
+        private final NamedQuery query;
+        private long rows;
+
+        TracingResultSet(ResultSet rs, NamedQuery query) {
+            this.rs = rs;
+            this.query = query;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "close":
+                    flushRows();
+                    break;
+                default:
+                    break;
+            }
+
+            Object result;
+            try {
+                result = method.invoke(rs, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+
+            switch (name) {
+                case "next":
+                    if ((Boolean) result) {
+                        rows++;
+                    } else {
+                        flushRows();
+                    }
+                    break;
+                case "getBytes":
+                    if (result != null) {
+                        query.recordBytesRead(((byte[]) result).length);
+                    }
+                    break;
+                case "getBlob":
+                    if (result != null) {
+                        query.recordBytesRead(((Blob) result).length());
+                    }
+                    break;
+                case "getBinaryStream":
+                    if (result != null) {
+                        result = new CountingInputStream((InputStream) result, query);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return result;
+        }
+
+        private void flushRows() {
+            if (rows > 0) {
+                query.recordRows(rows);
+                rows = 0;
+            }
+        }
+    }
+
+    private static final class TracingStatement implements InvocationHandler {
+        private final Statement statement;
+
+        TracingStatement(Statement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+
+            boolean timed = name.startsWith("execute") && args != null && args.length > 0 && args[0] instanceof String;
+            NamedQuery query = timed ? adhoc((String) args[0]) : null;
+            long start = timed ? System.nanoTime() : 0;
+            try {
+                Object result = method.invoke(statement, args);
+                if (timed) {
+                    long nanos = System.nanoTime() - start;
+                    query.recordExecution(nanos);
+                    afterExecute(query, nanos, null);
+                    if (result instanceof ResultSet) {
+                        result = traceResultSet((ResultSet) result, query);
+                    }
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                if (timed) {
+                    query.recordError();
+                }
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final NamedQuery query;
+
+        CountingInputStream(InputStream in, NamedQuery query) {
+            super(in);
+            this.query = query;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                query.recordBytesRead(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) {
+                query.recordBytesRead(n);
+            }
+            return n;
+        }
+    }
+
+    // ---------------- Reporting ----------------
+
+    /**
+     * @return the most recent slow-statement samples, oldest first
+     */
+    public static List<SlowStatement> getSlowSamples() {
+        synchronized (SAMPLES) {
+            return new ArrayList<>(SAMPLES);
+        }
+    }
+
+    /**
+     * Registry queries, ad-hoc statements, connection wait times and slow samples
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder("---- Named queries ----\n");
+        sb.append(QueryRegistry.report());
+        if (!ADHOC.isEmpty()) {
+            sb.append("---- Ad-hoc statements ----\n");
+            for (NamedQuery query : ADHOC.values()) {
+                sb.append(query).append('\n');
+            }
+            if (ADHOC_OVERFLOW.getExecutions() > 0) {
+                sb.append(ADHOC_OVERFLOW).append('\n');
+            }
+        }
+        sb.append("---- Connection wait ----\n");
+        for (ConnectionPoolMXBean pool : DBConnection.getAllPoolStats()) {
+            sb.append(pool).append('\n');
+        }
+        List<SlowStatement> samples = getSlowSamples();
+        if (!samples.isEmpty()) {
+            sb.append("---- Slow statement samples ----\n");
+            for (SlowStatement sample : samples) {
+                sb.append(sample).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    static String normalize(String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    private static String abbreviate(String text, int max) {
+        return text.length() <= max ? text : text.substring(0, max - 3) + "...";
+    }
+}
@@ -0,0 +1,132 @@
+package db;
+
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries transient database failures with jittered exponential backoff
+ *
+ * Transient (worth retrying):
+ * - Connection errors: SQLState class 08, SQLRecoverableException, socket failures
+ * - Server gone / lost / too many connections (MariaDB 1040, 1927, 2002, 2003, 2006, 2013)
+ * - Deadlock and lock wait timeout (1213, 1205, SQLState 40001)
+ *
+ * Never retried:
+ * - DatabaseUnavailableException (the circuit breaker is open)
+ * - Query timeouts and cancellations (SQLTimeoutException, see CancelToken)
+ * - Waiting too long for a pooled connection: the pool is busy, not broken
+ * - Everything else (bad SQL, constraint violations, access denied)
+ *
+ * Backoff uses "full jitter": attempt n sleeps a random time in
+ * [0, min(maxDelay, baseDelay * 2^n)), so clients recovering from the same outage
+ * do not reconnect in lockstep.
+ */
+public final class RetryPolicy {
+
+    /**
+     * A database call that may be attempted more than once
+     */
+    @FunctionalInterface
+    public interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Run the call, retrying transient failures until maxAttempts is reached.
+     * The last failure is rethrown with earlier ones attached as suppressed.
+     */
+    public <T> T execute(SqlCall<T> call) throws SQLException {
+        List<SQLException> earlier = new ArrayList<>();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (SQLException e) {
+                if (attempt >= maxAttempts || !isTransient(e)) {
+                    throw withEarlier(e, earlier);
+                }
+                earlier.add(e);
+                long delay = backoffMillis(attempt);
+                System.err.println("Transient database error (attempt " + attempt + "/" + maxAttempts
+                    + "), retrying in " + delay + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw withEarlier(e, earlier);
+                }
+            }
+        }
+    }
+
+    private static SQLException withEarlier(SQLException last, List<SQLException> earlier) {
+        for (SQLException e : earlier) {
+            if (e != last) {
+                last.addSuppressed(e);
+            }
+        }
+        return last;
+    }
+
+    long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return true if the same call could succeed when simply tried again
+     */
+    public static boolean isTransient(SQLException e) {
+        if (e instanceof DatabaseUnavailableException || e instanceof SQLTimeoutException) {
+            return false;
+        }
+        String state = e.getSQLState();
+        if (state != null && (state.startsWith("08") || state.equals("40001"))) {
+            return true;
+        }
+        if (e instanceof SQLRecoverableException) {
+            return true;
+        }
+        switch (e.getErrorCode()) {
+            case 1040: // too many connections
+            case 1205: // lock wait timeout
+            case 1213: // deadlock
+            case 1927: // connection was killed
+            case 2002: // can't connect through socket
+            case 2003: // can't connect to server
+            case 2006: // server has gone away
+            case 2013: // lost connection during query
+                return true;
+            default:
+                break;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof SocketException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
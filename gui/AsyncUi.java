@@ -0,0 +1,158 @@
+package gui;
+
+import db.CancelToken;
+import db.DbExecutor;
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Cursor;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+/**
+ * Swing side of {@link DbExecutor}
+ *
+ * Runs database work on a virtual thread and hands the result (or error) back
+ * on the event dispatch thread, so screens never freeze while a query runs.
+ *
+ * Usage:
+ * AsyncUi.showLoading(panel, "Loading files...");
+ * AsyncUi.load(() -> fileRepository.findBySubject(subjectId),
+ *     files -> showFiles(files),
+ *     error -> JOptionPane.showMessageDialog(this, "Error: " + error.getMessage()));
+ *
+ * Errors passed to callbacks are already unwrapped from CompletionException.
+ *
+ * For searches and filters that can change while a query runs, use a {@link Latest}:
+ * starting a new load cancels the previous statement and drops its result.
+ */
+public final class AsyncUi {
+
+    /** Executor that runs callbacks on the event dispatch thread */
+    public static final Executor EDT = SwingUtilities::invokeLater;
+
+    private AsyncUi() {
+    }
+
+    /**
+     * Run a query off the EDT and deliver its result on the EDT
+     */
+    public static <T> CompletableFuture<T> load(DbExecutor.DbCall<T> call,
+                                                Consumer<? super T> onSuccess,
+                                                Consumer<Throwable> onError) {
+        CompletableFuture<T> future = DbExecutor.supply(call);
+        future.whenCompleteAsync((result, error) -> {
+            if (error == null) {
+                onSuccess.accept(result);
+            } else {
+                onError.accept(unwrap(error));
+            }
+        }, EDT);
+        return future;
+    }
+
+    /**
+     * Run an update off the EDT and call back on the EDT when it is done
+     */
+    public static CompletableFuture<Void> run(DbExecutor.DbTask task,
+                                              Runnable onSuccess,
+                                              Consumer<Throwable> onError) {
+        return load(() -> {
+            task.run();
+            return null;
+        }, ignored -> onSuccess.run(), onError);
+    }
+
+    /**
+     * Replace the panel's content with a centered loading message
+     */
+    public static void showLoading(JPanel panel, String message) {
+        JLabel label = new JLabel("⏳ " + message, SwingConstants.CENTER);
+        label.setFont(Theme.UI_FONT);
+        label.setForeground(Theme.TEXT_SECONDARY);
+        panel.removeAll();
+        panel.setLayout(new BorderLayout());
+        panel.add(label, BorderLayout.CENTER);
+        panel.revalidate();
+        panel.repaint();
+    }
+
+    /**
+     * Show the wait cursor over a component (and its window) while work is running
+     */
+    public static void setBusy(Component component, boolean busy) {
+        Component target = SwingUtilities.getWindowAncestor(component);
+        if (target == null) {
+            target = component;
+        }
+        target.setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+    }
+
+    /**
+     * One "slot" of superseding loads, e.g. the task list or a combo box
+     *
+     * Only the most recent load() delivers its result. Earlier ones are cancelled
+     * (their running statement is stopped) and their callbacks are never called.
+     * Use from the event dispatch thread only.
+     */
+    public static final class Latest {
+        private CancelToken current;
+
+        /**
+         * A database call that passes the token on to the repository
+         */
+        @FunctionalInterface
+        public interface Query<T> {
+            T call(CancelToken token) throws Exception;
+        }
+
+        public <T> void load(Query<T> query, Consumer<? super T> onSuccess, Consumer<Throwable> onError) {
+            cancel();
+            CancelToken token = new CancelToken();
+            current = token;
+            AsyncUi.load(() -> query.call(token), result -> {
+                if (current == token) {
+                    current = null;
+                    onSuccess.accept(result);
+                }
+            }, error -> {
+                if (current == token) {
+                    current = null;
+                    onError.accept(error);
+                }
+            });
+        }
+
+        /**
+         * Abandon the pending load, if any
+         */
+        public void cancel() {
+            if (current != null) {
+                current.cancel();
+                current = null;
+            }
+        }
+
+        public boolean isLoading() {
+            return current != null;
+        }
+    }
+
+    /**
+     * The exception the database call actually threw
+     */
+    public static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+            && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
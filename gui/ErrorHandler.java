@@ -1,5 +1,6 @@
 package gui;
 
+import db.DatabaseUnavailableException;
 import javax.swing.*;
 import java.awt.*;
 
@@ -30,7 +31,11 @@ public class ErrorHandler {
     }
     
     // Show error message with detailed technical info
-    public static void showError(Component parent, String message, Exception e) {
+    public static void showError(Component parent, String message, Throwable e) {
+        if (e instanceof DatabaseUnavailableException) {
+            showDatabaseUnavailable(parent, (DatabaseUnavailableException) e);
+            return;
+        }
         String detailedMessage = ERROR_ICON + " " + message + "\n\nTechnical details:\n" + e.getMessage();
         JOptionPane.showMessageDialog(
             parent,
@@ -40,6 +45,13 @@ public class ErrorHandler {
         );
     }
     
+    // Database is down and calls are failing fast: a warning, not a technical error
+    public static void showDatabaseUnavailable(Component parent, DatabaseUnavailableException e) {
+        long seconds = Math.max(1, (e.getRetryAfterMillis() + 999) / 1000);
+        showWarning(parent, "The database is temporarily unavailable.\n"
+            + "StudySync is reconnecting; please try again in about " + seconds + " seconds.");
+    }
+    
     // Show success message
     public static void showSuccess(Component parent, String message) {
         JOptionPane.showMessageDialog(
@@ -0,0 +1,46 @@
+package gui;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Logs how long startup takes, from main() to the login form being usable
+ *
+ * Phases are logged as they happen ("Startup: login window shown after 412 ms"), and
+ * interactive() logs the time-to-interactive once per launch, together with the time
+ * since the JVM started so class loading and Swing start-up are visible too.
+ */
+public final class LaunchTimer {
+    private static volatile long startNanos = System.nanoTime();
+    private static final AtomicBoolean interactive = new AtomicBoolean();
+
+    private LaunchTimer() {
+    }
+
+    /**
+     * Call first thing in main()
+     */
+    public static void start() {
+        startNanos = System.nanoTime();
+    }
+
+    public static void mark(String phase) {
+        System.out.println("Startup: " + phase + " after " + elapsedMillis() + " ms");
+    }
+
+    /**
+     * The login form can be used; only the first call per launch is logged
+     */
+    public static void interactive() {
+        if (!interactive.compareAndSet(false, true)) {
+            return;
+        }
+        long sinceJvmStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.println("Startup: interactive after " + elapsedMillis() + " ms ("
+            + sinceJvmStart + " ms since JVM start)");
+    }
+
+    private static long elapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
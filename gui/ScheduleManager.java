@@ -1,11 +1,11 @@
 package gui;
 
-import db.DBConnection;
+import repository.TaskEntry;
+import repository.TaskRepository;
 import javax.swing.*;
 import javax.swing.border.LineBorder;
 import java.awt.*;
 import java.awt.event.*;
-import java.sql.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
@@ -47,7 +47,7 @@ import java.util.List;
  * - User Authentication: Role-based access
  * 
  * @see TaskManager
- * @see DBConnection
+ * @see TaskRepository
  * @see Task
  */
 public class ScheduleManager extends JPanel {
@@ -57,6 +57,7 @@ public class ScheduleManager extends JPanel {
     private JButton prevBtn, nextBtn;     // Month navigation buttons
     private Calendar currentCalendar;     // Tracks current display date
     private Map<String, List<Task>> tasksMap; // Stores tasks by date (yyyy-MM-dd)
+    private final TaskRepository taskRepository = new TaskRepository();
 
     private String currentUserEmail;
     private String currentUserRole; // "teacher" or "student"
@@ -96,9 +97,9 @@ public class ScheduleManager extends JPanel {
             refreshCalendar();
         });
 
-        // Initial load
-        loadTasks();
+        // Initial load: draw the empty month right away, tasks fill in when they arrive
         refreshCalendar();
+        loadTasks();
     }
 
     // ---------------- TASK CLASS ----------------
@@ -140,76 +141,59 @@ public class ScheduleManager extends JPanel {
 
     // ---------------- LOAD TASKS ----------------
     private void loadTasks() {
+        monthLabel.setText(monthLabel.getText() + "  ⏳ Loading tasks...");
+        AsyncUi.setBusy(this, true);
+        // Teachers see tasks they created; students also see tasks for their branch and semester
+        AsyncUi.load(() -> taskRepository.findForCalendar(currentUserEmail, currentUserRole.equals("teacher")),
+            entries -> {
+                AsyncUi.setBusy(this, false);
+                showTasks(entries);
+                refreshCalendar();
+            },
+            e -> {
+                AsyncUi.setBusy(this, false);
+                refreshCalendar();
+                JOptionPane.showMessageDialog(this, "Error loading tasks: " + e.getMessage());
+            });
+    }
+
+    private void showTasks(List<TaskEntry> entries) {
         tasksMap.clear();
-        try (Connection conn = DBConnection.getConnection()) {
-            // Build query based on user role
-            StringBuilder sql = new StringBuilder(
-                "SELECT t.*, b.branch_name " +
-                "FROM tasks t " +
-                "LEFT JOIN branches b ON t.branch_code = b.branch_code " +
-                "WHERE 1=1 ");
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        for (TaskEntry entry : entries) {
+            int id = entry.id();
+            String title = entry.title();
+            String status = entry.status();
+            String priorityStr = entry.priority();
+            String createdBy = entry.createdBy();
+
+            java.sql.Date sqlDueDate = entry.dueDate();
+            java.util.Date dueDate = null;
+            if (sqlDueDate != null) dueDate = new java.util.Date(sqlDueDate.getTime());
+
+            String key = dueDate != null ? sdf.format(dueDate) : "";
+            Priority priority = Priority.LOW;
+            if (priorityStr != null) {
+                try {
+                    priority = Priority.valueOf(priorityStr.toUpperCase());
+                } catch (IllegalArgumentException ignored) {}
+            }
 
+            Task task = new Task(id, title, status, dueDate, priority, createdBy);
+
+            // Role-based visibility
+            boolean shouldShow = false;
             if (currentUserRole.equals("teacher")) {
                 // Teachers see tasks they created
-                sql.append("AND created_by = ? ");
-            } else {
-                // Students see tasks for their branch and semester
-                sql.append("AND (created_by = ? OR (t.semester = " +
-                         "(SELECT current_semester FROM users WHERE email = ?) " +
-                         "AND t.branch_code = (SELECT branch_code FROM users WHERE email = ?))) ");
+                shouldShow = createdBy.equals(currentUserEmail);
+            } else if (currentUserRole.equals("student")) {
+                // Students see tasks they created AND tasks assigned to their branch/semester
+                shouldShow = true; // We've already filtered by branch/semester in SQL query
             }
             
-            PreparedStatement stmt = conn.prepareStatement(sql.toString());
-            
-            int paramIndex = 1;
-            if (currentUserRole.equals("teacher")) {
-                stmt.setString(paramIndex++, currentUserEmail);
-            } else {
-                stmt.setString(paramIndex++, currentUserEmail); // for created_by
-                stmt.setString(paramIndex++, currentUserEmail); // for semester check
-                stmt.setString(paramIndex++, currentUserEmail); // for branch check
-            }
-            ResultSet rs = stmt.executeQuery();
-
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String title = rs.getString("title");
-                String status = rs.getString("status");
-                String priorityStr = rs.getString("priority");
-                String createdBy = rs.getString("created_by");
-
-                java.sql.Date sqlDueDate = rs.getDate("due_date");
-                java.util.Date dueDate = null;
-                if (sqlDueDate != null) dueDate = new java.util.Date(sqlDueDate.getTime());
-
-                String key = dueDate != null ? sdf.format(dueDate) : "";
-                Priority priority = Priority.LOW;
-                if (priorityStr != null) {
-                    try {
-                        priority = Priority.valueOf(priorityStr.toUpperCase());
-                    } catch (IllegalArgumentException ignored) {}
-                }
-
-                Task task = new Task(id, title, status, dueDate, priority, createdBy);
-
-                // Role-based visibility
-                boolean shouldShow = false;
-                if (currentUserRole.equals("teacher")) {
-                    // Teachers see tasks they created
-                    shouldShow = createdBy.equals(currentUserEmail);
-                } else if (currentUserRole.equals("student")) {
-                    // Students see tasks they created AND tasks assigned to their branch/semester
-                    shouldShow = true; // We've already filtered by branch/semester in SQL query
-                }
-                
-                if (shouldShow && !key.isEmpty()) {
-                    tasksMap.computeIfAbsent(key, k -> new ArrayList<>()).add(task);
-                }
+            if (shouldShow && !key.isEmpty()) {
+                tasksMap.computeIfAbsent(key, k -> new ArrayList<>()).add(task);
             }
-
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error loading tasks: " + e.getMessage());
         }
     }
 
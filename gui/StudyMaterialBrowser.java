@@ -3,11 +3,14 @@ package gui;
 import javax.swing.*;
 import javax.swing.table.*;
 import java.awt.*;
-import java.sql.*;
-import db.DBConnection;
+import repository.Branch;
+import repository.FileEntry;
+import repository.FileRepository;
+import repository.ReferenceCache;
+import repository.StudyGroup;
+import repository.Subject;
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.List;
 
 public class StudyMaterialBrowser extends JPanel {
     private JComboBox<BranchItem> branchCombo;
@@ -16,6 +19,14 @@ public class StudyMaterialBrowser extends JPanel {
     private JComboBox<SubjectItem> subjectCombo;
     private JPanel fileListPanel;
     private String currentUserRole;
+    private boolean populating; // true while combos are refilled in code, so listeners stay quiet
+
+    // One slot per level of the cascade: a new selection cancels the stale query below it
+    private final AsyncUi.Latest groupsLoad = new AsyncUi.Latest();
+    private final AsyncUi.Latest subjectsLoad = new AsyncUi.Latest();
+    private final AsyncUi.Latest filesLoad = new AsyncUi.Latest();
+
+    private final FileRepository fileRepository = new FileRepository();
     
     
     public StudyMaterialBrowser(String userRole, String userEmail, String defaultBranch, Integer defaultSemester) {
@@ -73,37 +84,26 @@ public class StudyMaterialBrowser extends JPanel {
         add(filterPanel, BorderLayout.NORTH);
         add(fileListPanel, BorderLayout.CENTER);
         
-        // Load data
-        try {
-            loadBranches(defaultBranch);
-            loadSemesters(defaultSemester);
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(
-                this,
-                "Error initializing data: " + e.getMessage(),
-                "Error",
-                JOptionPane.ERROR_MESSAGE
-            );
-            e.printStackTrace();
-        }
+        // Load data (branches, groups and subjects arrive in the background)
+        loadSemesters(defaultSemester);
+        loadBranches(defaultBranch);
         
-        // Add listeners
+        // Add listeners; programmatic refills are ignored, each load triggers the next one itself
         branchCombo.addActionListener(e -> {
-            loadGroups();
-            updateFileList();
+            if (!populating) loadGroups();
         });
         
         groupCombo.addActionListener(e -> {
-            loadSubjects();
-            updateFileList();
+            if (!populating) loadSubjects();
         });
         
         semesterCombo.addActionListener(e -> {
-            loadSubjects();
-            updateFileList();
+            if (!populating) loadSubjects();
         });
         
-        subjectCombo.addActionListener(e -> updateFileList());
+        subjectCombo.addActionListener(e -> {
+            if (!populating) updateFileList();
+        });
     }
     
     private JLabel createLabelWithIcon(String icon, String text) {
@@ -113,53 +113,60 @@ public class StudyMaterialBrowser extends JPanel {
         return label;
     }
     
-    private void loadBranches(String defaultBranch) throws Exception {
+    private void loadBranches(String defaultBranch) {
+        populating = true;
         branchCombo.removeAllItems();
-        try (Connection conn = DBConnection.getConnection()) {
-            String sql = "SELECT branch_code, branch_name FROM branches WHERE is_active = TRUE ORDER BY branch_name";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            ResultSet rs = stmt.executeQuery();
-            
-            while (rs.next()) {
-                BranchItem item = new BranchItem(
-                    rs.getString("branch_code"),
-                    rs.getString("branch_name")
-                );
+        populating = false;
+        
+        AsyncUi.load(ReferenceCache::branches, branches -> {
+            populating = true;
+            for (Branch branch : branches) {
+                BranchItem item = new BranchItem(branch.code(), branch.name());
                 branchCombo.addItem(item);
                 if (defaultBranch != null && defaultBranch.equals(item.code)) {
                     branchCombo.setSelectedItem(item);
                 }
             }
-        } catch (SQLException e) {
+            populating = false;
+            
+            if ("student".equalsIgnoreCase(currentUserRole) && defaultBranch != null) {
+                branchCombo.setEnabled(false);
+            }
+            
+            loadGroups();
+        }, e -> {
+            JOptionPane.showMessageDialog(
+                this,
+                "Error initializing data: " + e.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE
+            );
             e.printStackTrace();
-        }
-        
-        if ("student".equalsIgnoreCase(currentUserRole) && defaultBranch != null) {
-            branchCombo.setEnabled(false);
-        }
-        
-        loadGroups();
+        });
     }
     
     private void loadGroups() {
+        subjectsLoad.cancel();
+        filesLoad.cancel();
+        populating = true;
         groupCombo.removeAllItems();
-        try (Connection conn = DBConnection.getConnection()) {
-            String sql = "SELECT DISTINCT g.group_code, g.group_name " +
-                        "FROM study_groups g " +
-                        "JOIN subjects s ON s.group_code = g.group_code " +
-                        "WHERE s.branch_code = ? AND g.is_active = TRUE " +
-                        "ORDER BY g.group_name";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setString(1, ((BranchItem)branchCombo.getSelectedItem()).code);
-            ResultSet rs = stmt.executeQuery();
-            
-            while (rs.next()) {
-                groupCombo.addItem(new GroupItem(
-                    rs.getString("group_code"),
-                    rs.getString("group_name")
-                ));
+        populating = false;
+        
+        BranchItem selectedBranch = (BranchItem)branchCombo.getSelectedItem();
+        if (selectedBranch == null) {
+            groupsLoad.cancel();
+            loadSubjects();
+            return;
+        }
+        
+        groupsLoad.load(token -> ReferenceCache.groupsForBranch(selectedBranch.code), groups -> {
+            populating = true;
+            for (StudyGroup group : groups) {
+                groupCombo.addItem(new GroupItem(group.code(), group.name()));
             }
-        } catch (Exception e) {
+            populating = false;
+            loadSubjects();
+        }, e -> {
             JOptionPane.showMessageDialog(
                 this,
                 "Error loading groups: " + e.getMessage(),
@@ -167,12 +174,11 @@ public class StudyMaterialBrowser extends JPanel {
                 JOptionPane.ERROR_MESSAGE
             );
             e.printStackTrace();
-        }
-        
-        loadSubjects();
+        });
     }
     
     private void loadSemesters(Integer defaultSemester) {
+        populating = true;
         semesterCombo.removeAllItems();
         for (int i = 1; i <= 8; i++) {
             semesterCombo.addItem(i);
@@ -184,93 +190,56 @@ public class StudyMaterialBrowser extends JPanel {
                 semesterCombo.setEnabled(false);
             }
         }
-        
-        loadSubjects();
+        populating = false;
     }
     
     private void loadSubjects() {
+        filesLoad.cancel();
+        populating = true;
         subjectCombo.removeAllItems();
+        populating = false;
         
         BranchItem selectedBranch = (BranchItem)branchCombo.getSelectedItem();
         GroupItem selectedGroup = (GroupItem)groupCombo.getSelectedItem();
         Integer selectedSemester = (Integer)semesterCombo.getSelectedItem();
         
-        if (selectedBranch != null && selectedGroup != null && selectedSemester != null) {
-            try (Connection conn = DBConnection.getConnection()) {
-                String sql = "SELECT id, name, course_code FROM subjects " +
-                            "WHERE branch_code = ? AND group_code = ? AND semester = ? " +
-                            "ORDER BY name";
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                stmt.setString(1, selectedBranch.code);
-                stmt.setString(2, selectedGroup.code);
-                stmt.setInt(3, selectedSemester);
-                ResultSet rs = stmt.executeQuery();
-                
-                while (rs.next()) {
-                    subjectCombo.addItem(new SubjectItem(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("course_code")
-                    ));
-                }
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(
-                    this,
-                    "Error loading subjects: " + e.getMessage(),
-                    "Error",
-                    JOptionPane.ERROR_MESSAGE
-                );
-                e.printStackTrace();
-            }
+        if (selectedBranch == null || selectedGroup == null || selectedSemester == null) {
+            subjectsLoad.cancel();
+            updateFileList();
+            return;
         }
         
-        updateFileList();
+        subjectsLoad.load(token -> ReferenceCache.subjects(selectedBranch.code, selectedGroup.code, selectedSemester), subjects -> {
+            populating = true;
+            for (Subject subject : subjects) {
+                subjectCombo.addItem(new SubjectItem(subject.id(), subject.name(), subject.courseCode()));
+            }
+            populating = false;
+            updateFileList();
+        }, e -> {
+            JOptionPane.showMessageDialog(
+                this,
+                "Error loading subjects: " + e.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE
+            );
+            e.printStackTrace();
+        });
     }
     
     private void updateFileList() {
-        fileListPanel.removeAll();
-        
         SubjectItem selectedSubject = (SubjectItem)subjectCombo.getSelectedItem();
         if (selectedSubject == null) {
+            filesLoad.cancel();
+            fileListPanel.removeAll();
             fileListPanel.add(new JLabel("Select filters to view files"), BorderLayout.CENTER);
             fileListPanel.revalidate();
             fileListPanel.repaint();
             return;
         }
         
-        // Create table model
-        String[] columns = {
-            "File Tag ID", "File Name", "Uploaded By", "Upload Date", "Actions"
-        };
-        DefaultTableModel model = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return column == 4; // Only actions column is editable
-            }
-        };
-        
-        try (Connection conn = DBConnection.getConnection()) {
-            String sql = "SELECT f.file_tag_id, f.filename, f.uploaded_by, f.upload_time " +
-                        "FROM files f " +
-                        "WHERE f.subject_id = ? AND f.is_deleted = FALSE " +
-                        "ORDER BY f.upload_time DESC";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setInt(1, selectedSubject.id);
-            ResultSet rs = stmt.executeQuery();
-            
-            while (rs.next()) {
-                model.addRow(new Object[]{
-                    rs.getString("file_tag_id"),
-                    rs.getString("filename"),
-                    rs.getString("uploaded_by"),
-                    rs.getTimestamp("upload_time"),
-                    createActionPanel(
-                        rs.getString("file_tag_id"),
-                        rs.getString("filename")
-                    )
-                });
-            }
-        } catch (Exception e) {
+        AsyncUi.showLoading(fileListPanel, "Loading files...");
+        filesLoad.load(token -> fileRepository.findBySubject(selectedSubject.id, token), this::showFiles, e -> {
             JOptionPane.showMessageDialog(
                 this,
                 "Error loading files: " + e.getMessage(),
@@ -280,10 +249,35 @@ public class StudyMaterialBrowser extends JPanel {
             e.printStackTrace();
             
             // Add error message to panel
+            fileListPanel.removeAll();
             fileListPanel.add(new JLabel("Error loading files. Please try again."), BorderLayout.CENTER);
             fileListPanel.revalidate();
             fileListPanel.repaint();
-            return;
+        });
+    }
+    
+    private void showFiles(List<FileEntry> files) {
+        fileListPanel.removeAll();
+        
+        // Create table model
+        String[] columns = {
+            "File Tag ID", "File Name", "Uploaded By", "Upload Date", "Actions"
+        };
+        DefaultTableModel model = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return column == 4; // Only actions column is editable
+            }
+        };
+        
+        for (FileEntry file : files) {
+            model.addRow(new Object[]{
+                file.tagId(),
+                file.filename(),
+                file.uploadedBy(),
+                file.uploadTime(),
+                createActionPanel(file)
+            });
         }
         
         // Create and configure table
@@ -317,43 +311,33 @@ public class StudyMaterialBrowser extends JPanel {
         fileListPanel.repaint();
     }
     
-    private JPanel createActionPanel(String fileTagId, String filename) {
+    private JPanel createActionPanel(FileEntry file) {
+        String fileTagId = file.tagId();
+        String filename = file.filename();
         JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
         panel.setBackground(Theme.BG_PRIMARY);
         
         // View button
         JButton viewBtn = createActionButton("👁️", "View");
         viewBtn.addActionListener(e -> {
-            try {
-                // Get file data from database
-                String sql = "SELECT filedata, filename FROM files WHERE file_tag_id = ?";
-                Connection conn = DBConnection.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                stmt.setString(1, fileTagId);
-                ResultSet rs = stmt.executeQuery();
-                
-                if (rs.next()) {
-                    byte[] fileData = rs.getBytes("filedata");
-                    String tempFileName = rs.getString("filename");
-                    
-                    // Create temporary file
-                    Path tempFile = Files.createTempFile("studysync_", tempFileName);
-                    Files.write(tempFile, fileData);
-                    
+            // Fetch a local copy in the background (from the view cache if viewed before)
+            TransferDialog transfer = TransferDialog.start(this, "Opening " + filename);
+            AsyncUi.load(() -> fileRepository.view(file, transfer.getProgress(), transfer.getToken()), localFile -> {
+                transfer.close();
+                try {
                     // Open file with default system application
-                    Desktop.getDesktop().open(tempFile.toFile());
-                    
-                    // Schedule file for deletion when JVM exits
-                    tempFile.toFile().deleteOnExit();
+                    if (localFile.isPresent()) {
+                        Desktop.getDesktop().open(localFile.get().toFile());
+                    }
+                } catch (Exception ex) {
+                    showViewError(ex);
                 }
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(
-                    this,
-                    "Error viewing file: " + ex.getMessage(),
-                    "Error",
-                    JOptionPane.ERROR_MESSAGE
-                );
-            }
+            }, ex -> {
+                transfer.close();
+                if (!transfer.isCancelled()) {
+                    showViewError(ex);
+                }
+            });
         });
         panel.add(viewBtn);
         
@@ -365,28 +349,26 @@ public class StudyMaterialBrowser extends JPanel {
             int result = chooser.showSaveDialog(this);
             
             if (result == JFileChooser.APPROVE_OPTION) {
-                try {
-                    // Get file data from database
-                    String sql = "SELECT filedata FROM files WHERE file_tag_id = ?";
-                    Connection conn = DBConnection.getConnection();
-                    PreparedStatement stmt = conn.prepareStatement(sql);
-                    stmt.setString(1, fileTagId);
-                    ResultSet rs = stmt.executeQuery();
-                    
-                    if (rs.next()) {
-                        byte[] fileData = rs.getBytes("filedata");
-                        File saveFile = chooser.getSelectedFile();
-                        Files.write(saveFile.toPath(), fileData);
+                // Stream the file from the database to disk in the background
+                File saveFile = chooser.getSelectedFile();
+                TransferDialog transfer = TransferDialog.start(this, "Downloading " + saveFile.getName());
+                AsyncUi.load(() -> fileRepository.downloadByTag(fileTagId, saveFile.toPath(),
+                        transfer.getProgress(), transfer.getToken()).isPresent(), saved -> {
+                    transfer.close();
+                    if (saved) {
                         JOptionPane.showMessageDialog(this, "File downloaded successfully!");
                     }
-                } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(
-                        this,
-                        "Error downloading file: " + ex.getMessage(),
-                        "Error",
-                        JOptionPane.ERROR_MESSAGE
-                    );
-                }
+                }, ex -> {
+                    transfer.close();
+                    if (!transfer.isCancelled()) {
+                        JOptionPane.showMessageDialog(
+                            this,
+                            "Error downloading file: " + ex.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE
+                        );
+                    }
+                });
             }
         });
         panel.add(downloadBtn);
@@ -405,39 +387,17 @@ public class StudyMaterialBrowser extends JPanel {
                 );
                 
                 if (result == JOptionPane.YES_OPTION) {
-                    try {
-                        Connection conn = DBConnection.getConnection();
-                        conn.setAutoCommit(false);
-                        
-                        try {
-                            // First, get the file ID
-                            String idSql = "SELECT id FROM files WHERE file_tag_id = ?";
-                            PreparedStatement idStmt = conn.prepareStatement(idSql);
-                            idStmt.setString(1, fileTagId);
-                            ResultSet rs = idStmt.executeQuery();
-                            
-                            if (rs.next()) {
-                                // Mark file as deleted
-                                String updateSql = "UPDATE files SET is_deleted = TRUE, delete_time = CURRENT_TIMESTAMP WHERE id = ?";
-                                PreparedStatement updateStmt = conn.prepareStatement(updateSql);
-                                updateStmt.setInt(1, rs.getInt("id"));
-                                updateStmt.executeUpdate();
-                                
-                                conn.commit();
-                                updateFileList();
-                            }
-                        } catch (Exception ex) {
-                            conn.rollback();
-                            throw ex;
+                    // Mark file as deleted
+                    AsyncUi.load(() -> fileRepository.softDeleteByTag(fileTagId), deleted -> {
+                        if (deleted) {
+                            updateFileList();
                         }
-                    } catch (Exception ex) {
-                        JOptionPane.showMessageDialog(
-                            this,
-                            "Error deleting file: " + ex.getMessage(),
-                            "Error",
-                            JOptionPane.ERROR_MESSAGE
-                        );
-                    }
+                    }, ex -> JOptionPane.showMessageDialog(
+                        this,
+                        "Error deleting file: " + ex.getMessage(),
+                        "Error",
+                        JOptionPane.ERROR_MESSAGE
+                    ));
                 }
             });
             panel.add(deleteBtn);
@@ -446,6 +406,15 @@ public class StudyMaterialBrowser extends JPanel {
         return panel;
     }
     
+    private void showViewError(Throwable ex) {
+        JOptionPane.showMessageDialog(
+            this,
+            "Error viewing file: " + ex.getMessage(),
+            "Error",
+            JOptionPane.ERROR_MESSAGE
+        );
+    }
+    
     private JButton createActionButton(String icon, String tooltip) {
         JButton btn = new JButton(icon);
         btn.setFont(new Font("Dialog", Font.PLAIN, 14));
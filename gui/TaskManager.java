@@ -22,6 +22,7 @@ package gui;
  * 3. Task Filtering & Search
  *    - Filter by status (Pending/In Progress/Completed)
  *    - Search by title, description, or priority
+ *    - Type-ahead search (debounced; a newer search cancels the running one)
  *    - Sort by various criteria
  * 
  * 4. Visual Features
@@ -40,19 +41,29 @@ package gui;
  * - Maintains task history and status
  * - Efficient query optimization
  * 
- * @see DBConnection
+ * @see TaskRepository
  * @see Dashboard
  */
 
-import db.DBConnection;
+import db.CancelToken;
+import repository.Branch;
+import repository.ReferenceCache;
+import repository.TaskDraft;
+import repository.TaskEntry;
+import repository.TaskRepository;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.*;
 import java.awt.*;
-import java.sql.*;
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class TaskManager extends JPanel {
+    private static final int SEARCH_DEBOUNCE_MS = 300;
+
     // ===== Component Declaration =====
     private JTable taskTable;                    // Main table to display tasks
     private DefaultTableModel tableModel;        // Data model for the task table
@@ -64,6 +75,11 @@ public class TaskManager extends JPanel {
     private JComboBox<String> branchFilter;      // Dropdown for filtering by branch
     private JComboBox<Integer> semesterFilter;   // Dropdown for filtering by semester
     private JTextField searchField;              // Search box for finding tasks
+    private JLabel loadingLabel;                 // Shown while tasks are being fetched
+    private Timer searchDebounce;                // Type-ahead: search once typing pauses
+    private final AsyncUi.Latest taskLoad = new AsyncUi.Latest(); // Newest task query wins
+
+    private final TaskRepository taskRepository = new TaskRepository();
 
     /**
      * Constructor: Initializes the Task Management Interface
@@ -113,16 +129,11 @@ public class TaskManager extends JPanel {
             // Initialize filters but don't add them to UI
             branchFilter = new JComboBox<>();
             branchFilter.addItem("All Branches");
-            try (Connection conn = DBConnection.getConnection()) {
-                String sql = "SELECT branch_code, branch_name FROM branches WHERE is_active = TRUE ORDER BY branch_name";
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                ResultSet rs = stmt.executeQuery();
-                while (rs.next()) {
-                    branchFilter.addItem(rs.getString("branch_name"));
+            AsyncUi.load(ReferenceCache::branches, branches -> {
+                for (Branch b : branches) {
+                    branchFilter.addItem(b.name());
                 }
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(this, "Error loading branches: " + e.getMessage());
-            }
+            }, e -> JOptionPane.showMessageDialog(this, "Error loading branches: " + e.getMessage()));
 
             semesterFilter = new JComboBox<>();
             semesterFilter.addItem(0); // 0 means "All Semesters"
@@ -201,6 +212,10 @@ public class TaskManager extends JPanel {
         if ("teacher".equalsIgnoreCase(userRole)) buttonPanel.add(deleteBtn);
         buttonPanel.add(markCompleteBtn);
 
+        loadingLabel = new JLabel("⏳ Loading tasks...");
+        loadingLabel.setVisible(false);
+        buttonPanel.add(loadingLabel);
+
         mainPanel.add(controlPanel, BorderLayout.NORTH);
         mainPanel.add(scrollPane, BorderLayout.CENTER);
         mainPanel.add(buttonPanel, BorderLayout.SOUTH);
@@ -243,6 +258,18 @@ public class TaskManager extends JPanel {
         searchBtn.addActionListener(e -> searchTasks());
         searchField.addActionListener(e -> searchTasks());
         statusFilter.addActionListener(e -> refreshTaskList());
+
+        // Type-ahead search, debounced so a burst of keystrokes runs one query
+        searchDebounce = new Timer(SEARCH_DEBOUNCE_MS, e -> searchTasks());
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            @Override
+            public void removeUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            @Override
+            public void changedUpdate(DocumentEvent e) { searchDebounce.restart(); }
+        });
     }
 
     // ---------------- Load Tasks ----------------
@@ -254,79 +281,14 @@ public class TaskManager extends JPanel {
         Integer semesterFilterValue = "teacher".equalsIgnoreCase(userRole) ? 
             (Integer) semesterFilter.getSelectedItem() : userSemester;
 
-        try (Connection conn = DBConnection.getConnection()) {
-            StringBuilder sql = new StringBuilder(
-                "SELECT t.*, b.branch_name " +
-                "FROM tasks t " +
-                "LEFT JOIN branches b ON t.branch_code = b.branch_code " +
-                "WHERE 1=1 ");
-
-            if ("student".equalsIgnoreCase(userRole)) {
-                // Students see:
-                // 1. Tasks they created
-                // 2. Tasks assigned to their branch and semester (but only if created by teachers)
-                sql.append("AND (t.created_by = ? OR (t.branch_code = (SELECT branch_code FROM branches WHERE branch_name = ?) " +
-                          "AND t.semester = ? AND EXISTS (SELECT 1 FROM users u WHERE u.email = t.created_by AND u.role = 'teacher'))) ");
-            } else {
-                // Teachers see filtered tasks
-                sql.append("AND t.created_by = ? ");
-                if (!"All Branches".equals(branchFilterValue)) {
-                    sql.append("AND t.branch_code = (SELECT branch_code FROM branches WHERE branch_name = ?) ");
-                }
-                if (semesterFilterValue != 0) {
-                    sql.append("AND t.semester = ? ");
-                }
-            }
+        // Teachers narrow by branch/semester; students are scoped to their own
+        String branchParam = !"teacher".equalsIgnoreCase(userRole) || "All Branches".equals(branchFilterValue)
+            ? null : branchFilterValue;
+        Integer semesterParam = !"teacher".equalsIgnoreCase(userRole) || semesterFilterValue == 0
+            ? null : semesterFilterValue;
 
-            if (!"All".equals(statusFilterValue)) {
-                sql.append("AND t.status = ? ");
-            }
-
-            sql.append("ORDER BY t.created_at DESC");
-            PreparedStatement stmt = conn.prepareStatement(sql.toString());
-
-            int idx = 1;
-            if ("student".equalsIgnoreCase(userRole)) {
-                stmt.setString(idx++, currentUserEmail);
-                stmt.setString(idx++, userBranch);
-                stmt.setInt(idx++, userSemester);
-            } else {
-                stmt.setString(idx++, currentUserEmail);
-                if (!"All Branches".equals(branchFilterValue)) {
-                    stmt.setString(idx++, branchFilterValue);
-                }
-                if (semesterFilterValue != 0) {
-                    stmt.setInt(idx++, semesterFilterValue);
-                }
-            }
-            if (!"All".equals(statusFilterValue)) {
-                stmt.setString(idx, statusFilterValue.toLowerCase().replace(" ", "_"));
-            }
-
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String title = rs.getString("title");
-                String description = rs.getString("description");
-                String priority = rs.getString("priority");
-                String status = rs.getString("status").replace("_", " ").toUpperCase();
-                String branchName = rs.getString("branch_name");
-                int semester = rs.getInt("semester");
-                String assignedTo = branchName + " (Sem " + semester + ")";
-                Date dueDate = rs.getDate("due_date");
-                String createdBy = rs.getString("created_by");
-                
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-                String dueDateStr = dueDate != null ? sdf.format(dueDate) : "";
-                
-                tableModel.addRow(new Object[]{
-                    id, title, description, priority, status, assignedTo, dueDateStr, createdBy
-                });
-            }
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error loading tasks: " + e.getMessage());
-        }
+        fetchTasks(null, toStatusValue(statusFilterValue), branchParam, semesterParam,
+            e -> JOptionPane.showMessageDialog(this, "Error loading tasks: " + e.getMessage()));
     }
 
     // ---------------- Task Dialog ----------------
@@ -355,17 +317,22 @@ public class TaskManager extends JPanel {
 
         // Configure branch and semester for task assignment
         if ("teacher".equalsIgnoreCase(userRole)) {
-            // Load branches
-            try (Connection conn = DBConnection.getConnection()) {
-                String sql = "SELECT branch_code, branch_name FROM branches WHERE is_active = TRUE ORDER BY branch_name";
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                ResultSet rs = stmt.executeQuery();
-                while (rs.next()) {
-                    branchSelect.addItem(rs.getString("branch_name"));
+            // Load branches (the existing task, if any, is selected once both have arrived)
+            branchSelect.setEnabled(false);
+            AsyncUi.load(ReferenceCache::branches, branches -> {
+                Object selected = branchSelect.getSelectedItem();
+                branchSelect.removeAllItems();
+                for (Branch b : branches) {
+                    branchSelect.addItem(b.name());
+                }
+                if (selected != null) {
+                    branchSelect.setSelectedItem(selected);
                 }
-            } catch (Exception e) {
+                branchSelect.setEnabled(true);
+            }, e -> {
+                branchSelect.setEnabled(true);
                 JOptionPane.showMessageDialog(panel, "Error loading branches: " + e.getMessage());
-            }
+            });
 
             // Add semesters 1-8
             for (int i = 1; i <= 8; i++) {
@@ -453,40 +420,26 @@ public class TaskManager extends JPanel {
 
         // Load existing task
         if (taskId != null) {
-            try (Connection conn = DBConnection.getConnection()) {
-                String sql = "SELECT * FROM tasks WHERE id = ?";
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                stmt.setInt(1, taskId);
-                ResultSet rs = stmt.executeQuery();
-
-                if (rs.next()) {
-                    titleField.setText(rs.getString("title"));
-                    descArea.setText(rs.getString("description"));
-                    priorityBox.setSelectedItem(rs.getString("priority").toUpperCase());
-                    statusBox.setSelectedItem(rs.getString("status").replace("_", " "));
-                    Date dueDate = rs.getDate("due_date");
-                    if (dueDate != null)
-                        dueDateField.setText(new SimpleDateFormat("yyyy-MM-dd").format(dueDate));
-                    
+            saveBtn.setEnabled(false);
+            AsyncUi.load(() -> taskRepository.findById(taskId), existing -> {
+                saveBtn.setEnabled(true);
+                if (existing.isPresent()) {
+                    TaskEntry task = existing.get();
+                    titleField.setText(task.title());
+                    descArea.setText(task.description());
+                    priorityBox.setSelectedItem(task.priority().toUpperCase());
+                    statusBox.setSelectedItem(task.status().replace("_", " "));
+                    if (task.dueDate() != null)
+                        dueDateField.setText(new SimpleDateFormat("yyyy-MM-dd").format(task.dueDate()));
+
                     // Branch and semester selection for existing task
-                    String branchCode = rs.getString("branch_code");
-                    int semester = rs.getInt("semester");
-                    
-                    // Set branch selection
-                    String sql2 = "SELECT branch_name FROM branches WHERE branch_code = ?";
-                    PreparedStatement stmt2 = conn.prepareStatement(sql2);
-                    stmt2.setString(1, branchCode);
-                    ResultSet rs2 = stmt2.executeQuery();
-                    if (rs2.next()) {
-                        branchSelect.setSelectedItem(rs2.getString("branch_name"));
+                    if (!branchSelect.isEnabled() && "teacher".equalsIgnoreCase(userRole)) {
+                        branchSelect.addItem(task.branchName()); // branches still loading
                     }
-                    
-                    // Set semester selection
-                    semesterSelect.setSelectedItem(semester);
+                    branchSelect.setSelectedItem(task.branchName());
+                    semesterSelect.setSelectedItem(task.semester());
                 }
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(dialog, "Error loading task: " + e.getMessage());
-            }
+            }, e -> JOptionPane.showMessageDialog(dialog, "Error loading task: " + e.getMessage()));
         }
 
         // Save action
@@ -502,62 +455,27 @@ public class TaskManager extends JPanel {
                 return;
             }
 
-            try (Connection conn = DBConnection.getConnection()) {
-                String sql;
-                
-                // Get branch and semester for the task
-                String taskBranch = "teacher".equalsIgnoreCase(userRole) ? 
-                    (String) branchSelect.getSelectedItem() : userBranch;
-                Integer taskSemester = "teacher".equalsIgnoreCase(userRole) ? 
-                    (Integer) semesterSelect.getSelectedItem() : userSemester;
-                
+            // Get branch and semester for the task
+            String taskBranch = "teacher".equalsIgnoreCase(userRole) ? 
+                (String) branchSelect.getSelectedItem() : userBranch;
+            Integer taskSemester = "teacher".equalsIgnoreCase(userRole) ? 
+                (Integer) semesterSelect.getSelectedItem() : userSemester;
+            TaskDraft draft = new TaskDraft(title, description, priority, status, dueDate, taskBranch, taskSemester);
+
+            saveBtn.setEnabled(false);
+            AsyncUi.run(() -> {
                 if (taskId == null) {
-                    // First, get the branch_code for the selected branch name
-                    String branchCodeSql = "SELECT branch_code FROM branches WHERE branch_name = ?";
-                    PreparedStatement branchStmt = conn.prepareStatement(branchCodeSql);
-                    branchStmt.setString(1, taskBranch);
-                    ResultSet branchRs = branchStmt.executeQuery();
-                    String branchCode = branchRs.next() ? branchRs.getString("branch_code") : null;
-
-                    sql = "INSERT INTO tasks (title, description, priority, status, created_by, due_date, " +
-                          "branch_code, semester) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-                    PreparedStatement stmt = conn.prepareStatement(sql);
-                    stmt.setString(1, title);
-                    stmt.setString(2, description);
-                    stmt.setString(3, priority);
-                    stmt.setString(4, status);
-                    stmt.setString(5, currentUserEmail);
-                    stmt.setString(6, dueDate);
-                    stmt.setString(7, branchCode);
-                    stmt.setInt(8, taskSemester);
-                    stmt.executeUpdate();
+                    taskRepository.create(draft, currentUserEmail);
                 } else {
-                    // First, get the branch_code for the selected branch name
-                    String branchCodeSql = "SELECT branch_code FROM branches WHERE branch_name = ?";
-                    PreparedStatement branchStmt = conn.prepareStatement(branchCodeSql);
-                    branchStmt.setString(1, taskBranch);
-                    ResultSet branchRs = branchStmt.executeQuery();
-                    String branchCode = branchRs.next() ? branchRs.getString("branch_code") : null;
-
-                    sql = "UPDATE tasks SET title=?, description=?, priority=?, status=?, due_date=?, " +
-                          "branch_code=?, semester=? WHERE id=?";
-                    PreparedStatement stmt = conn.prepareStatement(sql);
-                    stmt.setString(1, title);
-                    stmt.setString(2, description);
-                    stmt.setString(3, priority);
-                    stmt.setString(4, status);
-                    stmt.setString(5, dueDate);
-                    stmt.setString(6, branchCode);
-                    stmt.setInt(7, taskSemester);
-                    stmt.setInt(8, taskId);
-                    stmt.executeUpdate();
+                    taskRepository.update(taskId, draft);
                 }
-                
+            }, () -> {
                 dialog.dispose();
                 refreshTaskList();
-            } catch (Exception ex) {
+            }, ex -> {
+                saveBtn.setEnabled(true);
                 JOptionPane.showMessageDialog(dialog, "Error saving task: " + ex.getMessage());
-            }
+            });
         });
 
         cancelBtn.addActionListener(e -> dialog.dispose());
@@ -570,110 +488,74 @@ public class TaskManager extends JPanel {
     private void deleteTask(int taskId) {
         int confirm = JOptionPane.showConfirmDialog(this, "Delete this task?", "Confirm Delete", JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
-            try (Connection conn = DBConnection.getConnection()) {
-                String sql = "DELETE FROM tasks WHERE id=?";
-                PreparedStatement stmt = conn.prepareStatement(sql);
-                stmt.setInt(1, taskId);
-                stmt.executeUpdate();
-                refreshTaskList();
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(this, "Error deleting task: " + e.getMessage());
-            }
+            AsyncUi.run(() -> taskRepository.delete(taskId), this::refreshTaskList,
+                e -> JOptionPane.showMessageDialog(this, "Error deleting task: " + e.getMessage()));
         }
     }
 
     private void markTaskComplete(int taskId) {
-        try (Connection conn = DBConnection.getConnection()) {
-            String sql = "UPDATE tasks SET status='completed', completed_at=CURRENT_TIMESTAMP WHERE id=?";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setInt(1, taskId);
-            stmt.executeUpdate();
-            refreshTaskList();
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error updating status: " + e.getMessage());
-        }
+        AsyncUi.run(() -> taskRepository.markComplete(taskId), this::refreshTaskList,
+            e -> JOptionPane.showMessageDialog(this, "Error updating status: " + e.getMessage()));
     }
 
 // ---------------- Search Tasks ----------------
     private void searchTasks() {
+        searchDebounce.stop(); // Enter or the button may beat the timer
         String keyword = searchField.getText().trim().toLowerCase();
         String statusFilterValue = (String) statusFilter.getSelectedItem();
-        tableModel.setRowCount(0);
 
-        try (Connection conn = DBConnection.getConnection()) {
-            String sql = "SELECT t.*, b.branch_name FROM tasks t " +
-                "LEFT JOIN branches b ON t.branch_code = b.branch_code " +
-                "WHERE 1=1 ";
-
-            if ("student".equalsIgnoreCase(userRole)) {
-                // Students see:
-                // 1. Tasks they created
-                // 2. Tasks assigned to their branch and semester (but only if created by teachers)
-                sql += "AND (created_by = ? OR (branch_code = (SELECT branch_code FROM branches WHERE branch_name = ?) " +
-                       "AND semester = ? AND EXISTS (SELECT 1 FROM users u WHERE u.email = t.created_by AND u.role = 'teacher'))) ";
-            } else {
-                // Teachers see: 
-                // 1. Tasks they created
-                sql += "AND created_by = ? ";
-            }
+        fetchTasks(keyword, toStatusValue(statusFilterValue), null, null,
+            e -> JOptionPane.showMessageDialog(null, "❌ Could not fetch tasks: " + e.getMessage()));
+    }
 
-            // Apply search filter
-            if (!keyword.isEmpty()) {
-                sql += "AND (LOWER(title) LIKE ? OR LOWER(description) LIKE ? OR LOWER(priority) LIKE ? OR LOWER(status) LIKE ?)";
-            }
+    // Query in the background; the table is cleared and "Loading tasks..." shown until it returns.
+    // A newer search or filter change cancels this one and its result is dropped.
+    private void fetchTasks(String keyword, String status, String branchName, Integer semester,
+                            Consumer<Throwable> onError) {
+        tableModel.setRowCount(0);
+        setLoading(true);
+        taskLoad.load(token -> loadTasks(keyword, status, branchName, semester, token), tasks -> {
+            setLoading(false);
+            showTasks(tasks);
+        }, e -> {
+            setLoading(false);
+            onError.accept(e);
+        });
+    }
 
-            // Apply status filter
-            if (!"All".equals(statusFilterValue)) {
-                sql += " AND status = ?";
-            }
+    private void setLoading(boolean loading) {
+        loadingLabel.setVisible(loading);
+        AsyncUi.setBusy(this, loading);
+    }
 
-            sql += " ORDER BY created_at DESC";
-            PreparedStatement stmt = conn.prepareStatement(sql);
+    // Students are scoped to their own branch/semester; teachers may pass null for "all"
+    private List<TaskEntry> loadTasks(String keyword, String status, String branchName, Integer semester,
+                                      CancelToken token) throws SQLException {
+        if ("student".equalsIgnoreCase(userRole)) {
+            return taskRepository.findForStudent(currentUserEmail, userBranch, userSemester, keyword, status, token);
+        }
+        return taskRepository.findForTeacher(currentUserEmail, branchName, semester, keyword, status, token);
+    }
 
-            int idx = 1;
-            if ("student".equalsIgnoreCase(userRole)) {
-                stmt.setString(idx++, currentUserEmail); // created_by
-                stmt.setString(idx++, userBranch);      // branch_name
-                stmt.setInt(idx++, userSemester);       // semester
-            } else {
-                stmt.setString(idx++, currentUserEmail); // created_by
-            }
+    private void showTasks(List<TaskEntry> tasks) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+        for (TaskEntry task : tasks) {
+            String status = task.status().replace("_", " ").toUpperCase();
+            String assignedTo = task.branchName() + " (Sem " + task.semester() + ")";
+            String dueDateStr = task.dueDate() != null ? sdf.format(task.dueDate()) : "";
 
-            if (!keyword.isEmpty()) {
-                String searchValue = "%" + keyword + "%";
-                stmt.setString(idx++, searchValue);
-                stmt.setString(idx++, searchValue);
-                stmt.setString(idx++, searchValue);
-                stmt.setString(idx++, searchValue);
-            }
-            if (!"All".equals(statusFilterValue))
-                stmt.setString(idx++, statusFilterValue.toLowerCase().replace(" ", "_"));
-
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String title = rs.getString("title");
-                String description = rs.getString("description");
-                String priority = rs.getString("priority");
-                String status = rs.getString("status").replace("_", " ").toUpperCase();
-                String branchName = rs.getString("branch_name");
-                int semester = rs.getInt("semester");
-                String assignedTo = branchName + " (Sem " + semester + ")";
-                Date dueDate = rs.getDate("due_date");
-                String createdBy = rs.getString("created_by");
-                
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-                String dueDateStr = dueDate != null ? sdf.format(dueDate) : "";
-                
-                tableModel.addRow(new Object[]{
-                    id, title, description, priority, status, assignedTo, dueDateStr, createdBy
-                });
-            }
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(null, "❌ Could not fetch tasks: " + e.getMessage());
+            tableModel.addRow(new Object[]{
+                task.id(), task.title(), task.description(), task.priority(), status, assignedTo, dueDateStr, task.createdBy()
+            });
         }
     }
+
+    // "In Progress" -> "in_progress"; "All" -> no filter
+    private static String toStatusValue(String statusFilterValue) {
+        return statusFilterValue == null || "All".equals(statusFilterValue)
+            ? null : statusFilterValue.toLowerCase().replace(" ", "_");
+    }
+
     public static void showTasks(String userEmail, String role, String branch, Integer semester) {
         SwingUtilities.invokeLater(() -> {
             TaskManager tm = new TaskManager(userEmail, role, branch, semester);
@@ -0,0 +1,133 @@
+package gui;
+
+import db.CancelToken;
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import storage.TransferProgress;
+
+/**
+ * Small progress window for a file download or view
+ *
+ * Only appears if the transfer takes longer than SHOW_DELAY_MS, so small files do not
+ * flash a dialog. Cancel (or closing the window) cancels the token passed to the
+ * transfer. Create and close it on the event dispatch thread.
+ *
+ * Usage:
+ * TransferDialog transfer = TransferDialog.start(this, "Downloading " + name);
+ * AsyncUi.load(() -> repo.download(id, path, transfer.getProgress(), transfer.getToken()),
+ *     result -> { transfer.close(); ... },
+ *     error -> { transfer.close(); if (!transfer.isCancelled()) ... });
+ */
+public final class TransferDialog {
+    private static final int SHOW_DELAY_MS = 400;
+
+    private final CancelToken token = new CancelToken();
+    private final JDialog dialog;
+    private final JProgressBar bar = new JProgressBar(0, 1000);
+    private final Timer showTimer;
+
+    private TransferDialog(Component parent, String title) {
+        Window owner = parent == null ? null : SwingUtilities.getWindowAncestor(parent);
+        dialog = new JDialog(owner, title);
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+
+        JLabel label = new JLabel(title);
+        label.setFont(Theme.UI_FONT);
+        bar.setStringPainted(true);
+        bar.setString("Starting...");
+
+        JButton cancelBtn = Theme.createSecondaryButton("Cancel");
+        cancelBtn.addActionListener(e -> cancel());
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                cancel();
+            }
+        });
+
+        JPanel panel = new JPanel(new BorderLayout(0, 10));
+        panel.setBackground(Theme.BG_PRIMARY);
+        panel.setBorder(BorderFactory.createEmptyBorder(15, 20, 15, 20));
+        panel.add(label, BorderLayout.NORTH);
+        panel.add(bar, BorderLayout.CENTER);
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        buttons.setBackground(Theme.BG_PRIMARY);
+        buttons.add(cancelBtn);
+        panel.add(buttons, BorderLayout.SOUTH);
+        dialog.add(panel);
+        dialog.pack();
+        dialog.setLocationRelativeTo(parent);
+
+        showTimer = new Timer(SHOW_DELAY_MS, e -> dialog.setVisible(true));
+        showTimer.setRepeats(false);
+    }
+
+    /**
+     * Prepare the dialog; it shows itself if the transfer is still running after a moment
+     */
+    public static TransferDialog start(Component parent, String title) {
+        TransferDialog transfer = new TransferDialog(parent, title);
+        transfer.showTimer.start();
+        return transfer;
+    }
+
+    public CancelToken getToken() {
+        return token;
+    }
+
+    public boolean isCancelled() {
+        return token.isCancelled();
+    }
+
+    /**
+     * Progress callback for the transfer thread; updates are applied on the EDT
+     */
+    public TransferProgress getProgress() {
+        return (transferred, total) -> SwingUtilities.invokeLater(() -> showProgress(transferred, total));
+    }
+
+    public void close() {
+        showTimer.stop();
+        dialog.dispose();
+    }
+
+    private void cancel() {
+        token.cancel();
+        bar.setString("Cancelling...");
+    }
+
+    private void showProgress(long transferred, long total) {
+        if (token.isCancelled()) {
+            return;
+        }
+        if (total > 0) {
+            bar.setValue((int) (transferred * 1000 / total));
+        }
+        bar.setString(formatSize(transferred) + (total > 0 ? " of " + formatSize(total) : ""));
+    }
+
+    /**
+     * Human readable size, e.g. "512 B", "1.5 MB"
+     */
+    public static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,24 @@
+-- StudySync migration 001: file contents move to the content-addressed blob store
+-- Compatible with MariaDB 10.4+
+--
+-- Run once on an existing pdfshare database, then move the existing contents out
+-- (the application keeps reading unmigrated rows from filedata meanwhile):
+--   mysql -u root -p pdfshare < migrations/001_external_blob_store.sql
+--   java -cp out:lib/* tools.BlobMigrator --max-mb-per-sec=20
+
+USE pdfshare;
+
+-- file_size was generated from filedata, which becomes NULL once a row is migrated
+ALTER TABLE files DROP COLUMN file_size;
+
+ALTER TABLE files
+    MODIFY filedata LONGBLOB NULL,
+    ADD COLUMN content_hash CHAR(64) NULL AFTER filename,
+    ADD COLUMN file_size BIGINT NULL AFTER upload_time;
+
+UPDATE files SET file_size = OCTET_LENGTH(filedata) WHERE file_size IS NULL;
+
+CREATE INDEX idx_files_content_hash ON files(content_hash);
+
+-- After tools.BlobMigrator reports 0 remaining, reclaim the space:
+--   OPTIMIZE TABLE files;
@@ -0,0 +1,27 @@
+-- StudySync migration 002: reference counts for deduplicated blobs
+-- Compatible with MariaDB 10.4+
+--
+-- Run after 001. Safe to run while tools.BlobMigrator is stopped; rows it migrates
+-- afterwards maintain the counts themselves.
+--   mysql -u root -p pdfshare < migrations/002_blob_reference_counts.sql
+
+USE pdfshare;
+
+CREATE TABLE IF NOT EXISTS blobs (
+    content_hash CHAR(64) PRIMARY KEY,
+    size BIGINT NOT NULL,
+    ref_count INT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    unreferenced_at TIMESTAMP NULL
+) ENGINE=InnoDB;
+
+CREATE INDEX idx_blobs_unreferenced ON blobs(ref_count, unreferenced_at);
+
+-- Count the live files of every blob already in the store
+INSERT INTO blobs (content_hash, size, ref_count, unreferenced_at)
+SELECT content_hash, MAX(file_size), SUM(is_deleted = FALSE),
+       IF(SUM(is_deleted = FALSE) = 0, CURRENT_TIMESTAMP, NULL)
+FROM files
+WHERE content_hash IS NOT NULL
+GROUP BY content_hash
+ON DUPLICATE KEY UPDATE ref_count = VALUES(ref_count), unreferenced_at = VALUES(unreferenced_at);
@@ -0,0 +1,41 @@
+-- StudySync migration 003: resumable upload sessions
+-- Compatible with MariaDB 10.4+
+--
+-- Run after 002.
+--   mysql -u root -p pdfshare < migrations/003_upload_sessions.sql
+
+USE pdfshare;
+
+CREATE TABLE IF NOT EXISTS upload_sessions (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    uploaded_by VARCHAR(100) NOT NULL,
+    source_key CHAR(64) NOT NULL,
+    filename VARCHAR(255) NOT NULL,
+    file_size BIGINT NOT NULL,
+    chunk_size INT NOT NULL,
+    bytes_committed BIGINT NOT NULL DEFAULT 0,
+    content_hash CHAR(64) NULL,
+    status ENUM('open', 'completed', 'abandoned') NOT NULL DEFAULT 'open',
+    file_id INT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (uploaded_by) REFERENCES users(email)
+        ON DELETE CASCADE
+        ON UPDATE CASCADE,
+    FOREIGN KEY (file_id) REFERENCES files(id)
+        ON DELETE SET NULL
+        ON UPDATE CASCADE
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS upload_session_chunks (
+    session_id INT NOT NULL,
+    chunk_index INT NOT NULL,
+    chunk_hash CHAR(64) NOT NULL,
+    PRIMARY KEY (session_id, chunk_index),
+    FOREIGN KEY (session_id) REFERENCES upload_sessions(id)
+        ON DELETE CASCADE
+        ON UPDATE CASCADE
+) ENGINE=InnoDB;
+
+CREATE INDEX idx_upload_sessions_source ON upload_sessions(uploaded_by, source_key, status);
+CREATE INDEX idx_upload_sessions_idle ON upload_sessions(status, updated_at);
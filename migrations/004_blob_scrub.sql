@@ -0,0 +1,15 @@
+-- StudySync migration 004: integrity scrub results per blob
+-- Compatible with MariaDB 10.4+
+--
+-- Run after 002. The background scrubber (repository.StorageScrubber) starts verifying
+-- blobs once these columns exist.
+--   mysql -u root -p pdfshare < migrations/004_blob_scrub.sql
+
+USE pdfshare;
+
+ALTER TABLE blobs
+    ADD COLUMN verified_at TIMESTAMP NULL,
+    ADD COLUMN scrub_status ENUM('ok', 'corrupt', 'missing') NULL,
+    ADD COLUMN scrub_error VARCHAR(255) NULL;
+
+CREATE INDEX idx_blobs_scrub_status ON blobs(scrub_status);
@@ -0,0 +1,16 @@
+-- StudySync migration 005: indexes for the lazily loaded Study Materials tree
+-- Compatible with MariaDB 10.4+
+--
+-- Run after 001.
+--   mysql -u root -p pdfshare < migrations/005_file_tree_indexes.sql
+
+USE pdfshare;
+
+-- Per-level file counts and sizes read from the index alone; a subject's newest files in order
+CREATE INDEX idx_files_subject_live ON files(subject_id, is_deleted, upload_time, file_size);
+
+-- Newest files overall, for the table before a folder is selected
+CREATE INDEX idx_files_live_recent ON files(is_deleted, upload_time);
+
+-- Covered by idx_files_subject_live
+DROP INDEX idx_files_subject ON files;
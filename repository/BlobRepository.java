@@ -0,0 +1,112 @@
+package repository;
+
+import db.DBConnection;
+import db.QueryRegistry;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import storage.BlobRef;
+
+/**
+ * Reference counts of stored blobs
+ *
+ * Every live (not deleted) file row holds one reference to its blob. Uploading the
+ * same content again only adds a reference; soft-deleting a file releases one. A blob
+ * whose count reaches 0 gets unreferenced_at set and may be reclaimed from the store.
+ *
+ * The static methods run on the caller's connection so the count changes in the same
+ * transaction as the files row.
+ */
+public class BlobRepository {
+
+    /**
+     * Count one more live file using the blob, registering the blob if it is new
+     */
+    public static void addReference(Connection conn, BlobRef blob) throws SQLException {
+        try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.BLOB_ADD_REF)) {
+            stmt.setString(1, blob.hash());
+            stmt.setLong(2, blob.size());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Record a blob that only deleted files use (so it can be reclaimed later)
+     */
+    public static void register(Connection conn, BlobRef blob) throws SQLException {
+        try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.BLOB_REGISTER)) {
+            stmt.setString(1, blob.hash());
+            stmt.setLong(2, blob.size());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * A live file using the blob was deleted
+     */
+    public static void releaseReference(Connection conn, String hash) throws SQLException {
+        try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.BLOB_RELEASE_REF)) {
+            stmt.setString(1, hash);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Stored vs. logical bytes and the blobs shared most
+     *
+     * @param topShared how many shared blobs to list
+     */
+    public StorageStats findStorageStats(int topShared) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection()) {
+            long liveFiles;
+            long logicalBytes;
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.STORAGE_LOGICAL)) {
+                ResultSet rs = stmt.executeQuery();
+                rs.next();
+                liveFiles = rs.getLong("files");
+                logicalBytes = rs.getLong("bytes");
+            }
+
+            long blobs;
+            long storedBytes;
+            long unreferenced;
+            long unreferencedBytes;
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.STORAGE_PHYSICAL)) {
+                ResultSet rs = stmt.executeQuery();
+                rs.next();
+                blobs = rs.getLong("blobs");
+                storedBytes = rs.getLong("bytes");
+                unreferenced = rs.getLong("unreferenced");
+                unreferencedBytes = rs.getLong("unreferenced_bytes");
+            }
+
+            long inlineFiles;
+            long inlineBytes;
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILES_INLINE_REMAINING)) {
+                ResultSet rs = stmt.executeQuery();
+                rs.next();
+                inlineFiles = rs.getLong("files");
+                inlineBytes = rs.getLong("bytes");
+            }
+
+            List<StorageStats.SharedBlob> shared = new ArrayList<>();
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.STORAGE_MOST_SHARED)) {
+                stmt.setInt(1, topShared);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    shared.add(new StorageStats.SharedBlob(
+                        rs.getString("content_hash"),
+                        rs.getLong("size"),
+                        rs.getInt("ref_count"),
+                        rs.getString("filename")));
+                }
+            }
+
+            return new StorageStats(liveFiles, logicalBytes, blobs, storedBytes, unreferenced,
+                unreferencedBytes, inlineFiles, inlineBytes, shared);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package repository;
+
+/**
+ * An academic branch (e.g. CSE, ECE)
+ *
+ * @param code short code stored on subjects, tasks and users
+ * @param name display name shown in the UI
+ */
+public record Branch(String code, String name) {
+}
@@ -0,0 +1,7 @@
+package repository;
+
+/**
+ * A subject together with the branch, group and semester it belongs to
+ */
+public record CatalogSubject(Subject subject, String branchCode, String groupCode, int semester) {
+}
@@ -0,0 +1,24 @@
+package repository;
+
+/**
+ * Which files a ZIP export covers (see FileRepository.exportZip)
+ *
+ * Null fields are not filtered on: a group, one semester of a branch within a group,
+ * a single subject, or ALL files.
+ */
+public record ExportScope(String groupName, String branchName, Integer semester, Integer subjectId) {
+
+    public static final ExportScope ALL = new ExportScope(null, null, null, null);
+
+    public static ExportScope group(String groupName) {
+        return new ExportScope(groupName, null, null, null);
+    }
+
+    public static ExportScope semester(String groupName, String branchName, int semester) {
+        return new ExportScope(groupName, branchName, semester, null);
+    }
+
+    public static ExportScope subject(int subjectId) {
+        return new ExportScope(null, null, null, subjectId);
+    }
+}
@@ -0,0 +1,7 @@
+package repository;
+
+/**
+ * The stored bytes of a file together with its original name
+ */
+public record FileContent(String filename, byte[] data) {
+}
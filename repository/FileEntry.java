@@ -0,0 +1,25 @@
+package repository;
+
+import java.sql.Timestamp;
+
+/**
+ * Metadata of a stored study material file (never the file contents)
+ *
+ * Subject, branch and group columns are only filled by queries that join them;
+ * per-subject listings leave them null (subjectId is always set). contentHash is null for files whose contents
+ * are still stored in the database.
+ */
+public record FileEntry(
+    int id,
+    String tagId,
+    String filename,
+    int subjectId,
+    String subjectName,
+    String courseCode,
+    String branchName,
+    int semester,
+    String groupName,
+    String uploadedBy,
+    Timestamp uploadTime,
+    String contentHash) {
+}
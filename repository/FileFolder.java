@@ -0,0 +1,15 @@
+package repository;
+
+/**
+ * One folder of the Study Materials tree (a group, a semester of a branch, or a subject)
+ * with the live files below it
+ *
+ * @param scope the files the folder covers; also what "Download all" exports
+ * @param name the group, branch (semester folders) or subject name
+ */
+public record FileFolder(ExportScope scope, String name, long files, long bytes) {
+
+    public boolean isSubject() {
+        return scope.subjectId() != null;
+    }
+}
@@ -0,0 +1,644 @@
+package repository;
+
+import db.CancelToken;
+import db.DBConnection;
+import db.NamedQuery;
+import db.QueryRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import storage.BlobCompression;
+import storage.BlobRef;
+import storage.BlobStore;
+import storage.BlobTransferService;
+import storage.LocalBlobStore;
+import storage.TransferProgress;
+import storage.TransferStream;
+import storage.ViewCache;
+import storage.ZipExport;
+
+/**
+ * Study material files
+ *
+ * Features:
+ * - Listing file metadata (all files, per subject, or the newest of a tree folder)
+ * - The Study Materials tree one level at a time, with file counts and sizes
+ * - Loading file contents by id or file tag
+ * - Upload: the file is streamed into the blob store first (progress, cancellation,
+ *   optional throughput limit), then subject upsert + file tag + insert run in one
+ *   short transaction that stores only the content hash and size
+ * - Files above studysync.upload.resumableThresholdBytes (default 8 MB) go through an
+ *   upload session (UploadSessionRepository): an interrupted upload of the same file
+ *   continues after its last checkpointed chunk
+ * - Streaming download into a local file (see BlobTransferService); rows not yet moved
+ *   out of files.filedata by tools.BlobMigrator are still read from the database;
+ *   an interrupted download resumes from its .part file with a range read
+ * - ZIP export of a group, semester or subject in one streamed query, written
+ *   straight to disk entry by entry (see ZipExport)
+ * - Viewing goes through the local ViewCache: a file viewed before opens without
+ *   any database access
+ * - Identical contents are stored once; blobs are reference counted (BlobRepository)
+ * - Soft delete, releasing the file's blob reference
+ *
+ * Listings never load file contents. Prefer download() over findContent(), which
+ * holds the whole file in memory.
+ */
+public class FileRepository {
+    private static final long RESUMABLE_THRESHOLD =
+        Long.getLong("studysync.upload.resumableThresholdBytes", 8L * 1024 * 1024);
+
+    private final BlobStore blobStore;
+    private final UploadSessionRepository uploadSessions;
+
+    public FileRepository() {
+        this(LocalBlobStore.getDefault());
+    }
+
+    public FileRepository(BlobStore blobStore) {
+        this.blobStore = blobStore;
+        this.uploadSessions = new UploadSessionRepository(blobStore);
+    }
+
+    /**
+     * Whether an interrupted upload of a file this size can be resumed
+     */
+    public static boolean isResumable(long size) {
+        return size > RESUMABLE_THRESHOLD;
+    }
+
+    /**
+     * The folders directly below parent, with their live file count and total size:
+     * groups below ALL, semesters (per branch) below a group, subjects below a semester.
+     * One aggregate query, however many files there are.
+     */
+    public List<FileFolder> findFolders(ExportScope parent, CancelToken token) throws SQLException {
+        NamedQuery query;
+        if (parent.groupName() == null) {
+            query = QueryRegistry.FILES_TREE_GROUPS;
+        } else if (parent.semester() == null) {
+            query = QueryRegistry.FILES_TREE_SEMESTERS;
+        } else {
+            query = QueryRegistry.FILES_TREE_SUBJECTS;
+        }
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, query)) {
+            if (query != QueryRegistry.FILES_TREE_GROUPS) {
+                stmt.setString(1, parent.groupName());
+            }
+            if (query == QueryRegistry.FILES_TREE_SUBJECTS) {
+                stmt.setString(2, parent.branchName());
+                stmt.setInt(3, parent.semester());
+            }
+            token.begin(stmt);
+            try {
+                ResultSet rs = stmt.executeQuery();
+
+                List<FileFolder> folders = new ArrayList<>();
+                while (rs.next()) {
+                    long files = rs.getLong("files");
+                    long bytes = rs.getLong("bytes");
+                    if (query == QueryRegistry.FILES_TREE_GROUPS) {
+                        String group = rs.getString("group_name");
+                        folders.add(new FileFolder(ExportScope.group(group), group, files, bytes));
+                    } else if (query == QueryRegistry.FILES_TREE_SEMESTERS) {
+                        String branch = rs.getString("branch_name");
+                        folders.add(new FileFolder(ExportScope.semester(parent.groupName(), branch, rs.getInt("semester")),
+                            branch, files, bytes));
+                    } else {
+                        folders.add(new FileFolder(ExportScope.subject(rs.getInt("subject_id")),
+                            rs.getString("subject_name"), files, bytes));
+                    }
+                }
+                return folders;
+            } finally {
+                token.end(stmt);
+            }
+        }
+    }
+
+    /**
+     * The newest live files of a tree folder (ExportScope.ALL for all files), newest first
+     *
+     * @param limit at most this many; the folder's FileFolder.files() tells how many there are
+     */
+    public List<FileEntry> findInScope(ExportScope scope, int limit, CancelToken token) throws SQLException {
+        return findInScope(scope, null, limit, token);
+    }
+
+    /**
+     * The next page of a tree folder's files: those listed after the given one, newest first.
+     * Pages are keyed on (upload_time, id), so files added or deleted meanwhile neither
+     * repeat nor skip rows.
+     *
+     * @param after the last file of the previous page, or null for the first page
+     */
+    public List<FileEntry> findInScope(ExportScope scope, FileEntry after, int limit, CancelToken token)
+            throws SQLException {
+        NamedQuery query = scope.subjectId() != null ? QueryRegistry.FILES_IN_SUBJECT : QueryRegistry.FILES_IN_SCOPE;
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, query)) {
+            int idx = 1;
+            if (scope.subjectId() != null) {
+                stmt.setInt(idx++, scope.subjectId());
+            } else {
+                idx = setScopeFilters(stmt, idx, scope, false);
+            }
+            Timestamp afterTime = after == null ? null : after.uploadTime();
+            for (int i = 0; i < 3; i++) {
+                stmt.setTimestamp(idx++, afterTime);
+            }
+            setOptionalInt(stmt, idx++, after == null ? null : after.id());
+            stmt.setInt(idx, limit);
+            token.begin(stmt);
+            try {
+                ResultSet rs = stmt.executeQuery();
+
+                List<FileEntry> files = new ArrayList<>();
+                while (rs.next()) {
+                    files.add(readEntry(rs));
+                }
+                return files;
+            } finally {
+                token.end(stmt);
+            }
+        }
+    }
+
+    private static FileEntry readEntry(ResultSet rs) throws SQLException {
+        return new FileEntry(
+            rs.getInt("id"),
+            rs.getString("file_tag_id"),
+            rs.getString("filename"),
+            rs.getInt("subject_id"),
+            rs.getString("subject_name"),
+            rs.getString("course_code"),
+            rs.getString("branch_name"),
+            rs.getInt("semester"),
+            rs.getString("group_name"),
+            rs.getString("uploaded_by"),
+            rs.getTimestamp("upload_time"),
+            rs.getString("content_hash"));
+    }
+
+    /**
+     * Live files of one subject, newest first. Subject columns are left null.
+     */
+    public List<FileEntry> findBySubject(int subjectId) throws SQLException {
+        return findBySubject(subjectId, CancelToken.NONE);
+    }
+
+    public List<FileEntry> findBySubject(int subjectId, CancelToken token) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILES_BY_SUBJECT)) {
+            stmt.setInt(1, subjectId);
+            token.begin(stmt);
+            try {
+                ResultSet rs = stmt.executeQuery();
+
+                List<FileEntry> files = new ArrayList<>();
+                while (rs.next()) {
+                    files.add(new FileEntry(
+                        rs.getInt("id"),
+                        rs.getString("file_tag_id"),
+                        rs.getString("filename"),
+                        subjectId,
+                        null, null, null, 0, null,
+                        rs.getString("uploaded_by"),
+                        rs.getTimestamp("upload_time"),
+                        rs.getString("content_hash")));
+                }
+                return files;
+            } finally {
+                token.end(stmt);
+            }
+        }
+    }
+
+    /**
+     * @return the file's name and bytes, or empty if it does not exist or was deleted
+     */
+    public Optional<FileContent> findContent(int fileId) throws SQLException, IOException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILE_DATA_BY_ID)) {
+            stmt.setInt(1, fileId);
+            return readContent(stmt.executeQuery());
+        }
+    }
+
+    /**
+     * @return the file's name and bytes, or empty if it does not exist or was deleted
+     */
+    public Optional<FileContent> findContentByTag(String fileTagId) throws SQLException, IOException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILE_DATA_BY_TAG)) {
+            stmt.setString(1, fileTagId);
+            return readContent(stmt.executeQuery());
+        }
+    }
+
+    /**
+     * Stream a file's contents into target without holding them on the heap.
+     * Cancelling the token stops the copy; target is only replaced when it completes.
+     *
+     * @return the size and SHA-256 of what was written, or empty if the file does not exist or was deleted
+     */
+    public Optional<BlobTransferService.Result> download(int fileId, Path target, TransferProgress progress,
+                                                         CancelToken token) throws SQLException, IOException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILE_DATA_BY_ID)) {
+            stmt.setInt(1, fileId);
+            return streamContent(stmt.executeQuery(), target, progress, token);
+        }
+    }
+
+    /**
+     * A local copy of the file to open in a viewer. A file viewed before is served
+     * from the view cache without touching the database.
+     *
+     * @param file the listing entry; its contentHash identifies the cached copy
+     * @return the local file, or empty if the file does not exist or was deleted
+     */
+    public Optional<Path> view(FileEntry file, TransferProgress progress, CancelToken token)
+            throws SQLException, IOException {
+        ViewCache cache = ViewCache.getDefault();
+        ReentrantLock lock = cache.lockFor(file.id());
+        lock.lock();
+        try {
+            Optional<Path> cached = cache.lookup(file.id(), file.contentHash());
+            if (cached.isPresent()) {
+                return cached;
+            }
+            Path target = cache.reserve(file.id(), file.filename());
+            Optional<BlobTransferService.Result> result = download(file.id(), target, progress, token);
+            if (result.isEmpty()) {
+                cache.discard(target);
+                return Optional.empty();
+            }
+            return Optional.of(cache.commit(file.id(), result.get().sha256(), target));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Same as download(), looking the file up by its file tag
+     */
+    public Optional<BlobTransferService.Result> downloadByTag(String fileTagId, Path target, TransferProgress progress,
+                                                              CancelToken token) throws SQLException, IOException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILE_DATA_BY_TAG)) {
+            stmt.setString(1, fileTagId);
+            return streamContent(stmt.executeQuery(), target, progress, token);
+        }
+    }
+
+    /**
+     * Write every live file in scope into a ZIP archive at target, as
+     * group/Semester N (branch)/CODE - Subject/filename.
+     *
+     * One query lists the files (names and sizes, not contents) and returns its
+     * connection; contents are then read from the blob store one file at a time, so
+     * memory use stays constant and no pooled connection is held for the whole export.
+     * Rows not yet migrated are read with a short query of their own. Cancelling the
+     * token stops the export and deletes the partial archive; target is only replaced
+     * when the archive is complete.
+     *
+     * @return the number of files written
+     */
+    public int exportZip(ExportScope scope, Path target, TransferProgress progress, CancelToken token)
+            throws SQLException, IOException {
+        List<ExportRow> rows = new ArrayList<>();
+        long total = 0;
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILES_EXPORT)) {
+            setScopeFilters(stmt, 1, scope, true);
+            token.begin(stmt);
+            try {
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    String name = ZipExport.segment(rs.getString("group_name"))
+                        + "/" + ZipExport.segment("Semester " + rs.getInt("semester") + " (" + rs.getString("branch_name") + ")")
+                        + "/" + ZipExport.segment(rs.getString("course_code") + " - " + rs.getString("subject_name"))
+                        + "/" + ZipExport.segment(rs.getString("filename"));
+                    rows.add(new ExportRow(rs.getInt("id"), name, rs.getString("content_hash"), rs.getLong("size")));
+                    total += rs.getLong("size");
+                }
+            } finally {
+                token.end(stmt);
+            }
+        }
+
+        try (ZipExport zip = new ZipExport(target, new BlobCompression())) {
+            long done = 0;
+            for (ExportRow row : rows) {
+                long before = done;
+                long grandTotal = total;
+                TransferProgress fileProgress = (transferred, ignored) -> progress.update(before + transferred, grandTotal);
+                if (row.hash() != null) {
+                    try (InputStream in = new TransferStream(blobStore.open(row.hash()), row.size(), fileProgress, token)) {
+                        zip.add(row.name(), in);
+                    }
+                } else {
+                    exportInline(zip, row, fileProgress, token);
+                }
+                done += row.size();
+            }
+            zip.finish();
+            return zip.getEntries();
+        }
+    }
+
+    // One file of an export
+    private record ExportRow(int id, String name, String hash, long size) {
+    }
+
+    // A row not yet moved to the blob store; skipped if it was deleted since the listing
+    private static void exportInline(ZipExport zip, ExportRow row, TransferProgress progress, CancelToken token)
+            throws SQLException, IOException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILE_DATA_BY_ID)) {
+            stmt.setInt(1, row.id());
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                try (InputStream in = new TransferStream(rs.getBinaryStream("filedata"), row.size(), progress, token)) {
+                    zip.add(row.name(), in);
+                }
+            }
+        }
+    }
+
+    /**
+     * Store a new file in one transaction: resolve branch and group, create or reuse
+     * the subject, assign the next file tag and insert the contents.
+     *
+     * @return the file tag assigned to the upload (e.g. CSE_S3_007)
+     * @throws IllegalArgumentException if the branch or group does not exist
+     */
+    public String upload(UploadRequest request) throws SQLException, IOException {
+        return upload(request, TransferProgress.NONE, CancelToken.NONE);
+    }
+
+    /**
+     * Same as upload(request), streaming the file into the blob store with constant
+     * memory use. Progress is reported while the contents are stored; cancelling the
+     * token stops the upload before the files row is written. Large files are sent
+     * through a resumable upload session.
+     */
+    public String upload(UploadRequest request, TransferProgress progress, CancelToken token)
+            throws SQLException, IOException {
+        long size = Files.size(request.file());
+        UploadSession session = null;
+        BlobRef blob;
+        try {
+            if (isResumable(size)) {
+                session = uploadSessions.begin(request.uploadedBy(), request.file());
+                blob = uploadSessions.stage(session, request.file(), progress, token);
+            } else {
+                try (InputStream in = new TransferStream(Files.newInputStream(request.file()), size, progress, token)) {
+                    blob = blobStore.put(in);
+                }
+            }
+        } catch (IOException e) {
+            if (token.isCancelled()) {
+                throw new SQLException("Upload cancelled", "70100", e);
+            }
+            throw e;
+        }
+
+        // A blob left behind by a failed insert is unreferenced and can be reclaimed
+        try (Connection conn = DBConnection.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                InsertedFile inserted = insertFile(conn, request, blob, false);
+                if (session != null) {
+                    uploadSessions.complete(conn, session, inserted.id());
+                }
+
+                conn.commit();
+                // The upload may have created a subject
+                ReferenceCache.invalidateSubjects();
+                return inserted.tagId();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Record files whose contents are already in the blob store, all in one
+     * transaction, exactly as upload() records one: subject upsert, file tag, row and
+     * blob reference. Used by tools.BulkIngest.
+     *
+     * A file already present in its subject under the same name with the same content
+     * is skipped, so a repeated import does not add it twice.
+     *
+     * @return the file tag of each file, in order; null where the file was already present
+     * @throws IllegalArgumentException if a branch or group does not exist (nothing is stored)
+     */
+    public List<String> insertBatch(List<StoredFile> files) throws SQLException {
+        try (Connection conn = DBConnection.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                List<String> tags = new ArrayList<>();
+                for (StoredFile file : files) {
+                    InsertedFile inserted = insertFile(conn, file.request(), file.blob(), true);
+                    tags.add(inserted == null ? null : inserted.tagId());
+                }
+                conn.commit();
+                ReferenceCache.invalidateSubjects();
+                return tags;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private record InsertedFile(int id, String tagId) {
+    }
+
+    // Subject upsert + file tag + row + blob reference, on the caller's transaction
+    // Returns null if skipDuplicates is set and the subject already has this file
+    private static InsertedFile insertFile(Connection conn, UploadRequest request, BlobRef blob,
+                                           boolean skipDuplicates) throws SQLException {
+        String branchCode = ReferenceDataRepository.findBranchCode(conn, request.branchName());
+        if (branchCode == null) {
+            throw new IllegalArgumentException("Selected branch not found");
+        }
+        String groupCode = ReferenceDataRepository.findGroupCode(conn, request.groupName());
+        if (groupCode == null) {
+            throw new IllegalArgumentException("Selected group not found");
+        }
+
+        int subjectId = SubjectRepository.upsert(conn, request.subjectName(), request.courseCode(),
+            branchCode, request.semester(), groupCode, request.uploadedBy());
+        String filename = request.file().getFileName().toString();
+
+        if (skipDuplicates) {
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILE_FIND_DUPLICATE)) {
+                stmt.setInt(1, subjectId);
+                stmt.setString(2, filename);
+                stmt.setString(3, blob.hash());
+                if (stmt.executeQuery().next()) {
+                    return null;
+                }
+            }
+        }
+
+        String fileTagId = nextFileTagId(conn, branchCode, request.semester());
+
+        int fileId;
+        try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILE_INSERT)) {
+            stmt.setString(1, fileTagId);
+            stmt.setString(2, filename);
+            stmt.setString(3, blob.hash());
+            stmt.setLong(4, blob.size());
+            stmt.setInt(5, subjectId);
+            stmt.setString(6, request.uploadedBy());
+            stmt.executeUpdate();
+            ResultSet keys = stmt.getGeneratedKeys();
+            if (!keys.next()) {
+                throw new SQLException("Failed to store file");
+            }
+            fileId = keys.getInt(1);
+        }
+        // Same content uploaded before (another subject, branch or user): only a reference is added
+        BlobRepository.addReference(conn, blob);
+        return new InsertedFile(fileId, fileTagId);
+    }
+
+    /**
+     * Mark a file as deleted (contents are reclaimed later)
+     *
+     * @return false if the file does not exist or was already deleted
+     */
+    public boolean softDelete(int fileId) throws SQLException {
+        return softDelete(QueryRegistry.FILE_SOFT_DELETE, QueryRegistry.FILE_HASH_BY_ID, fileId);
+    }
+
+    /**
+     * Mark the file with this tag as deleted
+     *
+     * @return false if the file does not exist or was already deleted
+     */
+    public boolean softDeleteByTag(String fileTagId) throws SQLException {
+        return softDelete(QueryRegistry.FILE_SOFT_DELETE_BY_TAG, QueryRegistry.FILE_HASH_BY_TAG, fileTagId);
+    }
+
+    // Mark deleted and release the file's blob reference in one transaction
+    private static boolean softDelete(NamedQuery delete, NamedQuery findHash, Object key) throws SQLException {
+        try (Connection conn = DBConnection.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                boolean deleted;
+                try (PreparedStatement stmt = QueryRegistry.prepare(conn, delete)) {
+                    stmt.setObject(1, key);
+                    deleted = stmt.executeUpdate() > 0;
+                }
+                if (deleted) {
+                    try (PreparedStatement stmt = QueryRegistry.prepare(conn, findHash)) {
+                        stmt.setObject(1, key);
+                        ResultSet rs = stmt.executeQuery();
+                        if (rs.next() && rs.getString("content_hash") != null) {
+                            BlobRepository.releaseReference(conn, rs.getString("content_hash"));
+                        }
+                    }
+                }
+                conn.commit();
+                return deleted;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // Next tag for the branch and semester, e.g. CSE_S3_007
+    // Runs on the upload's connection so it sees the same transaction as the insert
+    private static String nextFileTagId(Connection conn, String branchCode, int semester) throws SQLException {
+        String prefix = branchCode + "_S" + semester + "_";
+        int sequence = 1;
+
+        try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILE_LAST_TAG)) {
+            // "_" is a LIKE wildcard
+            stmt.setString(1, prefix.replace("_", "\\_") + "%");
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                sequence = rs.getInt("last_sequence") + 1; // 0 (NULL) when the prefix has no files yet
+            }
+        }
+
+        return prefix + String.format("%03d", sequence);
+    }
+
+    private Optional<BlobTransferService.Result> streamContent(ResultSet rs, Path target,
+            TransferProgress progress, CancelToken token) throws SQLException, IOException {
+        if (!rs.next()) {
+            return Optional.empty();
+        }
+        String hash = rs.getString("content_hash");
+        long size = rs.getLong("size");
+        if (hash == null) {
+            try (InputStream in = rs.getBinaryStream("filedata")) {
+                return Optional.of(BlobTransferService.copy(in, size, null, target, progress, token));
+            }
+        }
+        // Continue an interrupted download of the same content where it stopped
+        long offset = BlobTransferService.partialLength(target, size);
+        try (InputStream in = blobStore.openRange(hash, offset, size - offset)) {
+            return Optional.of(BlobTransferService.copy(in, offset, size, hash, target, progress, token));
+        }
+    }
+
+    // Bind the "(? IS NULL OR col = ?)" pairs for group, branch, semester (and subject); @return the next index
+    private static int setScopeFilters(PreparedStatement stmt, int idx, ExportScope scope, boolean withSubject)
+            throws SQLException {
+        for (int i = 0; i < 2; i++) {
+            stmt.setString(idx++, scope.groupName());
+        }
+        for (int i = 0; i < 2; i++) {
+            stmt.setString(idx++, scope.branchName());
+        }
+        for (int i = 0; i < 2; i++) {
+            setOptionalInt(stmt, idx++, scope.semester());
+        }
+        for (int i = 0; withSubject && i < 2; i++) {
+            setOptionalInt(stmt, idx++, scope.subjectId());
+        }
+        return idx;
+    }
+
+    private static void setOptionalInt(PreparedStatement stmt, int idx, Integer value) throws SQLException {
+        if (value == null) {
+            stmt.setNull(idx, Types.INTEGER);
+        } else {
+            stmt.setInt(idx, value);
+        }
+    }
+
+    private Optional<FileContent> readContent(ResultSet rs) throws SQLException, IOException {
+        if (!rs.next()) {
+            return Optional.empty();
+        }
+        try (InputStream in = openContent(rs, rs.getString("content_hash"))) {
+            return Optional.of(new FileContent(rs.getString("filename"), in.readAllBytes()));
+        }
+    }
+
+    // Blob store for migrated rows, the legacy filedata column otherwise
+    private InputStream openContent(ResultSet rs, String hash) throws SQLException, IOException {
+        return hash != null ? blobStore.open(hash) : rs.getBinaryStream("filedata");
+    }
+}
@@ -0,0 +1,64 @@
+package repository;
+
+import db.CancelToken;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Expanded levels of the Study Materials tree, shared by every file view
+ *
+ * Each level is loaded by one aggregate query (FileRepository.findFolders) the first
+ * time a folder is expanded and kept until invalidate() (after an upload or delete in
+ * this client) or until studysync.cache.fileTreeTtlMs (default 1 minute) has passed,
+ * which picks up changes made by other clients.
+ *
+ * children() blocks on the query when the level is not cached, so call it off the
+ * event dispatch thread.
+ */
+public final class FileTreeCache {
+    private static final long TTL_MILLIS = Long.getLong("studysync.cache.fileTreeTtlMs", 60_000);
+
+    private static final FileRepository fileRepository = new FileRepository();
+    private static final Map<ExportScope, Level> LEVELS = new ConcurrentHashMap<>();
+    private static long generation;
+
+    private record Level(List<FileFolder> folders, long loadedAt) {
+    }
+
+    private FileTreeCache() {
+    }
+
+    /**
+     * The folders below parent (ExportScope.ALL for the top level)
+     */
+    public static List<FileFolder> children(ExportScope parent, CancelToken token) throws SQLException {
+        long now = System.currentTimeMillis();
+        Level level = LEVELS.get(parent);
+        if (level != null && now - level.loadedAt() < TTL_MILLIS) {
+            return level.folders();
+        }
+        long loadingGeneration = currentGeneration();
+        List<FileFolder> folders = List.copyOf(fileRepository.findFolders(parent, token));
+        synchronized (FileTreeCache.class) {
+            // Not cached if invalidated meanwhile: the result may predate the change
+            if (loadingGeneration == generation) {
+                LEVELS.put(parent, new Level(folders, now));
+            }
+        }
+        return folders;
+    }
+
+    /**
+     * Forget every level, e.g. after files were added or deleted
+     */
+    public static synchronized void invalidate() {
+        generation++;
+        LEVELS.clear();
+    }
+
+    private static synchronized long currentGeneration() {
+        return generation;
+    }
+}
@@ -0,0 +1,134 @@
+package repository;
+
+import db.DbExecutor;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Shared, in-memory copy of the reference data every screen needs
+ *
+ * Branches, study groups and the subject catalog change rarely, so they are loaded
+ * once (normally by prefetch() while the login window opens) and shared by the login
+ * form, upload dialog, task manager and material browser. Concurrent callers share a
+ * single in-flight load instead of each running the query.
+ *
+ * Entries expire after studysync.cache.referenceTtlMs (default 5 minutes); a failed
+ * load is not cached. invalidateSubjects() is called after an upload that may have
+ * created a subject.
+ *
+ * Getters block until the data is there, so call them off the event dispatch thread.
+ */
+public final class ReferenceCache {
+    private static final long TTL_MILLIS = Long.getLong("studysync.cache.referenceTtlMs", 5 * 60_000);
+
+    private static final ReferenceDataRepository referenceData = new ReferenceDataRepository();
+    private static final SubjectRepository subjectRepository = new SubjectRepository();
+
+    private static final Entry<List<Branch>> BRANCHES = new Entry<>(referenceData::findActiveBranches);
+    private static final Entry<List<StudyGroup>> GROUPS = new Entry<>(referenceData::findActiveGroups);
+    private static final Entry<List<CatalogSubject>> SUBJECTS = new Entry<>(subjectRepository::findCatalog);
+
+    private ReferenceCache() {
+    }
+
+    /**
+     * Start loading everything in parallel without waiting for it
+     *
+     * @return completes when all three are loaded (or the first one failed)
+     */
+    public static CompletableFuture<Void> prefetch() {
+        return CompletableFuture.allOf(BRANCHES.future(), GROUPS.future(), SUBJECTS.future());
+    }
+
+    public static List<Branch> branches() throws SQLException {
+        return BRANCHES.get();
+    }
+
+    public static List<StudyGroup> groups() throws SQLException {
+        return GROUPS.get();
+    }
+
+    /**
+     * Active groups that have at least one subject in the branch, ordered by name
+     */
+    public static List<StudyGroup> groupsForBranch(String branchCode) throws SQLException {
+        Set<String> codes = new LinkedHashSet<>();
+        for (CatalogSubject subject : SUBJECTS.get()) {
+            if (subject.branchCode().equals(branchCode)) {
+                codes.add(subject.groupCode());
+            }
+        }
+        List<StudyGroup> groups = new ArrayList<>();
+        for (StudyGroup group : GROUPS.get()) {
+            if (codes.contains(group.code())) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Subjects for one branch, group and semester, ordered by name
+     */
+    public static List<Subject> subjects(String branchCode, String groupCode, int semester) throws SQLException {
+        List<Subject> subjects = new ArrayList<>();
+        for (CatalogSubject subject : SUBJECTS.get()) {
+            if (subject.semester() == semester
+                    && subject.branchCode().equals(branchCode)
+                    && subject.groupCode().equals(groupCode)) {
+                subjects.add(subject.subject());
+            }
+        }
+        return subjects;
+    }
+
+    /**
+     * Drop the subject catalog so the next read sees newly created subjects
+     */
+    public static void invalidateSubjects() {
+        SUBJECTS.invalidate();
+    }
+
+    // ---------------- Cache entry ----------------
+
+    private static final class Entry<T> {
+        private final DbExecutor.DbCall<T> loader;
+        private CompletableFuture<T> value;
+        private long loadedAt;
+
+        Entry(DbExecutor.DbCall<T> loader) {
+            this.loader = loader;
+        }
+
+        // The current value, or a load in flight; starts one if needed
+        synchronized CompletableFuture<T> future() {
+            long now = System.currentTimeMillis();
+            boolean expired = value != null && value.isDone() && now - loadedAt >= TTL_MILLIS;
+            if (value == null || value.isCompletedExceptionally() || expired) {
+                value = DbExecutor.supply(loader);
+                loadedAt = now;
+            }
+            return value;
+        }
+
+        T get() throws SQLException {
+            try {
+                return future().join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        synchronized void invalidate() {
+            value = null;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package repository;
+
+import db.CancelToken;
+import db.DBConnection;
+import db.QueryRegistry;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Branches and study groups
+ *
+ * Read-mostly lookup data shared by the upload dialog, the material browser,
+ * the task manager and registration.
+ */
+public class ReferenceDataRepository {
+
+    public List<Branch> findActiveBranches() throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.BRANCHES_ACTIVE)) {
+            ResultSet rs = stmt.executeQuery();
+            List<Branch> branches = new ArrayList<>();
+            while (rs.next()) {
+                branches.add(new Branch(rs.getString("branch_code"), rs.getString("branch_name")));
+            }
+            return branches;
+        }
+    }
+
+    public List<StudyGroup> findActiveGroups() throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.GROUPS_ACTIVE)) {
+            return readGroups(stmt.executeQuery());
+        }
+    }
+
+    /**
+     * Groups that have at least one subject in the given branch
+     */
+    public List<StudyGroup> findGroupsForBranch(String branchCode, CancelToken token) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.GROUPS_FOR_BRANCH)) {
+            stmt.setString(1, branchCode);
+            token.begin(stmt);
+            try {
+                return readGroups(stmt.executeQuery());
+            } finally {
+                token.end(stmt);
+            }
+        }
+    }
+
+    // Lookups below run on the caller's connection so they join its transaction
+
+    static String findBranchCode(Connection conn, String branchName) throws SQLException {
+        try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.BRANCH_CODE_BY_NAME)) {
+            stmt.setString(1, branchName);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getString("branch_code") : null;
+        }
+    }
+
+    static String findGroupCode(Connection conn, String groupName) throws SQLException {
+        try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.GROUP_CODE_BY_NAME)) {
+            stmt.setString(1, groupName);
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getString("group_code") : null;
+        }
+    }
+
+    private static List<StudyGroup> readGroups(ResultSet rs) throws SQLException {
+        List<StudyGroup> groups = new ArrayList<>();
+        while (rs.next()) {
+            groups.add(new StudyGroup(rs.getString("group_code"), rs.getString("group_name")));
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,320 @@
+package repository;
+
+import db.CancelToken;
+import db.DBConnection;
+import db.MaintenanceLease;
+import db.NamedQuery;
+import db.QueryRegistry;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import storage.LocalBlobStore;
+
+/**
+ * Gives the space of deleted files back
+ *
+ * Deleting a file only marks it deleted (and releases its blob reference), so it can
+ * be recovered for a while. Once a deletion is older than the retention window:
+ * 1. Inline contents of deleted rows not yet moved to the blob store are cleared
+ *    (files.filedata = NULL)
+ * 2. Blobs no live file has used for the retention window are unregistered
+ * 3. The blob store is swept: objects nothing refers to any more (including chunks and
+ *    blobs left by uploads whose row was never written) are deleted after a grace period
+ *
+ * Only one client reclaims at a time: a run starts only where the "studysync.reclaim"
+ * lease (MaintenanceLease) is granted, and is skipped on every other client.
+ *
+ * Interactive traffic comes first:
+ * - Work is done in small batches, one short autocommit statement per row, with a
+ *   pause between batches and a limit on bytes reclaimed per second
+ * - Each statement borrows its own maintenance connection (which does not pin this
+ *   client's reads to the primary) and returns it before any throttling sleep
+ * - Each statement waits at most 1 s for a row lock (SET STATEMENT
+ *   innodb_lock_wait_timeout); a row that is busy is skipped until the next run
+ * - While any thread is waiting for a pooled connection the reclaimer holds off
+ * - It runs on one low-priority daemon thread
+ *
+ * The freed InnoDB pages are reused by new rows; tools.Reclaim --compact also returns
+ * them to the file system.
+ *
+ * Configuration:
+ * - studysync.reclaim.enabled (default true): run in the background of the application
+ * - studysync.reclaim.retentionDays (default 30)
+ * - studysync.reclaim.orphanGraceHours (default 24): minimum age of a store object
+ *   before the sweep may delete it
+ * - studysync.reclaim.batchSize (default 20)
+ * - studysync.reclaim.maxMbPerSec (default 20, 0 = unlimited)
+ * - studysync.reclaim.pauseMs (default 500): pause between batches
+ * - studysync.reclaim.initialDelayMinutes (default 10), studysync.reclaim.intervalHours (default 24)
+ */
+public class StorageReclaimer {
+    private static final long BUSY_BACKOFF_MILLIS = 2000;
+    private static final String LEASE_NAME = "studysync.reclaim";
+
+    private final LocalBlobStore blobStore;
+    private final long retentionSeconds;
+    private final long orphanGraceMillis;
+    private final int batchSize;
+    private final long maxBytesPerSecond;
+    private final long pauseMillis;
+
+    /**
+     * What one run reclaimed
+     *
+     * @param inlineFiles deleted rows whose filedata was cleared
+     * @param blobs blobs unregistered
+     * @param objects store objects and manifests deleted
+     * @param busySkipped rows skipped because they were locked
+     */
+    public record Report(long inlineFiles, long inlineBytes, long blobs, long blobBytes,
+                         long objects, long diskBytes, long busySkipped, long elapsedMillis) {
+
+        @Override
+        public String toString() {
+            return String.format("Reclaimed %.1f MB in the database (inline contents of %d deleted files) "
+                    + "and %.1f MB in the blob store (%d objects; %d unused blobs of %.1f MB unregistered) in %.1f s; "
+                    + "%d rows busy, left for next time",
+                inlineBytes / 1048576.0, inlineFiles, diskBytes / 1048576.0, objects, blobs, blobBytes / 1048576.0,
+                elapsedMillis / 1000.0, busySkipped);
+        }
+    }
+
+    public StorageReclaimer(LocalBlobStore blobStore) {
+        this(blobStore,
+            Long.getLong("studysync.reclaim.retentionDays", 30) * 86400,
+            Long.getLong("studysync.reclaim.orphanGraceHours", 24) * 3600_000,
+            Integer.getInteger("studysync.reclaim.batchSize", 20),
+            Long.getLong("studysync.reclaim.maxMbPerSec", 20) * 1024 * 1024,
+            Long.getLong("studysync.reclaim.pauseMs", 500));
+    }
+
+    public StorageReclaimer(LocalBlobStore blobStore, long retentionSeconds, long orphanGraceMillis,
+                            int batchSize, long maxBytesPerSecond, long pauseMillis) {
+        this.blobStore = blobStore;
+        this.retentionSeconds = retentionSeconds;
+        this.orphanGraceMillis = orphanGraceMillis;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Run the reclaimer periodically on a background thread (studysync.reclaim.*)
+     */
+    public static void startInBackground() {
+        if (!Boolean.parseBoolean(System.getProperty("studysync.reclaim.enabled", "true"))) {
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "studysync-reclaimer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        StorageReclaimer reclaimer = new StorageReclaimer(LocalBlobStore.getDefault());
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                // Empty when another client is reclaiming
+                reclaimer.runExclusively(new CancelToken())
+                    .filter(report -> report.inlineFiles() + report.blobs() + report.objects() > 0)
+                    .ifPresent(System.out::println);
+            } catch (SQLException | IOException | RuntimeException e) {
+                System.err.println("Storage reclaimer: " + e.getMessage());
+            }
+        }, Long.getLong("studysync.reclaim.initialDelayMinutes", 10),
+            Long.getLong("studysync.reclaim.intervalHours", 24) * 60, TimeUnit.MINUTES);
+    }
+
+    /**
+     * run(), unless another client holds the reclaim lease
+     *
+     * @return the report, or empty if the run was skipped
+     */
+    public Optional<Report> runExclusively(CancelToken stop) throws SQLException, IOException {
+        try (MaintenanceLease lease = MaintenanceLease.tryAcquire(LEASE_NAME)) {
+            return lease == null ? Optional.empty() : Optional.of(run(stop));
+        }
+    }
+
+    /**
+     * Reclaim everything that is due, or as much as possible before stop is cancelled
+     */
+    public Report run(CancelToken stop) throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        Progress progress = new Progress(System.nanoTime());
+        clearInlineContents(progress, stop);
+        unregisterBlobs(progress, stop);
+        LocalBlobStore.SweepResult swept = stop.isCancelled()
+            ? new LocalBlobStore.SweepResult(0, 0)
+            : blobStore.sweep(findLiveHashes(), orphanGraceMillis, maxBytesPerSecond, stop);
+        return new Report(progress.inlineFiles, progress.inlineBytes, progress.blobs, progress.blobBytes,
+            swept.objects(), swept.bytes(), progress.busySkipped, System.currentTimeMillis() - started);
+    }
+
+    // Counters shared by the phases; rewritten database bytes drive the rate limit
+    private static final class Progress {
+        final long startedNanos;
+        long inlineFiles;
+        long inlineBytes;
+        long blobs;
+        long blobBytes;
+        long busySkipped;
+
+        Progress(long startedNanos) {
+            this.startedNanos = startedNanos;
+        }
+
+        long bytes() {
+            return inlineBytes;
+        }
+    }
+
+    // A deleted file (id) or an unused blob (hash) due for reclaiming
+    private record Candidate(long id, String hash, long size) {
+    }
+
+    // ---------------- Phases ----------------
+
+    private void clearInlineContents(Progress progress, CancelToken stop) throws SQLException {
+        long lastId = 0;
+        while (!stop.isCancelled()) {
+            List<Candidate> batch = new ArrayList<>();
+            try (Connection conn = DBConnection.getMaintenanceConnection();
+                 PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.RECLAIM_INLINE_BATCH)) {
+                stmt.setLong(1, retentionSeconds);
+                stmt.setLong(2, lastId);
+                stmt.setInt(3, batchSize);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    batch.add(new Candidate(rs.getLong("id"), null, rs.getLong("size")));
+                }
+            }
+            for (Candidate row : batch) {
+                if (stop.isCancelled()) {
+                    break;
+                }
+                if (executeUnlessBusy(QueryRegistry.RECLAIM_INLINE_CLEAR, progress, stmt -> stmt.setLong(1, row.id()))) {
+                    progress.inlineFiles++;
+                    progress.inlineBytes += row.size();
+                }
+                lastId = row.id();
+                throttle(progress, stop);
+            }
+            if (batch.size() < batchSize) {
+                return;
+            }
+            pauseForInteractive(stop);
+        }
+    }
+
+    private void unregisterBlobs(Progress progress, CancelToken stop) throws SQLException {
+        String lastHash = "";
+        while (!stop.isCancelled()) {
+            List<Candidate> batch = new ArrayList<>();
+            try (Connection conn = DBConnection.getMaintenanceConnection();
+                 PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.RECLAIM_BLOBS_BATCH)) {
+                stmt.setLong(1, retentionSeconds);
+                stmt.setString(2, lastHash);
+                stmt.setInt(3, batchSize);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    batch.add(new Candidate(0, rs.getString("content_hash"), rs.getLong("size")));
+                }
+            }
+            for (Candidate blob : batch) {
+                if (stop.isCancelled()) {
+                    break;
+                }
+                if (executeUnlessBusy(QueryRegistry.RECLAIM_BLOB_DELETE, progress, stmt -> {
+                    stmt.setString(1, blob.hash());
+                    stmt.setLong(2, retentionSeconds);
+                })) {
+                    progress.blobs++;
+                    progress.blobBytes += blob.size();
+                }
+                lastHash = blob.hash();
+                throttle(progress, stop);
+            }
+            if (batch.size() < batchSize) {
+                return;
+            }
+            pauseForInteractive(stop);
+        }
+    }
+
+    // From the primary: a lagging replica could miss a blob that was just revived
+    private Set<String> findLiveHashes() throws SQLException {
+        try (Connection conn = DBConnection.getMaintenanceConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.RECLAIM_LIVE_HASHES)) {
+            ResultSet rs = stmt.executeQuery();
+            Set<String> live = new HashSet<>();
+            while (rs.next()) {
+                live.add(rs.getString("content_hash"));
+            }
+            return live;
+        }
+    }
+
+    // ---------------- Staying out of the way ----------------
+
+    // Sets a statement's parameters
+    @FunctionalInterface
+    private interface Binder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    // One autocommit statement on its own connection, returned before the caller throttles
+    // @return true if a row changed; false if it no longer qualified or was locked
+    private static boolean executeUnlessBusy(NamedQuery query, Progress progress, Binder binder) throws SQLException {
+        try (Connection conn = DBConnection.getMaintenanceConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, query)) {
+            binder.bind(stmt);
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            if (e.getErrorCode() == 1205 || e.getErrorCode() == 1213) { // lock wait timeout, deadlock
+                progress.busySkipped++;
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    // Keep the reclaimed bytes per second under the limit
+    private void throttle(Progress progress, CancelToken stop) {
+        if (maxBytesPerSecond <= 0) {
+            return;
+        }
+        long elapsedMillis = (System.nanoTime() - progress.startedNanos) / 1_000_000;
+        sleep(progress.bytes() * 1000 / maxBytesPerSecond - elapsedMillis, stop);
+    }
+
+    // Between batches: the configured pause, longer while others wait for a connection
+    private void pauseForInteractive(CancelToken stop) {
+        sleep(pauseMillis, stop);
+        while (!stop.isCancelled() && DBConnection.getPoolStats().getThreadsAwaitingConnection() > 0) {
+            sleep(BUSY_BACKOFF_MILLIS, stop);
+        }
+    }
+
+    private static void sleep(long millis, CancelToken stop) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop.cancel();
+        }
+    }
+}
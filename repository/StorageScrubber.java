@@ -0,0 +1,362 @@
+package repository;
+
+import db.CancelToken;
+import db.DBConnection;
+import db.MaintenanceLease;
+import db.QueryRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import storage.BlobTransferService;
+import storage.CorruptBlobException;
+import storage.LocalBlobStore;
+
+/**
+ * Finds damaged file contents before a student does
+ *
+ * Walks every live blob (blobs.ref_count > 0) in hash order and reads it from the blob
+ * store start to end, one object at a time (LocalBlobStore.openForVerify), checking it
+ * against its SHA-256 and size. Chunks and packed objects are also checked against their
+ * own checksums on the way. The outcome is recorded per blob (blobs.verified_at,
+ * scrub_status, scrub_error), which is also the progress: after a restart, blobs verified
+ * within the reverify interval are skipped. Damaged blobs are logged and listed by
+ * findDamaged() / tools.Scrub --report.
+ *
+ * Legacy contents still inline in files.filedata have no stored checksum to verify
+ * against; tools.BlobMigrator hashes them when it moves them out.
+ *
+ * It should run on one host that sees the shared blob store, normally from cron through
+ * tools.Scrub: a client reading a per-user store would record other users' blobs as
+ * missing. The application's background scrubber is therefore off unless enabled, and
+ * a run only starts where the "studysync.scrub" lease (MaintenanceLease) is granted.
+ *
+ * Interactive use comes first:
+ * - Reads are limited to maxMbPerSec; time spent paused earns no credit
+ * - The time it takes to read each few MB is compared with the fastest seen this run.
+ *   When reads slow down by slowdownFactor (the disk or shared mount is busy serving
+ *   others), the scrubber backs off, longer each time it is still slow
+ * - While any thread is waiting for a pooled connection it holds off
+ * - It runs on one low-priority daemon thread and holds a connection only per statement;
+ *   results are written on a maintenance connection, so reads keep going to replicas
+ *
+ * Configuration:
+ * - studysync.scrub.enabled (default false): run in the background of the application
+ * - studysync.scrub.reverifyDays (default 30): how often each blob is verified again
+ * - studysync.scrub.maxMbPerSec (default 10, 0 = unlimited)
+ * - studysync.scrub.slowdownFactor (default 3)
+ * - studysync.scrub.batchSize (default 50)
+ * - studysync.scrub.initialDelayMinutes (default 20), studysync.scrub.intervalHours (default 6)
+ */
+public class StorageScrubber {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long LATENCY_WINDOW_BYTES = 8L * 1024 * 1024;
+    private static final double MIN_BASELINE_MILLIS_PER_MB = 2.0;
+    private static final long BUSY_BACKOFF_MILLIS = 2000;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    private static final int MAX_ERROR_LENGTH = 255;
+    private static final String LEASE_NAME = "studysync.scrub";
+
+    private final LocalBlobStore blobStore;
+    private final long reverifySeconds;
+    private final long maxBytesPerSecond;
+    private final double slowdownFactor;
+    private final int batchSize;
+
+    /**
+     * What one run verified
+     *
+     * @param corrupt blobs whose stored bytes do not match their hash
+     * @param missing blobs not found in the store
+     * @param pausedMillis time spent backing off for interactive use
+     */
+    public record Report(long blobs, long bytes, long corrupt, long missing, long pausedMillis, long elapsedMillis) {
+
+        @Override
+        public String toString() {
+            return String.format("Verified %d blobs (%.1f MB) in %.1f s (%.1f s paused for interactive use): "
+                    + "%d corrupt, %d missing",
+                blobs, bytes / 1048576.0, elapsedMillis / 1000.0, pausedMillis / 1000.0, corrupt, missing);
+        }
+    }
+
+    /**
+     * A live file whose content failed its last check
+     *
+     * @param status "corrupt" or "missing"
+     */
+    public record Finding(String contentHash, String status, String error, Timestamp verifiedAt,
+                          int fileId, String filename, String uploadedBy) {
+
+        @Override
+        public String toString() {
+            return String.format("%s  #%d %s (%s): %s%s", verifiedAt, fileId, filename, uploadedBy, status,
+                error == null ? "" : " - " + error);
+        }
+    }
+
+    public StorageScrubber(LocalBlobStore blobStore) {
+        this(blobStore,
+            Long.getLong("studysync.scrub.reverifyDays", 30) * 86400,
+            Long.getLong("studysync.scrub.maxMbPerSec", 10) * 1024 * 1024,
+            Double.parseDouble(System.getProperty("studysync.scrub.slowdownFactor", "3")),
+            Integer.getInteger("studysync.scrub.batchSize", 50));
+    }
+
+    public StorageScrubber(LocalBlobStore blobStore, long reverifySeconds, long maxBytesPerSecond,
+                           double slowdownFactor, int batchSize) {
+        this.blobStore = blobStore;
+        this.reverifySeconds = reverifySeconds;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.slowdownFactor = slowdownFactor;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Run the scrubber periodically on a background thread, if studysync.scrub.enabled is set
+     */
+    public static void startInBackground() {
+        if (!Boolean.parseBoolean(System.getProperty("studysync.scrub.enabled", "false"))) {
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "studysync-scrubber");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        StorageScrubber scrubber = new StorageScrubber(LocalBlobStore.getDefault());
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                // Empty when another client is scrubbing
+                scrubber.runExclusively(new CancelToken())
+                    .filter(report -> report.blobs() > 0)
+                    .ifPresent(System.out::println);
+            } catch (SQLException | IOException | RuntimeException e) {
+                System.err.println("Storage scrubber: " + e.getMessage());
+            }
+        }, Long.getLong("studysync.scrub.initialDelayMinutes", 20),
+            Long.getLong("studysync.scrub.intervalHours", 6) * 60, TimeUnit.MINUTES);
+    }
+
+    /**
+     * run(), unless another client holds the scrub lease
+     *
+     * @return the report, or empty if the run was skipped
+     */
+    public Optional<Report> runExclusively(CancelToken stop) throws SQLException, IOException {
+        try (MaintenanceLease lease = MaintenanceLease.tryAcquire(LEASE_NAME)) {
+            return lease == null ? Optional.empty() : Optional.of(run(stop));
+        }
+    }
+
+    /**
+     * Verify every live blob that is due, or as many as possible before stop is cancelled
+     *
+     * @throws IOException if the store cannot be read at all (e.g. the shared mount is gone);
+     *         nothing is recorded for the blob being read then
+     */
+    public Report run(CancelToken stop) throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        Progress progress = new Progress();
+        String lastHash = "";
+        while (!stop.isCancelled()) {
+            List<Candidate> batch = findDue(lastHash);
+            for (Candidate blob : batch) {
+                if (stop.isCancelled()) {
+                    break;
+                }
+                Outcome outcome = verify(blob, progress, stop);
+                if (outcome == null) {
+                    break; // stopped halfway through the blob
+                }
+                record(blob, outcome);
+                progress.blobs++;
+                if ("corrupt".equals(outcome.status())) {
+                    progress.corrupt++;
+                } else if ("missing".equals(outcome.status())) {
+                    progress.missing++;
+                }
+                if (outcome.error() != null) {
+                    System.err.println("Storage scrubber: blob " + blob.hash() + " is " + outcome.status()
+                        + ": " + outcome.error());
+                }
+                lastHash = blob.hash();
+            }
+            if (batch.size() < batchSize) {
+                break;
+            }
+            pauseForInteractive(progress, stop);
+        }
+        return new Report(progress.blobs, progress.bytes, progress.corrupt, progress.missing,
+            progress.pausedMillis, System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Live files whose content failed its last check, most recent first
+     */
+    public List<Finding> findDamaged() throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.SCRUB_DAMAGED_FILES)) {
+            ResultSet rs = stmt.executeQuery();
+            List<Finding> findings = new ArrayList<>();
+            while (rs.next()) {
+                findings.add(new Finding(rs.getString("content_hash"), rs.getString("scrub_status"),
+                    rs.getString("scrub_error"), rs.getTimestamp("verified_at"), rs.getInt("id"),
+                    rs.getString("filename"), rs.getString("uploaded_by")));
+            }
+            return findings;
+        }
+    }
+
+    // Counters of a run, plus the read pacing and latency state
+    private static final class Progress {
+        long blobs;
+        long bytes;
+        long corrupt;
+        long missing;
+        long pausedMillis;
+
+        long nextReadNanos = System.nanoTime();
+        long windowBytes;
+        long windowNanos;
+        double baselineMillisPerMb = Double.MAX_VALUE;
+        int slowWindows;
+    }
+
+    private record Candidate(String hash, long size) {
+    }
+
+    // status is "ok", "corrupt" or "missing"; error says what is wrong
+    private record Outcome(String status, String error) {
+    }
+
+    // ---------------- Verifying ----------------
+
+    private List<Candidate> findDue(String lastHash) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.SCRUB_BATCH)) {
+            stmt.setLong(1, reverifySeconds);
+            stmt.setString(2, lastHash);
+            stmt.setInt(3, batchSize);
+            ResultSet rs = stmt.executeQuery();
+            List<Candidate> batch = new ArrayList<>();
+            while (rs.next()) {
+                batch.add(new Candidate(rs.getString("content_hash"), rs.getLong("size")));
+            }
+            return batch;
+        }
+    }
+
+    // @return the outcome, or null if stop was cancelled before the blob was read to the end
+    private Outcome verify(Candidate blob, Progress progress, CancelToken stop) throws IOException {
+        MessageDigest digest = BlobTransferService.sha256();
+        long size = 0;
+        try (InputStream in = blobStore.openForVerify(blob.hash())) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (true) {
+                if (stop.isCancelled()) {
+                    return null;
+                }
+                long before = System.nanoTime();
+                int n = in.read(buffer);
+                if (n < 0) {
+                    break;
+                }
+                digest.update(buffer, 0, n);
+                size += n;
+                progress.bytes += n;
+                afterRead(n, System.nanoTime() - before, progress, stop);
+            }
+        } catch (NoSuchFileException e) {
+            return new Outcome("missing", "not in the blob store");
+        } catch (CorruptBlobException e) {
+            return new Outcome("corrupt", e.getMessage());
+        }
+        if (size != blob.size()) {
+            return new Outcome("corrupt", "stored size " + size + ", expected " + blob.size());
+        }
+        String actual = HexFormat.of().formatHex(digest.digest());
+        if (!actual.equals(blob.hash())) {
+            return new Outcome("corrupt", "content hashes to " + actual);
+        }
+        return new Outcome("ok", null);
+    }
+
+    private static void record(Candidate blob, Outcome outcome) throws SQLException {
+        try (Connection conn = DBConnection.getMaintenanceConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.SCRUB_RECORD)) {
+            String error = outcome.error();
+            stmt.setString(1, outcome.status());
+            stmt.setString(2, error == null || error.length() <= MAX_ERROR_LENGTH ? error
+                : error.substring(0, MAX_ERROR_LENGTH));
+            stmt.setString(3, blob.hash());
+            stmt.executeUpdate();
+        }
+    }
+
+    // ---------------- Staying out of the way ----------------
+
+    // Pace reads to maxBytesPerSecond and back off when they get slower than usual
+    private void afterRead(int bytes, long nanos, Progress progress, CancelToken stop) {
+        progress.windowBytes += bytes;
+        progress.windowNanos += nanos;
+        if (progress.windowBytes >= LATENCY_WINDOW_BYTES) {
+            double millisPerMb = progress.windowNanos / 1e6 / (progress.windowBytes / 1048576.0);
+            progress.windowBytes = 0;
+            progress.windowNanos = 0;
+            progress.baselineMillisPerMb = Math.min(progress.baselineMillisPerMb, millisPerMb);
+            double baseline = Math.max(progress.baselineMillisPerMb, MIN_BASELINE_MILLIS_PER_MB);
+            if (millisPerMb > baseline * slowdownFactor) {
+                progress.slowWindows++;
+                pause(Math.min(MAX_BACKOFF_MILLIS, BUSY_BACKOFF_MILLIS << Math.min(progress.slowWindows - 1, 5)),
+                    progress, stop);
+            } else {
+                progress.slowWindows = 0;
+            }
+            pauseForInteractive(progress, stop);
+        }
+        if (maxBytesPerSecond > 0) {
+            long now = System.nanoTime();
+            progress.nextReadNanos = Math.max(progress.nextReadNanos, now) + bytes * 1_000_000_000L / maxBytesPerSecond;
+            sleep((progress.nextReadNanos - now) / 1_000_000, stop);
+        }
+    }
+
+    // While others wait for a pooled connection
+    private static void pauseForInteractive(Progress progress, CancelToken stop) {
+        while (!stop.isCancelled() && DBConnection.getPoolStats().getThreadsAwaitingConnection() > 0) {
+            pause(BUSY_BACKOFF_MILLIS, progress, stop);
+        }
+    }
+
+    private static void pause(long millis, Progress progress, CancelToken stop) {
+        long before = System.nanoTime();
+        sleep(millis, stop);
+        progress.pausedMillis += (System.nanoTime() - before) / 1_000_000;
+    }
+
+    private static void sleep(long millis, CancelToken stop) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop.cancel();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package repository;
+
+import java.util.List;
+
+/**
+ * How much file content is stored and how much deduplication saves
+ *
+ * @param liveFiles      files not deleted whose contents are in the blob store
+ * @param logicalBytes   their total size, as if every file were stored separately
+ * @param blobs          distinct blobs stored
+ * @param storedBytes    size of all stored blobs
+ * @param unreferencedBlobs blobs only used by deleted files (reclaimable)
+ * @param inlineFiles    rows whose contents are still in files.filedata
+ */
+public record StorageStats(
+    long liveFiles,
+    long logicalBytes,
+    long blobs,
+    long storedBytes,
+    long unreferencedBlobs,
+    long unreferencedBytes,
+    long inlineFiles,
+    long inlineBytes,
+    List<SharedBlob> mostShared) {
+
+    /**
+     * A blob used by several live files
+     *
+     * @param filename one of the names it was uploaded under
+     */
+    public record SharedBlob(String hash, long size, int references, String filename) {
+
+        public long savedBytes() {
+            return (references - 1L) * size;
+        }
+    }
+
+    /**
+     * Bytes that would be stored without deduplication minus bytes stored for live files
+     */
+    public long savedBytes() {
+        return logicalBytes - (storedBytes - unreferencedBytes);
+    }
+
+    /**
+     * logicalBytes / referenced stored bytes, e.g. 3.2 means "3.2x smaller"
+     */
+    public double dedupRatio() {
+        long referenced = storedBytes - unreferencedBytes;
+        return referenced == 0 ? 1.0 : (double) logicalBytes / referenced;
+    }
+}
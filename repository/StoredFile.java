@@ -0,0 +1,10 @@
+package repository;
+
+import storage.BlobRef;
+
+/**
+ * A file whose contents are already in the blob store, waiting for its files row
+ * (see FileRepository.insertBatch)
+ */
+public record StoredFile(UploadRequest request, BlobRef blob) {
+}
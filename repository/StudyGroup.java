@@ -0,0 +1,10 @@
+package repository;
+
+/**
+ * A study group that subjects are organized under
+ *
+ * @param code short code stored on subjects
+ * @param name display name shown in the UI
+ */
+public record StudyGroup(String code, String name) {
+}
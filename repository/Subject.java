@@ -0,0 +1,7 @@
+package repository;
+
+/**
+ * A subject offered for one branch, group and semester
+ */
+public record Subject(int id, String name, String courseCode) {
+}
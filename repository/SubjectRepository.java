@@ -0,0 +1,87 @@
+package repository;
+
+import db.CancelToken;
+import db.DBConnection;
+import db.QueryRegistry;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Subjects and the subject tree used to browse files
+ */
+public class SubjectRepository {
+
+    /**
+     * Subjects for one branch, group and semester, ordered by name
+     */
+    public List<Subject> findSubjects(String branchCode, String groupCode, int semester,
+                                      CancelToken token) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.SUBJECTS_FOR_FILTER)) {
+            stmt.setString(1, branchCode);
+            stmt.setString(2, groupCode);
+            stmt.setInt(3, semester);
+            token.begin(stmt);
+            try {
+                ResultSet rs = stmt.executeQuery();
+
+                List<Subject> subjects = new ArrayList<>();
+                while (rs.next()) {
+                    subjects.add(new Subject(rs.getInt("id"), rs.getString("name"), rs.getString("course_code")));
+                }
+                return subjects;
+            } finally {
+                token.end(stmt);
+            }
+        }
+    }
+
+    /**
+     * Every subject with its branch, group and semester, ordered by name
+     */
+    public List<CatalogSubject> findCatalog() throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.SUBJECTS_CATALOG)) {
+            ResultSet rs = stmt.executeQuery();
+
+            List<CatalogSubject> subjects = new ArrayList<>();
+            while (rs.next()) {
+                subjects.add(new CatalogSubject(
+                    new Subject(rs.getInt("id"), rs.getString("name"), rs.getString("course_code")),
+                    rs.getString("branch_code"),
+                    rs.getString("group_code"),
+                    rs.getInt("semester")));
+            }
+            return subjects;
+        }
+    }
+
+    /**
+     * Create the subject or reuse the existing one with the same key.
+     * Runs on the caller's connection so it joins the upload transaction.
+     *
+     * @return id of the new or existing subject
+     */
+    static int upsert(Connection conn, String name, String courseCode, String branchCode,
+                      int semester, String groupCode, String createdBy) throws SQLException {
+        try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.SUBJECT_UPSERT)) {
+            stmt.setString(1, name);
+            stmt.setString(2, courseCode);
+            stmt.setString(3, branchCode);
+            stmt.setInt(4, semester);
+            stmt.setString(5, groupCode);
+            stmt.setString(6, createdBy);
+            stmt.executeUpdate();
+
+            ResultSet keys = stmt.getGeneratedKeys();
+            if (!keys.next()) {
+                throw new SQLException("Failed to create subject");
+            }
+            return keys.getInt(1);
+        }
+    }
+}
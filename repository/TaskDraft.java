@@ -0,0 +1,18 @@
+package repository;
+
+/**
+ * User-entered values for creating or editing a task
+ *
+ * @param status database form, e.g. "pending" or "in_progress"
+ * @param dueDate yyyy-MM-dd as typed by the user
+ * @param branchName branch the task is assigned to; resolved to its code on save
+ */
+public record TaskDraft(
+    String title,
+    String description,
+    String priority,
+    String status,
+    String dueDate,
+    String branchName,
+    Integer semester) {
+}
@@ -0,0 +1,21 @@
+package repository;
+
+import java.sql.Date;
+
+/**
+ * A task as stored in the tasks table, with its branch name resolved
+ *
+ * @param status database form, e.g. "pending" or "in_progress"
+ */
+public record TaskEntry(
+    int id,
+    String title,
+    String description,
+    String priority,
+    String status,
+    String createdBy,
+    Date dueDate,
+    String branchCode,
+    String branchName,
+    int semester) {
+}
@@ -0,0 +1,190 @@
+package repository;
+
+import db.CancelToken;
+import db.DBConnection;
+import db.NamedQuery;
+import db.QueryRegistry;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tasks for the task manager and the schedule calendar
+ *
+ * Visibility rules:
+ * - Students see the tasks they created plus teacher tasks for their branch and semester
+ * - Teachers see the tasks they created
+ *
+ * Optional filters (keyword, status, branch, semester) are ignored when null.
+ * Status values use the database form, e.g. "in_progress".
+ *
+ * The filtered searches take a CancelToken so a newer search can stop an older one.
+ */
+public class TaskRepository {
+
+    public List<TaskEntry> findForStudent(String email, String branchName, Integer semester,
+                                          String keyword, String status, CancelToken token) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.TASKS_FOR_STUDENT)) {
+            int idx = 1;
+            stmt.setString(idx++, email);
+            stmt.setString(idx++, branchName);
+            setOptionalInt(stmt, idx++, semester);
+            bindFilters(stmt, idx, keyword, status);
+            return readTasks(stmt, token);
+        }
+    }
+
+    /**
+     * @param branchName only tasks for this branch, or null for all
+     * @param semester only tasks for this semester, or null for all
+     */
+    public List<TaskEntry> findForTeacher(String email, String branchName, Integer semester,
+                                          String keyword, String status, CancelToken token) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.TASKS_FOR_TEACHER)) {
+            int idx = 1;
+            stmt.setString(idx++, email);
+            setOptionalString(stmt, idx++, branchName);
+            setOptionalString(stmt, idx++, branchName);
+            setOptionalInt(stmt, idx++, semester);
+            setOptionalInt(stmt, idx++, semester);
+            bindFilters(stmt, idx, keyword, status);
+            return readTasks(stmt, token);
+        }
+    }
+
+    /**
+     * Tasks shown on the schedule calendar. Students' branch and semester are
+     * taken from their user record.
+     */
+    public List<TaskEntry> findForCalendar(String email, boolean teacher) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn,
+                 teacher ? QueryRegistry.TASKS_CALENDAR_TEACHER : QueryRegistry.TASKS_CALENDAR_STUDENT)) {
+            stmt.setString(1, email);
+            if (!teacher) {
+                stmt.setString(2, email); // for semester check
+                stmt.setString(3, email); // for branch check
+            }
+            return readTasks(stmt.executeQuery());
+        }
+    }
+
+    public Optional<TaskEntry> findById(int taskId) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.TASK_BY_ID)) {
+            stmt.setInt(1, taskId);
+            List<TaskEntry> tasks = readTasks(stmt.executeQuery());
+            return tasks.isEmpty() ? Optional.empty() : Optional.of(tasks.get(0));
+        }
+    }
+
+    public void create(TaskDraft draft, String createdBy) throws SQLException {
+        try (Connection conn = DBConnection.getWriteConnection()) {
+            String branchCode = ReferenceDataRepository.findBranchCode(conn, draft.branchName());
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.TASK_INSERT)) {
+                stmt.setString(1, draft.title());
+                stmt.setString(2, draft.description());
+                stmt.setString(3, draft.priority());
+                stmt.setString(4, draft.status());
+                stmt.setString(5, createdBy);
+                stmt.setString(6, draft.dueDate());
+                stmt.setString(7, branchCode);
+                setOptionalInt(stmt, 8, draft.semester());
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    public void update(int taskId, TaskDraft draft) throws SQLException {
+        try (Connection conn = DBConnection.getWriteConnection()) {
+            String branchCode = ReferenceDataRepository.findBranchCode(conn, draft.branchName());
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.TASK_UPDATE)) {
+                stmt.setString(1, draft.title());
+                stmt.setString(2, draft.description());
+                stmt.setString(3, draft.priority());
+                stmt.setString(4, draft.status());
+                stmt.setString(5, draft.dueDate());
+                stmt.setString(6, branchCode);
+                setOptionalInt(stmt, 7, draft.semester());
+                stmt.setInt(8, taskId);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    public void delete(int taskId) throws SQLException {
+        executeById(QueryRegistry.TASK_DELETE, taskId);
+    }
+
+    public void markComplete(int taskId) throws SQLException {
+        executeById(QueryRegistry.TASK_COMPLETE, taskId);
+    }
+
+    private static void executeById(NamedQuery query, int taskId) throws SQLException {
+        try (Connection conn = DBConnection.getWriteConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, query)) {
+            stmt.setInt(1, taskId);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Keyword: one IS NULL check plus the four LIKE columns, then status twice
+    private static void bindFilters(PreparedStatement stmt, int idx, String keyword, String status) throws SQLException {
+        String searchValue = keyword == null || keyword.isEmpty() ? null : "%" + keyword.toLowerCase() + "%";
+        for (int i = 0; i < 5; i++) {
+            setOptionalString(stmt, idx++, searchValue);
+        }
+        setOptionalString(stmt, idx++, status);
+        setOptionalString(stmt, idx, status);
+    }
+
+    private static List<TaskEntry> readTasks(PreparedStatement stmt, CancelToken token) throws SQLException {
+        token.begin(stmt);
+        try {
+            return readTasks(stmt.executeQuery());
+        } finally {
+            token.end(stmt);
+        }
+    }
+
+    private static List<TaskEntry> readTasks(ResultSet rs) throws SQLException {
+        List<TaskEntry> tasks = new ArrayList<>();
+        while (rs.next()) {
+            tasks.add(new TaskEntry(
+                rs.getInt("id"),
+                rs.getString("title"),
+                rs.getString("description"),
+                rs.getString("priority"),
+                rs.getString("status"),
+                rs.getString("created_by"),
+                rs.getDate("due_date"),
+                rs.getString("branch_code"),
+                rs.getString("branch_name"),
+                rs.getInt("semester")));
+        }
+        return tasks;
+    }
+
+    private static void setOptionalString(PreparedStatement stmt, int idx, String value) throws SQLException {
+        if (value == null) {
+            stmt.setNull(idx, Types.VARCHAR);
+        } else {
+            stmt.setString(idx, value);
+        }
+    }
+
+    private static void setOptionalInt(PreparedStatement stmt, int idx, Integer value) throws SQLException {
+        if (value == null) {
+            stmt.setNull(idx, Types.INTEGER);
+        } else {
+            stmt.setInt(idx, value);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package repository;
+
+import java.nio.file.Path;
+
+/**
+ * Everything needed to store a new file: where it belongs, the local file and who uploads it.
+ * The subject is created on first upload and reused afterwards.
+ */
+public record UploadRequest(
+    String groupName,
+    String branchName,
+    int semester,
+    String subjectName,
+    String courseCode,
+    Path file,
+    String uploadedBy) {
+}
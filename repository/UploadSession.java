@@ -0,0 +1,21 @@
+package repository;
+
+/**
+ * A resumable upload in progress (see UploadSessionRepository)
+ *
+ * @param bytesCommitted bytes staged and checkpointed so far
+ * @param contentHash hash of the staged file once it is in the blob store, else null
+ */
+public record UploadSession(
+    int id,
+    String uploadedBy,
+    String filename,
+    long fileSize,
+    int chunkSize,
+    long bytesCommitted,
+    String contentHash) {
+
+    public boolean isResumed() {
+        return bytesCommitted > 0;
+    }
+}
@@ -0,0 +1,313 @@
+package repository;
+
+import db.CancelToken;
+import db.DBConnection;
+import db.QueryRegistry;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import storage.BlobRef;
+import storage.BlobStore;
+import storage.BlobTransferService;
+import storage.TransferProgress;
+import storage.TransferStream;
+
+/**
+ * Resumable uploads
+ *
+ * A large file is staged in the blob store's staging area chunk by chunk. After each
+ * chunk is synced to disk, its SHA-256 and the new committed length are checkpointed in
+ * upload_sessions / upload_session_chunks. If the upload dies (network drop, laptop lid
+ * closed, crash), uploading the same file again finds the open session, checks the
+ * staged chunks against their checkpoints and continues after the last good one.
+ *
+ * Features:
+ * - One short transaction per chunk; no connection is held while data is copied
+ * - Staged data that does not match its checkpoint is cut off and sent again
+ * - complete() runs on the caller's connection, so the files row, its blob reference
+ *   and the closed session commit together
+ * - purgeAbandoned() gives up sessions idle for longer than the TTL and deletes their
+ *   staged data
+ *
+ * Configuration:
+ * - studysync.upload.chunkSizeBytes (default 4 MB)
+ * - studysync.upload.sessionTtlHours (default 48)
+ *
+ * Usage (see FileRepository.upload):
+ * UploadSession session = sessions.begin(user, file);
+ * BlobRef blob = sessions.stage(session, file, progress, token);
+ * ... insert the files row, then sessions.complete(conn, session, fileId) and commit
+ */
+public class UploadSessionRepository {
+    private final BlobStore blobStore;
+    private final int chunkSize;
+    private final long ttlSeconds;
+
+    public UploadSessionRepository(BlobStore blobStore) {
+        this(blobStore, Integer.getInteger("studysync.upload.chunkSizeBytes", 4 * 1024 * 1024),
+            Long.getLong("studysync.upload.sessionTtlHours", 48) * 3600);
+    }
+
+    public UploadSessionRepository(BlobStore blobStore, int chunkSize, long ttlSeconds) {
+        this.blobStore = blobStore;
+        this.chunkSize = chunkSize;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    /**
+     * The open session for this user and local file, or a new one.
+     * A file that was modified since the session began counts as a different file.
+     */
+    public UploadSession begin(String uploadedBy, Path file) throws SQLException, IOException {
+        long size = Files.size(file);
+        String sourceKey = sourceKey(file, size);
+        try (Connection conn = DBConnection.getWriteConnection()) {
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_SESSION_FIND)) {
+                stmt.setString(1, uploadedBy);
+                stmt.setString(2, sourceKey);
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next()) {
+                    UploadSession session = new UploadSession(rs.getInt("id"), uploadedBy, rs.getString("filename"),
+                        rs.getLong("file_size"), rs.getInt("chunk_size"), rs.getLong("bytes_committed"),
+                        rs.getString("content_hash"));
+                    try (PreparedStatement touch = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_SESSION_TOUCH)) {
+                        touch.setInt(1, session.id());
+                        touch.executeUpdate();
+                    }
+                    return session;
+                }
+            }
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_SESSION_INSERT)) {
+                String filename = file.getFileName().toString();
+                stmt.setString(1, uploadedBy);
+                stmt.setString(2, sourceKey);
+                stmt.setString(3, filename);
+                stmt.setLong(4, size);
+                stmt.setInt(5, chunkSize);
+                stmt.executeUpdate();
+                ResultSet keys = stmt.getGeneratedKeys();
+                if (!keys.next()) {
+                    throw new SQLException("Failed to create upload session");
+                }
+                return new UploadSession(keys.getInt(1), uploadedBy, filename, size, chunkSize, 0, null);
+            }
+        }
+    }
+
+    /**
+     * Send the rest of the file into the session's staging file, checkpointing every
+     * chunk, then move it into the blob store. Progress counts the bytes already staged.
+     *
+     * @return the stored blob; the session stays open until complete()
+     * @throws java.io.InterruptedIOException if the token was cancelled (the session can be resumed)
+     * @throws IOException if the file changed while it was being sent
+     */
+    public BlobRef stage(UploadSession session, Path file, TransferProgress progress, CancelToken token)
+            throws SQLException, IOException {
+        long size = session.fileSize();
+        if (session.contentHash() != null && blobStore.contains(session.contentHash())) {
+            // Staged by an earlier attempt that failed before the files row was written
+            progress.update(size, size);
+            return new BlobRef(session.contentHash(), size);
+        }
+
+        Path staged = blobStore.stagingFile("upload-" + session.id());
+        long offset = verifyStaged(session, staged);
+        TransferProgress overall = (sent, total) -> progress.update(offset + sent, size);
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+             InputStream in = new TransferStream(Channels.newInputStream(source.position(offset)),
+                 size - offset, overall, token);
+             FileChannel out = FileChannel.open(staged, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.truncate(offset);
+            out.position(offset);
+            byte[] buffer = new byte[64 * 1024];
+            for (long position = offset; position < size; ) {
+                int index = (int) (position / session.chunkSize());
+                int length = (int) Math.min(session.chunkSize(), size - position);
+                MessageDigest digest = BlobTransferService.sha256();
+                for (int left = length; left > 0; ) {
+                    int n = in.read(buffer, 0, Math.min(buffer.length, left));
+                    if (n < 0) {
+                        throw new EOFException("File changed during upload: " + file.getFileName());
+                    }
+                    digest.update(buffer, 0, n);
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, n);
+                    while (data.hasRemaining()) {
+                        out.write(data);
+                    }
+                    left -= n;
+                }
+                out.force(false);
+                position += length;
+                checkpoint(session.id(), index, HexFormat.of().formatHex(digest.digest()), position);
+            }
+        }
+        if (Files.size(file) != size) {
+            throw new IOException("File changed during upload: " + file.getFileName());
+        }
+
+        BlobRef blob = blobStore.adopt(staged);
+        if (blob.size() != size) {
+            throw new IOException("Staged " + blob.size() + " of " + size + " bytes");
+        }
+        try (Connection conn = DBConnection.getWriteConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_SESSION_STAGED)) {
+            stmt.setString(1, blob.hash());
+            stmt.setInt(2, session.id());
+            stmt.executeUpdate();
+        }
+        return blob;
+    }
+
+    /**
+     * Close the session for the new files row, on the caller's connection so it commits
+     * with the row
+     *
+     * @throws SQLException if the session was abandoned meanwhile
+     */
+    public void complete(Connection conn, UploadSession session, int fileId) throws SQLException {
+        try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_SESSION_COMPLETE)) {
+            stmt.setInt(1, fileId);
+            stmt.setInt(2, session.id());
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Upload session " + session.id() + " expired; upload the file again");
+            }
+        }
+    }
+
+    /**
+     * Abandon sessions idle for longer than the TTL, delete their staged data and forget
+     * finished sessions older than the TTL
+     *
+     * @return number of sessions abandoned
+     */
+    public int purgeAbandoned() throws SQLException, IOException {
+        List<Integer> idle = new ArrayList<>();
+        try (Connection conn = DBConnection.getWriteConnection()) {
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_SESSIONS_STALE)) {
+                stmt.setLong(1, ttlSeconds);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    idle.add(rs.getInt("id"));
+                }
+            }
+            int abandoned = 0;
+            for (int id : idle) {
+                try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_SESSION_ABANDON)) {
+                    stmt.setInt(1, id);
+                    stmt.setLong(2, ttlSeconds);
+                    if (stmt.executeUpdate() == 0) {
+                        continue; // resumed meanwhile
+                    }
+                }
+                Files.deleteIfExists(blobStore.stagingFile("upload-" + id));
+                abandoned++;
+            }
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_SESSIONS_DELETE_FINISHED)) {
+                stmt.setLong(1, ttlSeconds);
+                stmt.executeUpdate();
+            }
+            return abandoned;
+        }
+    }
+
+    // Length of the staged prefix that matches the checkpoints; anything after it is sent again
+    private long verifyStaged(UploadSession session, Path staged) throws SQLException, IOException {
+        long verified = 0;
+        if (session.bytesCommitted() > 0 && Files.exists(staged)) {
+            List<String> hashes = new ArrayList<>();
+            try (Connection conn = DBConnection.getWriteConnection();
+                 PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_CHUNKS_LIST)) {
+                stmt.setInt(1, session.id());
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next() && rs.getInt("chunk_index") == hashes.size()) {
+                    hashes.add(rs.getString("chunk_hash"));
+                }
+            }
+            try (InputStream in = Files.newInputStream(staged)) {
+                for (String hash : hashes) {
+                    int length = (int) Math.min(session.chunkSize(), session.fileSize() - verified);
+                    byte[] data = in.readNBytes(length);
+                    if (data.length != length
+                            || !hash.equals(HexFormat.of().formatHex(BlobTransferService.sha256().digest(data)))) {
+                        break;
+                    }
+                    verified += length;
+                }
+            }
+        }
+        if (verified < session.bytesCommitted()) {
+            // Only when the staged copy lost or damaged committed bytes
+            System.err.println("Warning: upload session " + session.id() + " does not match its committed chunks; "
+                + "resending from byte " + verified + " of " + session.bytesCommitted());
+            int firstBad = (int) (verified / session.chunkSize());
+            try (Connection conn = DBConnection.getWriteConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_CHUNKS_TRUNCATE)) {
+                        stmt.setInt(1, session.id());
+                        stmt.setInt(2, firstBad);
+                        stmt.executeUpdate();
+                    }
+                    updateCommitted(conn, session.id(), verified);
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        }
+        return verified;
+    }
+
+    // Record one synced chunk and the new committed length together
+    private static void checkpoint(int sessionId, int index, String chunkHash, long committed) throws SQLException {
+        try (Connection conn = DBConnection.getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_CHUNK_SAVE)) {
+                    stmt.setInt(1, sessionId);
+                    stmt.setInt(2, index);
+                    stmt.setString(3, chunkHash);
+                    stmt.executeUpdate();
+                }
+                updateCommitted(conn, sessionId, committed);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static void updateCommitted(Connection conn, int sessionId, long committed) throws SQLException {
+        try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.UPLOAD_SESSION_CHECKPOINT)) {
+            stmt.setLong(1, committed);
+            stmt.setInt(2, sessionId);
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Upload session " + sessionId + " expired; upload the file again");
+            }
+        }
+    }
+
+    // Identifies "the same local file": path, size and last modification
+    private static String sourceKey(Path file, long size) throws IOException {
+        String source = file.toAbsolutePath().normalize() + "|" + size + "|" + Files.getLastModifiedTime(file).toMillis();
+        return HexFormat.of().formatHex(BlobTransferService.sha256().digest(source.getBytes(StandardCharsets.UTF_8)));
+    }
+}
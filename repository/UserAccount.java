@@ -0,0 +1,7 @@
+package repository;
+
+/**
+ * An authenticated user. Branch and semester are only set for students.
+ */
+public record UserAccount(String email, String role, String branchCode, String branchName, Integer semester) {
+}
@@ -0,0 +1,67 @@
+package repository;
+
+import db.DBConnection;
+import db.QueryRegistry;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Optional;
+
+/**
+ * User accounts: registration and login
+ */
+public class UserRepository {
+
+    /**
+     * Create an account unless the email is already registered.
+     *
+     * @param branchCode student's branch, null for teachers
+     * @param semester student's current semester, null for teachers
+     * @return false if the email is already registered
+     */
+    public boolean register(String email, String password, String role,
+                            String branchCode, Integer semester) throws SQLException {
+        try (Connection conn = DBConnection.getWriteConnection()) {
+            try (PreparedStatement checkStmt = QueryRegistry.prepare(conn, QueryRegistry.USER_EMAIL_EXISTS)) {
+                checkStmt.setString(1, email);
+                ResultSet rs = checkStmt.executeQuery();
+                rs.next();
+                if (rs.getInt(1) > 0) {
+                    return false;
+                }
+            }
+
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.USER_INSERT)) {
+                stmt.setString(1, email);
+                stmt.setString(2, password);
+                stmt.setString(3, role);
+                stmt.setString(4, branchCode);
+                stmt.setObject(5, semester); // setObject handles null for non-student roles
+                stmt.executeUpdate();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return the account if email and password match, otherwise empty
+     */
+    public Optional<UserAccount> authenticate(String email, String password) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.USER_LOGIN)) {
+            stmt.setString(1, email);
+            stmt.setString(2, password);
+            ResultSet rs = stmt.executeQuery();
+            if (!rs.next()) {
+                return Optional.empty();
+            }
+            return Optional.of(new UserAccount(
+                email,
+                rs.getString("role"),
+                rs.getString("branch_code"),
+                rs.getString("branch_name"),
+                rs.getObject("current_semester", Integer.class)));
+        }
+    }
+}
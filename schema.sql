@@ -13,6 +13,9 @@ DROP TABLE IF EXISTS study_sessions;
 DROP TABLE IF EXISTS pomodoro_settings;
 DROP TABLE IF EXISTS file_comments;
 DROP TABLE IF EXISTS file_access;
+DROP TABLE IF EXISTS upload_session_chunks;
+DROP TABLE IF EXISTS upload_sessions;
+DROP TABLE IF EXISTS blobs;
 DROP TABLE IF EXISTS files;
 DROP TABLE IF EXISTS tasks;
 DROP TABLE IF EXISTS subjects;
@@ -145,11 +148,12 @@ CREATE TABLE files (
     id INT PRIMARY KEY AUTO_INCREMENT,
     file_tag_id VARCHAR(20) NOT NULL UNIQUE,
     filename VARCHAR(255) NOT NULL,
-    filedata LONGBLOB NOT NULL,
+    content_hash CHAR(64) NULL,      -- SHA-256 of the contents in the blob store
+    filedata LONGBLOB NULL,          -- legacy inline contents, moved out by tools.BlobMigrator
     subject_id INT NOT NULL,
     uploaded_by VARCHAR(100) NOT NULL,
     upload_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    file_size BIGINT GENERATED ALWAYS AS (LENGTH(filedata)) STORED,
+    file_size BIGINT NULL,
     is_deleted BOOLEAN DEFAULT FALSE,
     delete_time TIMESTAMP NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
@@ -162,6 +166,53 @@ CREATE TABLE files (
         ON UPDATE CASCADE
 ) ENGINE=InnoDB;
 
+-- Stored file contents, shared by every file row with the same content_hash
+-- ref_count counts the live (not deleted) files using the blob
+-- verified_at/scrub_status: last integrity check by the background scrubber
+CREATE TABLE blobs (
+    content_hash CHAR(64) PRIMARY KEY,
+    size BIGINT NOT NULL,
+    ref_count INT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    unreferenced_at TIMESTAMP NULL,
+    verified_at TIMESTAMP NULL,
+    scrub_status ENUM('ok', 'corrupt', 'missing') NULL,
+    scrub_error VARCHAR(255) NULL
+) ENGINE=InnoDB;
+
+-- Resumable uploads: large files are staged in the blob store chunk by chunk and each
+-- chunk is checkpointed here, so an interrupted upload continues after its last chunk
+CREATE TABLE upload_sessions (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    uploaded_by VARCHAR(100) NOT NULL,
+    source_key CHAR(64) NOT NULL,    -- SHA-256 of the local path, size and modification time
+    filename VARCHAR(255) NOT NULL,
+    file_size BIGINT NOT NULL,
+    chunk_size INT NOT NULL,
+    bytes_committed BIGINT NOT NULL DEFAULT 0,
+    content_hash CHAR(64) NULL,      -- set once the staged file is in the blob store
+    status ENUM('open', 'completed', 'abandoned') NOT NULL DEFAULT 'open',
+    file_id INT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (uploaded_by) REFERENCES users(email)
+        ON DELETE CASCADE
+        ON UPDATE CASCADE,
+    FOREIGN KEY (file_id) REFERENCES files(id)
+        ON DELETE SET NULL
+        ON UPDATE CASCADE
+) ENGINE=InnoDB;
+
+CREATE TABLE upload_session_chunks (
+    session_id INT NOT NULL,
+    chunk_index INT NOT NULL,
+    chunk_hash CHAR(64) NOT NULL,
+    PRIMARY KEY (session_id, chunk_index),
+    FOREIGN KEY (session_id) REFERENCES upload_sessions(id)
+        ON DELETE CASCADE
+        ON UPDATE CASCADE
+) ENGINE=InnoDB;
+
 -- File Access Control
 CREATE TABLE file_access (
     file_id INT,
@@ -291,7 +342,13 @@ CREATE INDEX idx_users_role ON users(role);
 CREATE INDEX idx_users_branch_sem ON users(branch_code, current_semester);
 CREATE INDEX idx_subjects_filters ON subjects(branch_code, semester, group_code);
 CREATE INDEX idx_files_uploaded ON files(uploaded_by, upload_time);
-CREATE INDEX idx_files_subject ON files(subject_id);
+CREATE INDEX idx_files_subject_live ON files(subject_id, is_deleted, upload_time, file_size);
+CREATE INDEX idx_files_live_recent ON files(is_deleted, upload_time);
+CREATE INDEX idx_files_content_hash ON files(content_hash);
+CREATE INDEX idx_blobs_unreferenced ON blobs(ref_count, unreferenced_at);
+CREATE INDEX idx_blobs_scrub_status ON blobs(scrub_status);
+CREATE INDEX idx_upload_sessions_source ON upload_sessions(uploaded_by, source_key, status);
+CREATE INDEX idx_upload_sessions_idle ON upload_sessions(status, updated_at);
 CREATE INDEX idx_file_comments_user ON file_comments(user_id, comment_time);
 CREATE INDEX idx_tasks_assigned ON tasks(assigned_to, status);
 CREATE INDEX idx_tasks_filters ON tasks(branch_code, semester, due_date);
@@ -0,0 +1,267 @@
+package storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Adaptive Deflate compression for stored objects
+ *
+ * Scanned PDFs and PDFs with uncompressed streams shrink well; most other PDFs are
+ * already compressed and deflating them again only burns CPU. Before an object (a
+ * whole small blob, or one chunk of a large one) is stored, SAMPLE_WINDOWS slices
+ * from its start, middle and end are deflated. The object is compressed only if the
+ * sample comes out below maxRatio of its size, and kept compressed only if the whole
+ * object does too.
+ *
+ * Configuration:
+ * - studysync.blobstore.compression (default true)
+ * - studysync.blobstore.compressionMaxRatio (default 0.9): compressed / original size
+ *   needed to store an object compressed
+ * - studysync.blobstore.compressionLevel (default 6; 1 = fastest, 9 = smallest)
+ *
+ * CPU time is measured per thread, falling back to elapsed time where the JVM cannot
+ * measure it (virtual threads).
+ */
+public final class BlobCompression implements BlobCompressionMXBean {
+    private static final int SAMPLE_WINDOWS = 3;
+    private static final int SAMPLE_WINDOW_BYTES = 16 * 1024;
+    private static final long MIN_SIZE = 4 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final boolean enabled;
+    private final double maxRatio;
+    private final int level;
+
+    private final LongAdder objectsCompressed = new LongAdder();
+    private final LongAdder objectsStoredRaw = new LongAdder();
+    private final LongAdder bytesBefore = new LongAdder();
+    private final LongAdder bytesAfter = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+
+    public BlobCompression() {
+        this(Boolean.parseBoolean(System.getProperty("studysync.blobstore.compression", "true")),
+            Double.parseDouble(System.getProperty("studysync.blobstore.compressionMaxRatio", "0.9")),
+            Integer.getInteger("studysync.blobstore.compressionLevel", Deflater.DEFAULT_COMPRESSION));
+    }
+
+    public BlobCompression(boolean enabled, double maxRatio, int level) {
+        this.enabled = enabled;
+        this.maxRatio = maxRatio;
+        this.level = level;
+    }
+
+    /**
+     * Deflate length bytes of source, starting at offset, into target if that pays off
+     *
+     * @return true if target now holds the compressed object, false to store it as is
+     *         (target may then hold a partial result for the caller to delete)
+     */
+    boolean compress(FileChannel source, long offset, long length, Path target) throws IOException {
+        if (!enabled || length < MIN_SIZE) {
+            objectsStoredRaw.increment();
+            return false;
+        }
+        long started = cpuNanos();
+        Deflater deflater = new Deflater(level);
+        try {
+            if (!sampleCompresses(source, offset, length, deflater)) {
+                objectsStoredRaw.increment();
+                return false;
+            }
+            deflater.reset();
+            long stored;
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 DeflaterOutputStream out = new DeflaterOutputStream(Channels.newOutputStream(channel),
+                     deflater, BUFFER_SIZE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                for (long position = offset; position < offset + length; ) {
+                    buffer.clear().limit((int) Math.min(BUFFER_SIZE, offset + length - position));
+                    int n = source.read(buffer, position);
+                    if (n < 0) {
+                        throw new EOFException("Object ended while compressing");
+                    }
+                    out.write(buffer.array(), 0, n);
+                    position += n;
+                }
+                out.finish();
+                channel.force(false);
+                stored = channel.size();
+            }
+            if (stored > length * maxRatio) {
+                objectsStoredRaw.increment();
+                return false;
+            }
+            objectsCompressed.increment();
+            bytesBefore.add(length);
+            bytesAfter.add(stored);
+            return true;
+        } finally {
+            deflater.end();
+            compressNanos.add(cpuNanos() - started);
+        }
+    }
+
+    /**
+     * Inflate a stored object back to its original length
+     *
+     * @throws IOException if the data is corrupt or does not inflate to exactly originalLength bytes
+     */
+    byte[] decompress(byte[] data, int originalLength) throws IOException {
+        long started = cpuNanos();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] out = new byte[originalLength];
+            int n = 0;
+            while (n < originalLength && !inflater.finished()) {
+                int inflated = inflater.inflate(out, n, originalLength - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            // Reaching the end marker also proves there is nothing beyond originalLength
+            if (n == originalLength && !inflater.finished() && inflater.inflate(new byte[1]) > 0) {
+                n++;
+            }
+            if (n != originalLength || !inflater.finished()) {
+                throw new IOException("Compressed object does not inflate to " + originalLength + " bytes");
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed object is corrupt", e);
+        } finally {
+            inflater.end();
+            decompressNanos.add(cpuNanos() - started);
+        }
+    }
+
+    // Deflate a few slices spread over the object and compare the sizes
+    private boolean sampleCompresses(FileChannel source, long offset, long length, Deflater deflater)
+            throws IOException {
+        int window = (int) Math.min(SAMPLE_WINDOW_BYTES, length / SAMPLE_WINDOWS);
+        ByteBuffer in = ByteBuffer.allocate(window);
+        byte[] out = new byte[window];
+        long sampled = 0;
+        long produced = 0;
+        for (int i = 0; i < SAMPLE_WINDOWS; i++) {
+            long start = offset + (length - window) * i / (SAMPLE_WINDOWS - 1);
+            in.clear();
+            while (in.hasRemaining()) {
+                if (source.read(in, start + in.position()) < 0) {
+                    throw new EOFException("Object ended while sampling");
+                }
+            }
+            sampled += window;
+            produced += deflatedSize(deflater, in.array(), window, out);
+        }
+        return produced <= sampled * maxRatio;
+    }
+
+    /**
+     * Whether content starting with this sample is worth deflating, by the same
+     * maxRatio test applied to stored objects (used by ZipExport per entry)
+     */
+    public boolean compresses(byte[] sample, int length) {
+        if (length < MIN_SIZE) {
+            return false;
+        }
+        Deflater deflater = new Deflater(level);
+        try {
+            return deflatedSize(deflater, sample, length, new byte[length]) <= length * maxRatio;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Deflated size of data[0..length), or a little over length once it is clear it does not shrink
+    private static int deflatedSize(Deflater deflater, byte[] data, int length, byte[] out) {
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        int produced = 0;
+        while (!deflater.finished() && produced <= length) {
+            produced += deflater.deflate(out);
+        }
+        return produced;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    private static long cpuNanos() {
+        long cpu = THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+        return cpu >= 0 ? cpu : System.nanoTime();
+    }
+
+    // ---------------- Metrics ----------------
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public double getMaxRatio() {
+        return maxRatio;
+    }
+
+    @Override
+    public long getObjectsCompressed() {
+        return objectsCompressed.sum();
+    }
+
+    @Override
+    public long getObjectsStoredRaw() {
+        return objectsStoredRaw.sum();
+    }
+
+    @Override
+    public long getBytesBeforeCompression() {
+        return bytesBefore.sum();
+    }
+
+    @Override
+    public long getBytesAfterCompression() {
+        return bytesAfter.sum();
+    }
+
+    @Override
+    public long getBytesSaved() {
+        return bytesBefore.sum() - bytesAfter.sum();
+    }
+
+    @Override
+    public double getCompressCpuMillis() {
+        return compressNanos.sum() / 1_000_000.0;
+    }
+
+    @Override
+    public double getDecompressCpuMillis() {
+        return decompressNanos.sum() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Compression: %d objects compressed (%.1f MB -> %.1f MB, %.1f MB saved), "
+                + "%d stored as is, CPU %.0f ms compressing / %.0f ms decompressing",
+            getObjectsCompressed(), getBytesBeforeCompression() / 1048576.0, getBytesAfterCompression() / 1048576.0,
+            getBytesSaved() / 1048576.0, getObjectsStoredRaw(), getCompressCpuMillis(), getDecompressCpuMillis());
+    }
+}
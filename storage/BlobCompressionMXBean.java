@@ -0,0 +1,26 @@
+package storage;
+
+/**
+ * Compression counters published over JMX (jconsole / VisualVM: studysync.storage -> BlobCompression)
+ *
+ * @see BlobCompression
+ */
+public interface BlobCompressionMXBean {
+    boolean isEnabled();
+
+    double getMaxRatio();
+
+    long getObjectsCompressed();
+
+    long getObjectsStoredRaw();
+
+    long getBytesBeforeCompression();
+
+    long getBytesAfterCompression();
+
+    long getBytesSaved();
+
+    double getCompressCpuMillis();
+
+    double getDecompressCpuMillis();
+}
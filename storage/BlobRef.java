@@ -0,0 +1,7 @@
+package storage;
+
+/**
+ * Address of stored content: its SHA-256 (lowercase hex) and size in bytes
+ */
+public record BlobRef(String hash, long size) {
+}
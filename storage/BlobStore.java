@@ -0,0 +1,55 @@
+package storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Content-addressed storage for file contents
+ *
+ * Content is stored under its SHA-256, so identical files are stored once and a
+ * stored blob never changes. The files table keeps only the hash and the size.
+ *
+ * Implementations:
+ * - {@link LocalBlobStore}: a directory tree on local or shared disk
+ */
+public interface BlobStore {
+
+    /**
+     * Store the stream's content (read to the end, not closed)
+     *
+     * @return the hash and size; if the content was already stored the existing copy is kept
+     */
+    BlobRef put(InputStream content) throws IOException;
+
+    /**
+     * Store a complete file from the staging area, moving it rather than copying it
+     *
+     * @param staged a file from stagingFile(); it no longer exists afterwards
+     */
+    BlobRef adopt(Path staged) throws IOException;
+
+    /**
+     * Where an upload in progress can be written piece by piece (see UploadSessionRepository).
+     * Staging files live next to the store so adopt() is a rename.
+     *
+     * @param name unique name of the upload, e.g. "upload-42"
+     */
+    Path stagingFile(String name) throws IOException;
+
+    /**
+     * @throws java.nio.file.NoSuchFileException if nothing is stored under the hash
+     */
+    InputStream open(String hash) throws IOException;
+
+    /**
+     * Read length bytes starting at offset (fewer if the blob ends first)
+     *
+     * @throws java.nio.file.NoSuchFileException if nothing is stored under the hash
+     */
+    InputStream openRange(String hash, long offset, long length) throws IOException;
+
+    long size(String hash) throws IOException;
+
+    boolean contains(String hash) throws IOException;
+}
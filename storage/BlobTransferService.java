@@ -0,0 +1,196 @@
+package storage;
+
+import db.CancelToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes blob streams to local files without holding the blob on the heap
+ *
+ * Features:
+ * - Copies through pooled direct buffers (BUFFER_SIZE each, at most POOL_SIZE kept),
+ *   so concurrent downloads reuse the same off-heap memory instead of allocating
+ *   a byte[] the size of the file
+ * - Progress, cancellation and throttling via {@link TransferStream}
+ * - Integrity check: the byte count must match the stored size and, when known, the
+ *   SHA-256 must match the content hash; the digest of the written data is returned
+ * - Writes to "<target>.part" and moves it into place only when complete, so a failed
+ *   or cancelled download never leaves a truncated file behind
+ * - Resume: when the content hash is known, a .part left by a failed download is kept,
+ *   and the next attempt can fetch only the rest (see partialLength())
+ *
+ * Callers run it off the event dispatch thread (see AsyncUi).
+ */
+public final class BlobTransferService {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int POOL_SIZE = 8;
+
+    private static final BlockingQueue<ByteBuffer> BUFFERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * What was written
+     *
+     * @param sha256 hex digest of the written bytes
+     */
+    public record Result(Path file, long size, String sha256) {
+    }
+
+    private BlobTransferService() {
+    }
+
+    /**
+     * Copy a blob stream into the target file, replacing it
+     *
+     * @param expectedSize size stored in the database, or -1 to skip the length check
+     * @throws InterruptedIOException if the token was cancelled
+     * @throws IOException if writing failed or fewer/more bytes arrived than expected
+     */
+    public static Result copy(InputStream blob, long expectedSize, Path target,
+                              TransferProgress progress, CancelToken token) throws IOException {
+        return copy(blob, expectedSize, null, target, progress, token);
+    }
+
+    /**
+     * Same as copy(), also checking the content against its known SHA-256
+     *
+     * @param expectedSha256 lowercase hex digest, or null to skip the check
+     */
+    public static Result copy(InputStream blob, long expectedSize, String expectedSha256, Path target,
+                              TransferProgress progress, CancelToken token) throws IOException {
+        return copy(blob, 0, expectedSize, expectedSha256, target, progress, token);
+    }
+
+    /**
+     * Finish an interrupted copy: the first offset bytes are already in "<target>.part"
+     * and blob supplies the content from offset on. The whole file is still checked
+     * against expectedSha256, so a stale .part is detected and discarded.
+     *
+     * @param offset bytes to keep from the .part, from partialLength()
+     */
+    public static Result copy(InputStream blob, long offset, long expectedSize, String expectedSha256,
+                              Path target, TransferProgress progress, CancelToken token) throws IOException {
+        Path part = partFor(target);
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = acquireBuffer();
+        long written = offset;
+        String sha256;
+        boolean complete = false;
+        boolean resumable = expectedSha256 != null; // a kept .part can be verified later
+        TransferProgress overall = offset == 0 ? progress
+            : (transferred, total) -> progress.update(offset + transferred, expectedSize);
+        try (ReadableByteChannel source = Channels.newChannel(new TransferStream(blob,
+                 expectedSize < 0 ? -1 : expectedSize - offset, overall, token));
+             FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE,
+                 StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            out.truncate(offset);
+            hashExisting(out, offset, digest, buffer);
+            out.position(offset);
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    written += out.write(buffer);
+                }
+                buffer.clear();
+            }
+            if (expectedSize >= 0 && written != expectedSize) {
+                throw new IOException("Incomplete transfer: got " + written + " of " + expectedSize + " bytes");
+            }
+            sha256 = HexFormat.of().formatHex(digest.digest());
+            if (expectedSha256 != null && !expectedSha256.equals(sha256)) {
+                resumable = false;
+                throw new IOException("Checksum mismatch: expected " + expectedSha256 + ", got " + sha256);
+            }
+            out.force(false);
+            complete = true;
+        } finally {
+            releaseBuffer(buffer);
+            // Keep what arrived after a failure so the next attempt can resume
+            if (!complete && (!resumable || token.isCancelled())) {
+                Files.deleteIfExists(part);
+            }
+        }
+        moveIntoPlace(part, target);
+        return new Result(target, written, sha256);
+    }
+
+    /**
+     * Bytes already downloaded for target by an earlier, interrupted copy
+     *
+     * @return the length of "<target>.part", or 0 if there is nothing usable to resume
+     */
+    public static long partialLength(Path target, long expectedSize) throws IOException {
+        Path part = partFor(target);
+        if (!Files.isRegularFile(part)) {
+            return 0;
+        }
+        long length = Files.size(part);
+        return length < expectedSize ? length : 0;
+    }
+
+    private static Path partFor(Path target) {
+        return target.resolveSibling(target.getFileName() + ".part");
+    }
+
+    private static void hashExisting(FileChannel part, long length, MessageDigest digest, ByteBuffer buffer)
+            throws IOException {
+        long position = 0;
+        while (position < length) {
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+            int n = part.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Partial download shrank while resuming");
+            }
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+            position += n;
+        }
+    }
+
+    private static void moveIntoPlace(Path part, Path target) throws IOException {
+        try {
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // ---------------- Buffer pool ----------------
+
+    private static ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = BUFFERS.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private static void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        BUFFERS.offer(buffer); // dropped (and freed by GC) when the pool is full
+    }
+
+    /**
+     * A fresh SHA-256 digest, the hash used for content addressing
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Layout of a blob stored as fixed-size chunks
+ *
+ * Every chunk is itself a blob in the store, addressed by its own SHA-256, so the
+ * manifest also carries the per-chunk checksums. All chunks are chunkSize bytes
+ * except the last. A chunk may be stored compressed; its codec follows the hash.
+ * A small blob that is stored compressed has a manifest with a single chunk.
+ *
+ * File format (text, one value per line):
+ * studysync-chunks 1
+ * size <bytes>
+ * chunk-size <bytes>
+ * <sha-256 of chunk 0>
+ * <sha-256 of chunk 1> deflate
+ * ...
+ */
+public record ChunkManifest(long size, int chunkSize, List<String> chunkHashes, List<Codec> chunkCodecs) {
+    private static final String HEADER = "studysync-chunks 1";
+
+    public ChunkManifest {
+        if (chunkCodecs.size() != chunkHashes.size()) {
+            throw new IllegalArgumentException("One codec per chunk expected");
+        }
+    }
+
+    public int chunkCount() {
+        return chunkHashes.size();
+    }
+
+    public long chunkOffset(int index) {
+        return (long) index * chunkSize;
+    }
+
+    public int chunkLength(int index) {
+        return (int) Math.min(chunkSize, size - chunkOffset(index));
+    }
+
+    static ChunkManifest read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+        if (lines.size() < 3 || !HEADER.equals(lines.get(0))) {
+            throw new CorruptBlobException("Not a chunk manifest: " + file);
+        }
+        long size;
+        int chunkSize;
+        try {
+            size = Long.parseLong(value(lines.get(1), "size"));
+            chunkSize = Integer.parseInt(value(lines.get(2), "chunk-size"));
+        } catch (NumberFormatException e) {
+            throw new CorruptBlobException("Chunk manifest " + file + ": " + e.getMessage());
+        }
+        List<String> hashes = new ArrayList<>();
+        List<Codec> codecs = new ArrayList<>();
+        for (String line : lines.subList(3, lines.size())) {
+            String[] parts = line.split(" ", 2);
+            hashes.add(parts[0]);
+            try {
+                codecs.add(parts.length > 1 ? Codec.fromId(parts[1]) : Codec.NONE);
+            } catch (IllegalArgumentException e) {
+                throw new CorruptBlobException("Chunk manifest " + file + ": " + e.getMessage());
+            }
+        }
+        ChunkManifest manifest = new ChunkManifest(size, chunkSize, List.copyOf(hashes), List.copyOf(codecs));
+        long expectedChunks = size == 0 ? 0 : (size + chunkSize - 1) / chunkSize;
+        if (manifest.chunkCount() != expectedChunks) {
+            throw new CorruptBlobException("Chunk manifest " + file + " lists " + manifest.chunkCount()
+                + " chunks, expected " + expectedChunks);
+        }
+        return manifest;
+    }
+
+    void write(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        lines.add("size " + size);
+        lines.add("chunk-size " + chunkSize);
+        for (int i = 0; i < chunkHashes.size(); i++) {
+            Codec codec = chunkCodecs.get(i);
+            lines.add(codec == Codec.NONE ? chunkHashes.get(i) : chunkHashes.get(i) + " " + codec.id());
+        }
+        Files.write(file, lines, StandardCharsets.US_ASCII);
+    }
+
+    private static String value(String line, String key) throws IOException {
+        if (!line.startsWith(key + " ")) {
+            throw new CorruptBlobException("Chunk manifest: expected '" + key + "', got '" + line + "'");
+        }
+        return line.substring(key.length() + 1);
+    }
+}
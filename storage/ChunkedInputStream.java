@@ -0,0 +1,145 @@
+package storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads a byte range of a chunked blob
+ *
+ * Up to `parallel` chunks are fetched ahead at once on virtual threads, so reading from
+ * slow (network) storage overlaps with the consumer. Every chunk is checked against its
+ * SHA-256 (after inflating compressed chunks) before any of its bytes are returned.
+ * Memory use is bounded by parallel * chunkSize, whatever the size of the blob.
+ */
+final class ChunkedInputStream extends InputStream {
+    private static final ExecutorService FETCHERS =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("studysync-chunk-", 0).factory());
+
+    private final LocalBlobStore store;
+    private final ChunkManifest manifest;
+    private final int parallel;
+    private final boolean access;
+    private final int lastChunk;
+    private final Deque<CompletableFuture<byte[]>> ahead = new ArrayDeque<>();
+
+    private int nextToFetch;
+    private int skipInFirstChunk;
+    private byte[] current = new byte[0];
+    private int position;
+    private long remaining;
+    private boolean closed;
+
+    /**
+     * @param access whether reading counts as using the chunks (see LocalBlobStore.readObject)
+     */
+    ChunkedInputStream(LocalBlobStore store, ChunkManifest manifest, long offset, long length, int parallel,
+                       boolean access) {
+        this.store = store;
+        this.manifest = manifest;
+        this.parallel = Math.max(1, parallel);
+        this.access = access;
+        this.remaining = length;
+        int firstChunk = (int) (offset / manifest.chunkSize());
+        this.lastChunk = length == 0 ? firstChunk - 1 : (int) ((offset + length - 1) / manifest.chunkSize());
+        this.nextToFetch = firstChunk;
+        this.skipInFirstChunk = (int) (offset - manifest.chunkOffset(firstChunk));
+        fillAhead();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining <= 0) {
+            return -1;
+        }
+        if (position >= current.length && !nextChunk()) {
+            return -1;
+        }
+        int n = (int) Math.min(Math.min(len, current.length - position), remaining);
+        System.arraycopy(current, position, buf, off, n);
+        position += n;
+        remaining -= n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (CompletableFuture<byte[]> future : ahead) {
+            future.cancel(true);
+        }
+        ahead.clear();
+        current = new byte[0];
+    }
+
+    private boolean nextChunk() throws IOException {
+        CompletableFuture<byte[]> next = ahead.pollFirst();
+        if (next == null) {
+            return false;
+        }
+        fillAhead();
+        try {
+            current = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading chunk");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+        position = skipInFirstChunk;
+        skipInFirstChunk = 0;
+        return true;
+    }
+
+    private void fillAhead() {
+        while (ahead.size() < parallel && nextToFetch <= lastChunk) {
+            int index = nextToFetch++;
+            ahead.addLast(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readChunk(index);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, FETCHERS));
+        }
+    }
+
+    private byte[] readChunk(int index) throws IOException {
+        String hash = manifest.chunkHashes().get(index);
+        LocalBlobStore.StoredObject stored = store.readObject(hash, manifest.chunkCodecs().get(index), access);
+        byte[] data = stored.data();
+        if (stored.codec() == Codec.DEFLATE) {
+            try {
+                data = store.getCompression().decompress(data, manifest.chunkLength(index));
+            } catch (IOException e) {
+                throw new CorruptBlobException("Chunk " + index + " of blob is corrupt (" + hash + ")", e);
+            }
+        }
+        if (data.length != manifest.chunkLength(index)
+                || !hash.equals(HexFormat.of().formatHex(BlobTransferService.sha256().digest(data)))) {
+            throw new CorruptBlobException("Chunk " + index + " of blob is corrupt (" + hash + ")");
+        }
+        return data;
+    }
+}
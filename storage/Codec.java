@@ -0,0 +1,41 @@
+package storage;
+
+/**
+ * How a stored object is encoded on disk
+ *
+ * Objects are always addressed by the SHA-256 of their decoded content; the codec
+ * only decides the file name suffix and how the bytes are read back.
+ */
+public enum Codec {
+    NONE(""),
+    DEFLATE(".deflate");
+
+    private final String suffix;
+
+    Codec(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * Appended to the object's file name
+     */
+    public String suffix() {
+        return suffix;
+    }
+
+    /**
+     * Name used in chunk manifests
+     */
+    public String id() {
+        return name().toLowerCase();
+    }
+
+    public static Codec fromId(String id) {
+        for (Codec codec : values()) {
+            if (codec.id().equals(id)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown codec: " + id);
+    }
+}
@@ -0,0 +1,22 @@
+package storage;
+
+import java.io.IOException;
+
+/**
+ * Stored content that is there but no longer matches its checksum (SHA-256 of a blob or
+ * chunk, CRC32 of a packed object) or cannot be decoded
+ *
+ * Unlike other I/O errors it is not transient: reading again gives the same bytes.
+ * Missing content is reported as java.nio.file.NoSuchFileException instead.
+ */
+public class CorruptBlobException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public CorruptBlobException(String message) {
+        super(message);
+    }
+
+    public CorruptBlobException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
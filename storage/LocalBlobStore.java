@@ -0,0 +1,879 @@
+package storage;
+
+import db.CancelToken;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.management.ObjectName;
+
+/**
+ * {@link BlobStore} on the file system
+ *
+ * Layout (two levels of fan-out keep directories small):
+ * <root>/objects/9f/86/9f86d081...0a08          a blob stored whole
+ * <root>/objects/9f/86/9f86d081...0a08.chunks   or the manifest of a chunked blob
+ * <root>/objects/9f/86/9f86d081...0a08.deflate  an object stored compressed
+ * <root>/tmp/                                    incoming uploads until their hash is known
+ * <root>/staging/                                resumable uploads in progress
+ * <root>/packs/                                  cold objects (see PackStore)
+ *
+ * Blobs larger than the chunk threshold are split into fixed-size chunks. Each chunk
+ * is stored as a blob of its own (so identical chunks are also stored once) and the
+ * manifest lists the chunk hashes. Chunked blobs can be read from any offset without
+ * touching earlier chunks, and are read with several chunks in flight at once.
+ *
+ * Each object (small blob or chunk) is deflated when a sample shows it compresses
+ * well (see BlobCompression); the codec is recorded in the chunk manifest and reads
+ * inflate it transparently. A small blob stored compressed gets a one-chunk manifest.
+ *
+ * put() writes to tmp/ while hashing, syncs the file and renames it into objects/
+ * (atomically where the file system supports it). For a chunked blob the manifest is
+ * renamed into place last, after all its chunks. Readers therefore never see a
+ * partial blob. If two clients store the same content at once, the second rename
+ * finds the blob present and drops its copy.
+ *
+ * Hot and cold tiers: reading an object refreshes its modification time (at most once
+ * a day). tierCold() moves objects not read or written for a given time into
+ * append-only pack segments and removes the loose files, so objects/ holds only the
+ * hot set. Reads find packed objects transparently; an object read promoteAfterReads
+ * times from a pack is copied back to objects/, and storing packed content again
+ * writes it loose. Manifests always stay in objects/.
+ *
+ * Nothing is deleted by put(). Objects no blob needs any more are removed by sweep()
+ * (see repository.StorageReclaimer). Storing content that is already present refreshes
+ * the modification time of its manifest and of every object the manifest lists (packed
+ * ones are written loose again), which keeps them out of a sweep running at the same
+ * moment.
+ *
+ * Configuration:
+ * - studysync.blobstore.dir (default ~/.studysync/blobs). When several clients share
+ *   one database, point this at storage they all mount.
+ * - studysync.blobstore.chunkThresholdBytes (default 8 MB): larger blobs are chunked
+ * - studysync.blobstore.chunkSizeBytes (default 4 MB)
+ * - studysync.blobstore.parallelChunks (default 4): chunks read ahead per stream
+ * - studysync.blobstore.compression* (see BlobCompression)
+ * - studysync.blobstore.promoteAfterReads (default 2): reads from a pack after which an
+ *   object moves back to the hot tier
+ */
+public final class LocalBlobStore implements BlobStore {
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final String MANIFEST_SUFFIX = ".chunks";
+    private static final long ACCESS_RESOLUTION_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int MAX_TRACKED_PACKED_READS = 100_000;
+
+    private static LocalBlobStore defaultStore;
+
+    private final Path objects;
+    private final Path tmp;
+    private final Path staging;
+    private final long chunkThreshold;
+    private final int chunkSize;
+    private final int parallelChunks;
+    private final BlobCompression compression;
+    private final PackStore packs;
+    private final int promoteAfterReads;
+    private final Map<String, Integer> packedReads = new ConcurrentHashMap<>();
+
+    public LocalBlobStore(Path root) {
+        this(root,
+            Long.getLong("studysync.blobstore.chunkThresholdBytes", 8L * 1024 * 1024),
+            Integer.getInteger("studysync.blobstore.chunkSizeBytes", 4 * 1024 * 1024),
+            Integer.getInteger("studysync.blobstore.parallelChunks", 4),
+            new BlobCompression());
+    }
+
+    public LocalBlobStore(Path root, long chunkThreshold, int chunkSize, int parallelChunks,
+                          BlobCompression compression) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.objects = root.resolve("objects");
+        this.tmp = root.resolve("tmp");
+        this.staging = root.resolve("staging");
+        this.chunkThreshold = chunkThreshold;
+        this.chunkSize = chunkSize;
+        this.parallelChunks = parallelChunks;
+        this.compression = compression;
+        this.packs = new PackStore(root.resolve("packs"));
+        this.promoteAfterReads = Integer.getInteger("studysync.blobstore.promoteAfterReads", 2);
+    }
+
+    /**
+     * The store configured with studysync.blobstore.dir
+     */
+    public static synchronized LocalBlobStore getDefault() {
+        if (defaultStore == null) {
+            String dir = System.getProperty("studysync.blobstore.dir",
+                Paths.get(System.getProperty("user.home"), ".studysync", "blobs").toString());
+            defaultStore = new LocalBlobStore(Paths.get(dir));
+            registerMBean(defaultStore.compression);
+        }
+        return defaultStore;
+    }
+
+    /**
+     * Compression settings and counters since startup
+     */
+    public BlobCompression getCompression() {
+        return compression;
+    }
+
+    // ---------------- Writing ----------------
+
+    @Override
+    public BlobRef put(InputStream content) throws IOException {
+        Files.createDirectories(tmp);
+        Path incoming = Files.createTempFile(tmp, "incoming-", ".tmp");
+        try {
+            MessageDigest digest = BlobTransferService.sha256();
+            long size;
+            try (FileChannel channel = FileChannel.open(incoming, StandardOpenOption.WRITE);
+                 OutputStream out = Channels.newOutputStream(channel)) {
+                size = new DigestInputStream(content, digest).transferTo(out);
+                channel.force(false);
+            }
+            return store(incoming, HexFormat.of().formatHex(digest.digest()), size);
+        } finally {
+            Files.deleteIfExists(incoming);
+        }
+    }
+
+    @Override
+    public BlobRef adopt(Path staged) throws IOException {
+        try {
+            MessageDigest digest = BlobTransferService.sha256();
+            long size;
+            try (InputStream in = new DigestInputStream(Files.newInputStream(staged), digest)) {
+                size = in.transferTo(OutputStream.nullOutputStream());
+            }
+            return store(staged, HexFormat.of().formatHex(digest.digest()), size);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    @Override
+    public Path stagingFile(String name) throws IOException {
+        Files.createDirectories(staging);
+        Path file = staging.resolve(name + ".part");
+        if (!file.getParent().equals(staging)) {
+            throw new IllegalArgumentException("Not a staging file name: " + name);
+        }
+        return file;
+    }
+
+    // Publish a complete, synced file under its hash (the file is moved or left for the caller to delete)
+    // Content that is only packed counts as absent: it is written loose again (promoted)
+    private BlobRef store(Path file, String hash, long size) throws IOException {
+        if (!Files.exists(pathFor(hash)) && !Files.exists(manifestPath(hash))) {
+            Files.createDirectories(tmp);
+            if (size > chunkThreshold) {
+                storeChunked(file, hash, size);
+            } else if (storeObject(file, hash, size) == Codec.DEFLATE) {
+                // The codec has to be recorded somewhere: a manifest with one chunk
+                publishManifest(hash, new ChunkManifest(size, (int) size, List.of(hash), List.of(Codec.DEFLATE)));
+            }
+        } else {
+            touch(manifestPath(hash), pathFor(hash));
+            touchListedObjects(hash);
+        }
+        return new BlobRef(hash, size);
+    }
+
+    // Reusing a chunked or compressed blob: its chunks are used again as well. A sweep that
+    // already counted them unreachable re-checks their mtime before deleting; packed ones
+    // are written loose, since compaction cannot see a use.
+    private void touchListedObjects(String hash) throws IOException {
+        ChunkManifest manifest;
+        try {
+            manifest = ChunkManifest.read(manifestPath(hash));
+        } catch (NoSuchFileException e) {
+            return; // stored whole
+        }
+        for (int i = 0; i < manifest.chunkCount(); i++) {
+            String chunk = manifest.chunkHashes().get(i);
+            Codec codec = storedCodec(chunk);
+            if (codec != null) {
+                touch(objectPath(chunk, codec));
+            } else {
+                writeLoose(chunk, readObject(chunk, manifest.chunkCodecs().get(i), false));
+            }
+        }
+    }
+
+    // Move a raw object into the store, or a deflated copy if that is clearly smaller
+    private Codec storeObject(Path raw, String hash, long size) throws IOException {
+        Path deflated = Files.createTempFile(tmp, "deflate-", ".tmp");
+        try {
+            boolean compressed;
+            try (FileChannel source = FileChannel.open(raw, StandardOpenOption.READ)) {
+                compressed = compression.compress(source, 0, size, deflated);
+            }
+            if (compressed) {
+                moveIntoStore(deflated, objectPath(hash, Codec.DEFLATE));
+                return Codec.DEFLATE;
+            }
+            moveIntoStore(raw, pathFor(hash));
+            return Codec.NONE;
+        } finally {
+            Files.deleteIfExists(deflated);
+        }
+    }
+
+    // Split the incoming file into chunk blobs, then publish the manifest
+    private void storeChunked(Path incoming, String hash, long size) throws IOException {
+        List<String> chunkHashes = new ArrayList<>();
+        List<Codec> chunkCodecs = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(incoming)) {
+            for (long offset = 0; offset < size; offset += chunkSize) {
+                int length = (int) Math.min(chunkSize, size - offset);
+                StoredChunk chunk = storeChunk(in, length);
+                chunkHashes.add(chunk.hash());
+                chunkCodecs.add(chunk.codec());
+            }
+        }
+        publishManifest(hash, new ChunkManifest(size, chunkSize, chunkHashes, chunkCodecs));
+    }
+
+    private void publishManifest(String hash, ChunkManifest chunks) throws IOException {
+        Path manifest = Files.createTempFile(tmp, "manifest-", ".tmp");
+        try {
+            chunks.write(manifest);
+            moveIntoStore(manifest, manifestPath(hash));
+        } finally {
+            Files.deleteIfExists(manifest);
+        }
+    }
+
+    private record StoredChunk(String hash, Codec codec) {
+    }
+
+    private StoredChunk storeChunk(InputStream in, int length) throws IOException {
+        Path chunk = Files.createTempFile(tmp, "chunk-", ".tmp");
+        try {
+            MessageDigest digest = BlobTransferService.sha256();
+            try (FileChannel channel = FileChannel.open(chunk, StandardOpenOption.WRITE);
+                 OutputStream out = Channels.newOutputStream(channel)) {
+                byte[] buffer = new byte[64 * 1024];
+                int left = length;
+                while (left > 0) {
+                    int n = in.read(buffer, 0, Math.min(buffer.length, left));
+                    if (n < 0) {
+                        throw new IOException("Blob ended before its last chunk");
+                    }
+                    digest.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                    left -= n;
+                }
+                channel.force(false);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Codec codec = storedCodec(hash);
+            if (codec != null) {
+                touch(objectPath(hash, codec));
+                return new StoredChunk(hash, codec);
+            }
+            return new StoredChunk(hash, storeObject(chunk, hash, length));
+        } finally {
+            Files.deleteIfExists(chunk);
+        }
+    }
+
+    private static void moveIntoStore(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            try {
+                Files.move(source, target);
+            } catch (FileAlreadyExistsException ignored) {
+                // Stored concurrently by someone else; same content
+            }
+        } catch (FileAlreadyExistsException e) {
+            // Stored concurrently by someone else; same content
+        }
+    }
+
+    // Mark the first of these that exists as just used, so a running sweep leaves it alone
+    private static void touch(Path... candidates) throws IOException {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (Path candidate : candidates) {
+            try {
+                Files.setLastModifiedTime(candidate, now);
+                return;
+            } catch (NoSuchFileException e) {
+                // try the next form
+            }
+        }
+    }
+
+    // ---------------- Sweeping ----------------
+
+    /**
+     * What a sweep removed
+     */
+    public record SweepResult(long objects, long bytes) {
+    }
+
+    /**
+     * Delete every object and manifest that no live blob needs and that has not been
+     * written or reused for graceMillis.
+     *
+     * A manifest is kept if its blob is live or recent, and then keeps all its chunks.
+     * Everything else (whole blobs, chunks, compressed objects) is kept only if its hash
+     * is live or a kept manifest lists it. The grace period covers content stored
+     * moments before its files row is committed, and blobs written by uploads or imports
+     * whose row never was. Files in tmp/ and staging/ are never touched. Content stored
+ * again while the sweep runs is kept: its manifest and objects get a fresh mtime
+ * (checked again before each delete), and manifests changed since the walk began are
+ * read again before deleting and before compacting packs.
+     *
+     * @param live hashes the database still refers to
+     * @param maxBytesPerSecond limit on deleted bytes per second, 0 = unlimited
+     * @throws IOException if a manifest cannot be read (nothing is deleted then)
+     */
+    public SweepResult sweep(Set<String> live, long graceMillis, long maxBytesPerSecond, CancelToken stop)
+            throws IOException {
+        if (!Files.isDirectory(objects)) {
+            return new SweepResult(0, 0);
+        }
+        long walkStarted = System.currentTimeMillis();
+        long cutoff = walkStarted - graceMillis;
+        Set<String> reachable = new HashSet<>(live);
+        List<Path> candidates = new ArrayList<>();
+        List<Path> unusedManifests = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(objects)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String name = file.getFileName().toString();
+                String hash = hashOf(name);
+                if (hash == null) {
+                    continue; // not ours
+                }
+                if (name.endsWith(MANIFEST_SUFFIX)
+                        && (live.contains(hash) || Files.getLastModifiedTime(file).toMillis() >= cutoff)) {
+                    reachable.addAll(ChunkManifest.read(file).chunkHashes());
+                } else {
+                    candidates.add(file);
+                    if (name.endsWith(MANIFEST_SUFFIX)) {
+                        unusedManifests.add(file);
+                    }
+                }
+            }
+        }
+        addReused(unusedManifests, walkStarted, reachable);
+
+        long objectsDeleted = 0;
+        long bytesDeleted = 0;
+        long started = System.nanoTime();
+        for (Path file : candidates) {
+            if (stop.isCancelled()) {
+                break;
+            }
+            if (reachable.contains(hashOf(file.getFileName().toString()))) {
+                continue;
+            }
+            long size;
+            try {
+                // Checked again right before deleting: put() may have just reused it
+                if (Files.getLastModifiedTime(file).toMillis() >= cutoff) {
+                    continue;
+                }
+                size = Files.size(file);
+                if (!Files.deleteIfExists(file)) {
+                    continue;
+                }
+            } catch (NoSuchFileException e) {
+                continue; // swept by another client
+            }
+            objectsDeleted++;
+            bytesDeleted += size;
+            throttle(bytesDeleted, maxBytesPerSecond, started, stop);
+        }
+
+        // Packed objects: segments that are mostly unreachable are rewritten without them
+        if (!stop.isCancelled()) {
+            addReused(unusedManifests, walkStarted, reachable);
+            FileLock lock = packs.tryLock();
+            if (lock != null) {
+                try {
+                    bytesDeleted += packs.compact(reachable, stop);
+                } finally {
+                    lock.channel().close(); // releases the lock
+                }
+            }
+        }
+        return new SweepResult(objectsDeleted, bytesDeleted);
+    }
+
+    // Manifests that were unused during the walk but stored again since keep their chunks
+    private static void addReused(List<Path> manifests, long since, Set<String> reachable) throws IOException {
+        for (Path manifest : manifests) {
+            try {
+                if (Files.getLastModifiedTime(manifest).toMillis() >= since) {
+                    reachable.addAll(ChunkManifest.read(manifest).chunkHashes());
+                }
+            } catch (NoSuchFileException e) {
+                // swept
+            }
+        }
+    }
+
+    // ---------------- Tiering ----------------
+
+    /**
+     * What a tiering run moved to the cold tier
+     *
+     * @param objects objects now only packed
+     * @param bytes their size on disk
+     * @param packs segments written
+     */
+    public record TierResult(long objects, long bytes, int packs) {
+    }
+
+    /**
+     * Move objects (whole blobs and chunks) not read or written for coldAfterMillis into
+     * pack segments of about maxPackBytes each and delete their loose files.
+     *
+     * Only one process tiers or compacts at a time. A loose file is deleted only after
+     * its segment is synced and published, and only if nobody used it in the meantime.
+     *
+     * @param maxBytesPerSecond limit on packed bytes per second, 0 = unlimited
+     * @throws IOException if another process is tiering the store right now
+     */
+    public TierResult tierCold(long coldAfterMillis, long maxPackBytes, long maxBytesPerSecond, CancelToken stop)
+            throws IOException {
+        if (!Files.isDirectory(objects)) {
+            return new TierResult(0, 0, 0);
+        }
+        FileLock lock = packs.tryLock();
+        if (lock == null) {
+            throw new IOException("The blob store is being tiered or compacted by another process");
+        }
+        try {
+            long cutoff = System.currentTimeMillis() - coldAfterMillis;
+            List<Path> cold = new ArrayList<>();
+            try (Stream<Path> files = Files.walk(objects)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    String name = file.getFileName().toString();
+                    if (hashOf(name) != null && !name.endsWith(MANIFEST_SUFFIX)
+                            && Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                        cold.add(file);
+                    }
+                }
+            }
+
+            long objectsMoved = 0;
+            long bytesMoved = 0;
+            int packsWritten = 0;
+            long started = System.nanoTime();
+            List<Path> written = new ArrayList<>();
+            PackStore.Writer writer = null;
+            try {
+                for (Path file : cold) {
+                    if (stop.isCancelled()) {
+                        break;
+                    }
+                    String name = file.getFileName().toString();
+                    String hash = hashOf(name);
+                    if (packs.find(hash) != null) {
+                        // packed before and promoted since: the loose copy went cold again
+                        written.add(file);
+                        continue;
+                    }
+                    byte[] data;
+                    try {
+                        data = Files.readAllBytes(file);
+                    } catch (NoSuchFileException e) {
+                        continue; // swept meanwhile
+                    }
+                    if (writer == null) {
+                        writer = packs.newWriter();
+                    }
+                    writer.append(hash, codecOf(name), data);
+                    written.add(file);
+                    bytesMoved += data.length;
+                    throttle(bytesMoved, maxBytesPerSecond, started, stop);
+                    if (writer.size() >= maxPackBytes) {
+                        writer.finish();
+                        writer = null;
+                        packsWritten++;
+                        objectsMoved += deleteIfCold(written, cutoff);
+                    }
+                }
+                if (writer != null) {
+                    writer.finish();
+                    writer = null;
+                    packsWritten++;
+                }
+                objectsMoved += deleteIfCold(written, cutoff);
+            } finally {
+                if (writer != null) {
+                    writer.close(); // unfinished: nothing published, loose files untouched
+                }
+            }
+            return new TierResult(objectsMoved, bytesMoved, packsWritten);
+        } finally {
+            lock.channel().close(); // releases the lock
+        }
+    }
+
+    // Delete loose copies that are packed now, unless they were used after the cutoff
+    private static long deleteIfCold(List<Path> files, long cutoff) throws IOException {
+        long deleted = 0;
+        for (Path file : files) {
+            try {
+                if (Files.getLastModifiedTime(file).toMillis() < cutoff && Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            } catch (NoSuchFileException e) {
+                // swept meanwhile
+            }
+        }
+        files.clear();
+        return deleted;
+    }
+
+    private static Codec codecOf(String name) {
+        String suffix = name.substring(hashOf(name).length());
+        for (Codec codec : Codec.values()) {
+            if (codec.suffix().equals(suffix)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown object suffix: " + name);
+    }
+
+    // The hash an object or manifest file is named after, or null for anything else
+    private static String hashOf(String name) {
+        int dot = name.indexOf('.');
+        String hash = dot < 0 ? name : name.substring(0, dot);
+        return HASH.matcher(hash).matches() ? hash : null;
+    }
+
+    private static void throttle(long bytes, long maxBytesPerSecond, long startedNanos, CancelToken stop) {
+        if (maxBytesPerSecond <= 0) {
+            return;
+        }
+        long aheadMillis = bytes * 1000 / maxBytesPerSecond - (System.nanoTime() - startedNanos) / 1_000_000;
+        if (aheadMillis > 0) {
+            try {
+                Thread.sleep(aheadMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop.cancel();
+            }
+        }
+    }
+
+    // ---------------- Reading ----------------
+
+    @Override
+    public InputStream open(String hash) throws IOException {
+        return openRange(hash, 0, size(hash));
+    }
+
+    @Override
+    public InputStream openRange(String hash, long offset, long length) throws IOException {
+        return openRange(hash, offset, length, parallelChunks, true);
+    }
+
+    /**
+     * Read a whole blob for verification (see repository.StorageScrubber): one object at a
+     * time in order, without counting as a use, so it neither keeps the blob in the hot
+     * tier nor promotes it from a pack. Chunks and packed objects are checked as usual;
+     * a whole loose blob is not (the caller hashes the stream).
+     *
+     * @throws NoSuchFileException if nothing is stored under the hash
+     * @throws CorruptBlobException (while reading) if stored bytes fail their checksum
+     */
+    public InputStream openForVerify(String hash) throws IOException {
+        return openRange(hash, 0, Long.MAX_VALUE, 1, false);
+    }
+
+    private InputStream openRange(String hash, long offset, long length, int parallel, boolean access)
+            throws IOException {
+        Path whole = pathFor(hash);
+        if (Files.exists(whole)) {
+            try {
+                FileChannel channel = FileChannel.open(whole, StandardOpenOption.READ);
+                try {
+                    long available = Math.max(0, channel.size() - offset);
+                    channel.position(offset);
+                    if (access) {
+                        touchIfStale(whole);
+                    }
+                    return new BoundedInputStream(Channels.newInputStream(channel), Math.min(length, available));
+                } catch (IOException | RuntimeException e) {
+                    channel.close();
+                    throw e;
+                }
+            } catch (NoSuchFileException e) {
+                // moved to a pack just now
+            }
+        }
+        if (Files.exists(manifestPath(hash))) {
+            ChunkManifest manifest = readManifest(hash);
+            long available = Math.max(0, manifest.size() - offset);
+            return new ChunkedInputStream(this, manifest, Math.min(offset, manifest.size()),
+                Math.min(length, available), parallel, access);
+        }
+        // A small blob in the cold tier: read whole (at most chunkThreshold bytes) and verified
+        StoredObject packed = readObject(hash, Codec.NONE, access);
+        byte[] data = packed.data();
+        if (packed.codec() != Codec.NONE || !hash.equals(HexFormat.of().formatHex(BlobTransferService.sha256().digest(data)))) {
+            throw new CorruptBlobException("Packed blob " + hash + " is corrupt");
+        }
+        int start = (int) Math.min(offset, data.length);
+        return new ByteArrayInputStream(data, start, (int) Math.min(length, data.length - start));
+    }
+
+    @Override
+    public long size(String hash) throws IOException {
+        Path whole = pathFor(hash);
+        if (Files.exists(whole)) {
+            return Files.size(whole);
+        }
+        if (Files.exists(manifestPath(hash))) {
+            return readManifest(hash).size();
+        }
+        PackStore.Location packed = packs.find(hash);
+        if (packed == null || packed.entry().codec() != Codec.NONE) {
+            throw new NoSuchFileException(whole.toString());
+        }
+        return packed.entry().length();
+    }
+
+    @Override
+    public boolean contains(String hash) throws IOException {
+        return Files.exists(pathFor(hash)) || Files.exists(manifestPath(hash)) || packs.find(hash) != null;
+    }
+
+    /**
+     * An object's stored bytes and how they are encoded
+     */
+    record StoredObject(byte[] data, Codec codec) {
+    }
+
+    /**
+     * Read one object (small blob or chunk) from whichever tier has it
+     *
+     * @param codec how the object was stored when its manifest was written (tried first)
+     * @param access whether this read counts as a use (refreshes the mtime, may promote)
+     * @throws NoSuchFileException if neither tier has it
+     */
+    StoredObject readObject(String hash, Codec codec, boolean access) throws IOException {
+        List<Codec> codecs = new ArrayList<>(List.of(codec));
+        for (Codec other : Codec.values()) {
+            if (other != codec) {
+                codecs.add(other);
+            }
+        }
+        for (Codec candidate : codecs) {
+            Path path = objectPath(hash, candidate);
+            try {
+                byte[] data = Files.readAllBytes(path);
+                if (access) {
+                    touchIfStale(path);
+                }
+                return new StoredObject(data, candidate);
+            } catch (NoSuchFileException e) {
+                // other codec, or packed
+            }
+        }
+        PackStore.Location packed = packs.find(hash);
+        if (packed == null) {
+            throw new NoSuchFileException(objectPath(hash, codec).toString());
+        }
+        StoredObject object = new StoredObject(packs.read(hash), packed.entry().codec());
+        if (access) {
+            promoteIfHot(hash, object);
+        }
+        return object;
+    }
+
+    // Copy an object read often enough from a pack back to objects/
+    private void promoteIfHot(String hash, StoredObject object) {
+        int reads = packedReads.merge(hash, 1, Integer::sum);
+        if (reads < promoteAfterReads) {
+            if (packedReads.size() > MAX_TRACKED_PACKED_READS) {
+                packedReads.clear();
+            }
+            return;
+        }
+        packedReads.remove(hash);
+        try {
+            writeLoose(hash, object);
+        } catch (IOException e) {
+            // Still readable from the pack
+            System.err.println("Could not promote " + hash + " to the hot tier: " + e.getMessage());
+        }
+    }
+
+    // Put a copy of a packed object back into objects/
+    private void writeLoose(String hash, StoredObject object) throws IOException {
+        Files.createDirectories(tmp);
+        Path promoted = Files.createTempFile(tmp, "promote-", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(promoted, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(object.data());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            moveIntoStore(promoted, objectPath(hash, object.codec()));
+        } finally {
+            Files.deleteIfExists(promoted);
+        }
+    }
+
+    // Record a read in the file's modification time, at most once per ACCESS_RESOLUTION_MILLIS
+    private static void touchIfStale(Path file) {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - Files.getLastModifiedTime(file).toMillis() > ACCESS_RESOLUTION_MILLIS) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            }
+        } catch (IOException e) {
+            // read-only or shared storage: tiering then goes by write time
+        }
+    }
+
+    /**
+     * The chunk layout of a chunked blob
+     *
+     * @throws NoSuchFileException if the blob is not stored in chunks
+     */
+    public ChunkManifest readManifest(String hash) throws IOException {
+        Path manifest = manifestPath(hash);
+        if (!Files.exists(manifest)) {
+            throw new NoSuchFileException(pathFor(hash).toString());
+        }
+        return ChunkManifest.read(manifest);
+    }
+
+    /**
+     * Total size of the stored objects, manifests and packs, i.e. what the store takes on disk
+     */
+    public long diskUsage() throws IOException {
+        long total = packs.diskUsage();
+        if (!Files.isDirectory(objects)) {
+            return total;
+        }
+        try (Stream<Path> files = Files.walk(objects)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                total += Files.size(file);
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Where the blob with this hash is (or would be) stored whole
+     */
+    public Path pathFor(String hash) {
+        if (hash == null || !HASH.matcher(hash).matches()) {
+            throw new IllegalArgumentException("Not a SHA-256 hash: " + hash);
+        }
+        return objects.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private Path manifestPath(String hash) {
+        Path whole = pathFor(hash);
+        return whole.resolveSibling(whole.getFileName() + MANIFEST_SUFFIX);
+    }
+
+    // Where an object (blob or chunk) is stored with this codec
+    Path objectPath(String hash, Codec codec) {
+        Path whole = pathFor(hash);
+        return codec == Codec.NONE ? whole : whole.resolveSibling(whole.getFileName() + codec.suffix());
+    }
+
+    // How an object is stored, or null if it is not
+    private Codec storedCodec(String hash) {
+        for (Codec codec : Codec.values()) {
+            if (Files.exists(objectPath(hash, codec))) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    private static void registerMBean(BlobCompression compression) {
+        try {
+            ObjectName objectName = new ObjectName("studysync.storage:type=BlobCompression");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(compression, objectName);
+            }
+        } catch (Exception e) {
+            System.err.println("Warning: Could not register compression metrics over JMX: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LocalBlobStore[" + objects.getParent() + "]";
+    }
+
+    // Stops after `remaining` bytes
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(buf, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
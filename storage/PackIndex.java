@@ -0,0 +1,127 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Offset index of one pack segment
+ *
+ * Format: the magic "SSPK1", the entry count (int), then one fixed-size record per
+ * object sorted by hash: SHA-256 (32 bytes), offset (long), stored length (int),
+ * codec id (byte), CRC32 of the stored bytes (int). Loaded whole and searched in
+ * place, so memory use is ENTRY_SIZE bytes per packed object.
+ */
+final class PackIndex {
+    private static final byte[] MAGIC = {'S', 'S', 'P', 'K', '1'};
+    private static final int HASH_BYTES = 32;
+    private static final int ENTRY_SIZE = HASH_BYTES + 8 + 4 + 1 + 4;
+
+    /**
+     * Where one object is in the pack
+     */
+    record Entry(String hash, long offset, int length, Codec codec, int crc32) {
+    }
+
+    private final byte[] entries;
+    private final int count;
+
+    private PackIndex(byte[] entries, int count) {
+        this.entries = entries;
+        this.count = count;
+    }
+
+    static PackIndex read(Path file) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        byte[] magic = new byte[MAGIC.length];
+        if (data.remaining() < MAGIC.length + 4) {
+            throw new IOException("Not a pack index: " + file);
+        }
+        data.get(magic);
+        int count = data.getInt();
+        if (!Arrays.equals(magic, MAGIC) || count < 0 || data.remaining() != (long) count * ENTRY_SIZE) {
+            throw new IOException("Not a pack index: " + file);
+        }
+        byte[] entries = new byte[data.remaining()];
+        data.get(entries);
+        return new PackIndex(entries, count);
+    }
+
+    /**
+     * Write the index for these entries (in any order), replacing file atomically
+     */
+    static void write(Path file, List<Entry> list) throws IOException {
+        List<Entry> sorted = new ArrayList<>(list);
+        sorted.sort(Comparator.comparing(Entry::hash));
+        ByteBuffer data = ByteBuffer.allocate(MAGIC.length + 4 + sorted.size() * ENTRY_SIZE);
+        data.put(MAGIC).putInt(sorted.size());
+        for (Entry entry : sorted) {
+            data.put(HexFormat.of().parseHex(entry.hash()))
+                .putLong(entry.offset())
+                .putInt(entry.length())
+                .put((byte) entry.codec().ordinal())
+                .putInt(entry.crc32());
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, data.array());
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return the object's entry, or null if it is not in this pack
+     */
+    Entry find(String hash) {
+        byte[] key = HexFormat.of().parseHex(hash);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(entries, mid * ENTRY_SIZE, mid * ENTRY_SIZE + HASH_BYTES,
+                key, 0, HASH_BYTES);
+            if (cmp == 0) {
+                return entry(mid);
+            } else if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return null;
+    }
+
+    List<Entry> entries() {
+        List<Entry> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(entry(i));
+        }
+        return list;
+    }
+
+    int size() {
+        return count;
+    }
+
+    private Entry entry(int i) {
+        ByteBuffer record = ByteBuffer.wrap(entries, i * ENTRY_SIZE, ENTRY_SIZE);
+        byte[] hash = new byte[HASH_BYTES];
+        record.get(hash);
+        return new Entry(HexFormat.of().formatHex(hash), record.getLong(), record.getInt(),
+            Codec.values()[record.get()], record.getInt());
+    }
+}
@@ -0,0 +1,310 @@
+package storage;
+
+import db.CancelToken;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * The cold tier of a LocalBlobStore: append-only pack segments
+ *
+ * Layout:
+ * <root>/packs/pack-<id>.pack   objects stored back to back, exactly as they were on disk
+ * <root>/packs/pack-<id>.idx    the segment's offset index (see PackIndex)
+ * <root>/packs/.lock            held while a segment is written or rewritten
+ *
+ * A segment is written once, synced, and only then published by writing its index;
+ * readers only look at segments that have one. Each object's CRC32 is checked on every
+ * read (and its SHA-256 by the caller). Segments are never modified: one whose objects
+ * are mostly unused is rewritten into a new segment and deleted (compact()).
+ *
+ * Segments written by other clients sharing the store are picked up when the
+ * directory changes.
+ */
+final class PackStore {
+    private static final String PACK_SUFFIX = ".pack";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final Path dir;
+    private Map<Path, PackIndex> indexes = Map.of(); // pack file -> index
+    private long scannedModified = Long.MIN_VALUE;
+
+    /**
+     * A packed object
+     */
+    record Location(Path pack, PackIndex.Entry entry) {
+    }
+
+    PackStore(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return where the object is packed, or null if it is not
+     */
+    Location find(String hash) throws IOException {
+        Location found = lookup(hash);
+        if (found == null && rescan()) {
+            found = lookup(hash);
+        }
+        return found;
+    }
+
+    /**
+     * The object's stored bytes, checked against their CRC32
+     *
+     * @throws NoSuchFileException if the object is not packed (any more)
+     */
+    byte[] read(String hash) throws IOException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Location location = find(hash);
+            if (location == null) {
+                break;
+            }
+            try {
+                return read(location);
+            } catch (NoSuchFileException e) {
+                // Segment rewritten meanwhile; its objects are in a newer one
+                rescan();
+            }
+        }
+        throw new NoSuchFileException(dir.resolve(hash).toString());
+    }
+
+    private static byte[] read(Location location) throws IOException {
+        PackIndex.Entry entry = location.entry();
+        byte[] data = new byte[entry.length()];
+        try (FileChannel channel = FileChannel.open(location.pack(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.offset() + buffer.position()) < 0) {
+                    throw new CorruptBlobException("Pack " + location.pack().getFileName() + " is truncated");
+                }
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != entry.crc32()) {
+            throw new CorruptBlobException("Packed object " + entry.hash() + " is corrupt (CRC mismatch in "
+                + location.pack().getFileName() + ")");
+        }
+        return data;
+    }
+
+    /**
+     * Total size of all pack segments and indexes
+     */
+    long diskUsage() throws IOException {
+        long total = 0;
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "pack-*")) {
+                for (Path file : files) {
+                    total += Files.size(file);
+                }
+            }
+        }
+        return total;
+    }
+
+    // ---------------- Writing ----------------
+
+    /**
+     * Exclusive right to write segments, across processes sharing the store
+     *
+     * @return the lock, or null if someone else holds it
+     */
+    FileLock tryLock() throws IOException {
+        Files.createDirectories(dir);
+        FileChannel channel = FileChannel.open(dir.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+            }
+            return lock;
+        } catch (OverlappingFileLockException e) {
+            channel.close();
+            return null;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Writer newWriter() throws IOException {
+        Files.createDirectories(dir);
+        String id = Long.toString(System.currentTimeMillis(), 36) + "-"
+            + Integer.toString(ThreadLocalRandom.current().nextInt(1 << 30), 36);
+        return new Writer(dir.resolve("pack-" + id + PACK_SUFFIX));
+    }
+
+    /**
+     * Writes one new segment; nothing is visible to readers until finish()
+     */
+    final class Writer implements Closeable {
+        private final Path pack;
+        private final FileChannel channel;
+        private final List<PackIndex.Entry> entries = new ArrayList<>();
+        private long size;
+        private boolean finished;
+
+        private Writer(Path pack) throws IOException {
+            this.pack = pack;
+            this.channel = FileChannel.open(pack, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        void append(String hash, Codec codec, byte[] data) throws IOException {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            entries.add(new PackIndex.Entry(hash, size, data.length, codec, (int) crc.getValue()));
+            size += data.length;
+        }
+
+        long size() {
+            return size;
+        }
+
+        List<PackIndex.Entry> entries() {
+            return entries;
+        }
+
+        /**
+         * Sync the segment and publish its index
+         */
+        void finish() throws IOException {
+            channel.force(true);
+            channel.close();
+            PackIndex.write(indexFor(pack), entries);
+            finished = true;
+            rescan();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                channel.close();
+                Files.deleteIfExists(pack);
+            }
+        }
+    }
+
+    /**
+     * Rewrite segments of which at least half the bytes belong to objects not in keep,
+     * dropping those objects. Call with the lock from tryLock() held.
+     *
+     * @return bytes freed on disk
+     */
+    long compact(Set<String> keep, CancelToken stop) throws IOException {
+        rescan();
+        long freed = 0;
+        for (Map.Entry<Path, PackIndex> segment : snapshot().entrySet()) {
+            if (stop.isCancelled()) {
+                break;
+            }
+            List<PackIndex.Entry> live = new ArrayList<>();
+            long liveBytes = 0;
+            long deadBytes = 0;
+            for (PackIndex.Entry entry : segment.getValue().entries()) {
+                if (keep.contains(entry.hash())) {
+                    live.add(entry);
+                    liveBytes += entry.length();
+                } else {
+                    deadBytes += entry.length();
+                }
+            }
+            if (deadBytes == 0 || deadBytes < liveBytes) {
+                continue;
+            }
+            Path pack = segment.getKey();
+            long before = Files.size(pack) + Files.size(indexFor(pack));
+            long after = 0;
+            if (!live.isEmpty()) {
+                try (Writer writer = newWriter()) {
+                    for (PackIndex.Entry entry : live) {
+                        writer.append(entry.hash(), entry.codec(), read(new Location(pack, entry)));
+                    }
+                    writer.finish();
+                    after = writer.size();
+                }
+            }
+            // Index first: from then on readers no longer find the old segment
+            Files.deleteIfExists(indexFor(pack));
+            Files.deleteIfExists(pack);
+            freed += before - after;
+        }
+        rescan();
+        return freed;
+    }
+
+    // ---------------- Index cache ----------------
+
+    private synchronized Map<Path, PackIndex> snapshot() {
+        return indexes;
+    }
+
+    private Location lookup(String hash) {
+        for (Map.Entry<Path, PackIndex> segment : snapshot().entrySet()) {
+            PackIndex.Entry entry = segment.getValue().find(hash);
+            if (entry != null) {
+                return new Location(segment.getKey(), entry);
+            }
+        }
+        return null;
+    }
+
+    // Reload the index list if the directory changed; @return true if it did
+    private synchronized boolean rescan() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return false;
+        }
+        long modified = Files.getLastModifiedTime(dir).toMillis();
+        if (modified == scannedModified) {
+            return false;
+        }
+        Map<Path, PackIndex> found = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "pack-*" + INDEX_SUFFIX)) {
+            for (Path index : files) {
+                Path pack = packFor(index);
+                PackIndex known = indexes.get(pack);
+                try {
+                    found.put(pack, known != null ? known : PackIndex.read(index));
+                } catch (NoSuchFileException e) {
+                    // deleted while listing
+                }
+            }
+        }
+        indexes = Map.copyOf(found);
+        // A change within the same timestamp tick would go unnoticed: look again next time
+        scannedModified = System.currentTimeMillis() - modified < 2000 ? Long.MIN_VALUE : modified;
+        return true;
+    }
+
+    private static Path indexFor(Path pack) {
+        String name = pack.getFileName().toString();
+        return pack.resolveSibling(name.substring(0, name.length() - PACK_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private static Path packFor(Path index) {
+        String name = index.getFileName().toString();
+        return index.resolveSibling(name.substring(0, name.length() - INDEX_SUFFIX.length()) + PACK_SUFFIX);
+    }
+}
@@ -0,0 +1,19 @@
+package storage;
+
+/**
+ * Receives progress of a file transfer
+ *
+ * Called on the transfer thread, at most every few hundred kilobytes; hand the values
+ * to the UI with SwingUtilities.invokeLater().
+ */
+@FunctionalInterface
+public interface TransferProgress {
+
+    TransferProgress NONE = (transferred, total) -> { };
+
+    /**
+     * @param transferred bytes moved so far
+     * @param total expected size in bytes, or -1 if unknown
+     */
+    void update(long transferred, long total);
+}
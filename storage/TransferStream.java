@@ -0,0 +1,130 @@
+package storage;
+
+import db.CancelToken;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Input stream wrapper used for file transfers
+ *
+ * Features:
+ * - Progress reporting (every PROGRESS_STEP bytes and at the end)
+ * - Cancellation: reads fail with InterruptedIOException once the token is cancelled,
+ *   which aborts the JDBC statement that is consuming the stream
+ * - Throughput limit in bytes per second (studysync.transfer.maxBytesPerSec, default 0 = unlimited)
+ *
+ * Reads are capped at CHUNK_SIZE bytes so throttling and cancellation react quickly
+ * and memory use does not depend on the file size.
+ */
+public final class TransferStream extends FilterInputStream {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long PROGRESS_STEP = 256 * 1024;
+
+    private final long total;
+    private final TransferProgress progress;
+    private final CancelToken token;
+    private final long maxBytesPerSecond;
+    private final long startNanos = System.nanoTime();
+
+    private long transferred;
+    private long lastReported;
+    private boolean finished;
+
+    public TransferStream(InputStream in, long total, TransferProgress progress, CancelToken token) {
+        this(in, total, progress, token, Long.getLong("studysync.transfer.maxBytesPerSec", 0));
+    }
+
+    public TransferStream(InputStream in, long total, TransferProgress progress, CancelToken token,
+                          long maxBytesPerSecond) {
+        super(in);
+        this.total = total;
+        this.progress = progress == null ? TransferProgress.NONE : progress;
+        this.token = token == null ? CancelToken.NONE : token;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkCancelled();
+        int b = super.read();
+        if (b < 0) {
+            finish();
+        } else {
+            advance(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        checkCancelled();
+        int n = super.read(buf, off, Math.min(len, CHUNK_SIZE));
+        if (n < 0) {
+            finish();
+        } else {
+            advance(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkCancelled();
+        long skipped = super.skip(n);
+        advance(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    public long getTransferred() {
+        return transferred;
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (token.isCancelled()) {
+            throw new InterruptedIOException("Transfer cancelled");
+        }
+    }
+
+    private void advance(long n) throws InterruptedIOException {
+        transferred += n;
+        if (transferred - lastReported >= PROGRESS_STEP || transferred == total) {
+            lastReported = transferred;
+            progress.update(transferred, total);
+        }
+        throttle();
+    }
+
+    private void finish() {
+        if (!finished) {
+            finished = true;
+            if (lastReported != transferred) {
+                lastReported = transferred;
+                progress.update(transferred, total);
+            }
+        }
+    }
+
+    // Sleep until the average rate since the start is back under the limit
+    private void throttle() throws InterruptedIOException {
+        if (maxBytesPerSecond <= 0) {
+            return;
+        }
+        long dueNanos = transferred * 1_000_000_000L / maxBytesPerSecond;
+        long aheadNanos = dueNanos - (System.nanoTime() - startNanos);
+        if (aheadNanos > 1_000_000) {
+            try {
+                Thread.sleep(aheadNanos / 1_000_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Transfer interrupted");
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size-capped local copies of viewed files
+ *
+ * Opening a file in a viewer needs it on local disk. Instead of a new temp file per
+ * click (registered with deleteOnExit, so the JVM's list and the temp directory only
+ * grow), every viewed file is kept here, keyed by file id and content hash. Viewing it
+ * again is a local open without any database access.
+ *
+ * Layout:
+ * <dir>/index              file id, content hash, size, last access and name per entry
+ * <dir>/<fileId>/<name>    the file, under its own name so viewers show a sensible title
+ *
+ * Features:
+ * - Least recently viewed files are evicted once the total exceeds maxBytes
+ *   (the file just added is never evicted, even if it alone is larger)
+ * - The index is replaced atomically after every change; on startup it is reconciled
+ *   with the directory, so files downloaded just before a crash are hashed and kept,
+ *   and leftovers (.part files, entries whose file is gone) are cleaned up
+ *
+ * Configuration:
+ * - studysync.viewcache.dir (default ~/.studysync/view-cache)
+ * - studysync.viewcache.maxBytes (default 512 MB)
+ */
+public final class ViewCache {
+    private static final String INDEX_HEADER = "studysync-view-cache 1";
+
+    private static ViewCache defaultCache;
+
+    private final Path dir;
+    private final Path index;
+    private final long maxBytes;
+    private final Map<Integer, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    // Least recently used first
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private record Entry(int fileId, String hash, long size, long lastAccess, String name) {
+    }
+
+    public ViewCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.index = dir.resolve("index");
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        load();
+    }
+
+    /**
+     * The cache configured with studysync.viewcache.*
+     */
+    public static synchronized ViewCache getDefault() throws IOException {
+        if (defaultCache == null) {
+            String dir = System.getProperty("studysync.viewcache.dir",
+                Paths.get(System.getProperty("user.home"), ".studysync", "view-cache").toString());
+            defaultCache = new ViewCache(Paths.get(dir), Long.getLong("studysync.viewcache.maxBytes", 512L * 1024 * 1024));
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Held while a file is looked up and fetched, so two clicks do not download it twice
+     */
+    public ReentrantLock lockFor(int fileId) {
+        return locks.computeIfAbsent(fileId, id -> new ReentrantLock());
+    }
+
+    /**
+     * The cached copy of this file's content, marking it as recently used
+     *
+     * @param contentHash the hash the file has now; null (unknown) never matches
+     */
+    public synchronized Optional<Path> lookup(int fileId, String contentHash) throws IOException {
+        Entry entry = entries.get(fileId);
+        if (entry == null || contentHash == null || !contentHash.equals(entry.hash())) {
+            return Optional.empty();
+        }
+        Path file = pathOf(entry);
+        if (!Files.isRegularFile(file) || Files.size(file) != entry.size()) {
+            remove(entry);
+            saveIndex();
+            return Optional.empty();
+        }
+        entries.put(fileId, new Entry(fileId, entry.hash(), entry.size(), System.currentTimeMillis(), entry.name()));
+        saveIndex();
+        return Optional.of(file);
+    }
+
+    /**
+     * Where to download the file before commit(); drops any older copy of it
+     */
+    public synchronized Path reserve(int fileId, String filename) throws IOException {
+        Entry old = entries.get(fileId);
+        if (old != null) {
+            remove(old);
+            saveIndex();
+        }
+        Path fileDir = dir.resolve(Integer.toString(fileId));
+        Files.createDirectories(fileDir);
+        return fileDir.resolve(safeName(filename));
+    }
+
+    /**
+     * Record a file downloaded to the reserved path and evict older entries to make room
+     */
+    public synchronized Path commit(int fileId, String contentHash, Path file) throws IOException {
+        Entry entry = new Entry(fileId, contentHash, Files.size(file), System.currentTimeMillis(),
+            file.getFileName().toString());
+        entries.put(fileId, entry);
+        totalBytes += entry.size();
+        evict();
+        saveIndex();
+        return file;
+    }
+
+    /**
+     * Forget a reserved path whose download did not happen
+     */
+    public synchronized void discard(Path reserved) throws IOException {
+        Files.deleteIfExists(reserved);
+        deleteDirIfEmpty(reserved.getParent());
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    // ---------------- Eviction ----------------
+
+    private void evict() {
+        Iterator<Entry> lru = entries.values().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1 && lru.hasNext()) {
+            Entry entry = lru.next();
+            lru.remove();
+            totalBytes -= entry.size();
+            deleteQuietly(entry);
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.fileId());
+        totalBytes -= entry.size();
+        deleteQuietly(entry);
+    }
+
+    private void deleteQuietly(Entry entry) {
+        Path file = pathOf(entry);
+        try {
+            Files.deleteIfExists(file);
+            deleteDirIfEmpty(file.getParent());
+        } catch (IOException e) {
+            // Still open in a viewer on some platforms; reconciled on the next start
+            System.err.println("View cache: could not delete " + file + ": " + e.getMessage());
+        }
+    }
+
+    // ---------------- Index ----------------
+
+    private void load() throws IOException {
+        Map<Integer, Entry> indexed = readIndex();
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(dir, "index-*.tmp")) {
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+        List<Entry> found = new ArrayList<>();
+        try (DirectoryStream<Path> fileDirs = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path fileDir : fileDirs) {
+                int fileId;
+                try {
+                    fileId = Integer.parseInt(fileDir.getFileName().toString());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                found.addAll(reconcile(fileId, fileDir, indexed.get(fileId)));
+                deleteDirIfEmpty(fileDir);
+            }
+        }
+        found.sort(Comparator.comparingLong(Entry::lastAccess));
+        for (Entry entry : found) {
+            entries.put(entry.fileId(), entry);
+            totalBytes += entry.size();
+        }
+        evict();
+        saveIndex();
+    }
+
+    // What is really in one file's directory, trusting the index only where it matches
+    private List<Entry> reconcile(int fileId, Path fileDir, Entry indexed) throws IOException {
+        List<Entry> kept = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(fileDir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long size = Files.size(file);
+                if (indexed != null && indexed.name().equals(name) && indexed.size() == size && kept.isEmpty()) {
+                    kept.add(indexed);
+                } else if (!name.endsWith(".part") && kept.isEmpty()) {
+                    // Downloaded, but the index was not written before the crash
+                    kept.add(new Entry(fileId, sha256(file), size, Files.getLastModifiedTime(file).toMillis(), name));
+                } else {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        return kept;
+    }
+
+    private Map<Integer, Entry> readIndex() {
+        Map<Integer, Entry> indexed = new LinkedHashMap<>();
+        if (!Files.exists(index)) {
+            return indexed;
+        }
+        try {
+            List<String> lines = Files.readAllLines(index, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !INDEX_HEADER.equals(lines.get(0))) {
+                throw new IOException("unknown format");
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                String[] parts = line.split(" ", 5);
+                Entry entry = new Entry(Integer.parseInt(parts[0]), parts[1], Long.parseLong(parts[2]),
+                    Long.parseLong(parts[3]), parts[4]);
+                indexed.put(entry.fileId(), entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("View cache: index unreadable (" + e.getMessage() + "), rebuilding from " + dir);
+            indexed.clear();
+        }
+        return indexed;
+    }
+
+    // Write the whole index to a temp file and rename it over the old one
+    private void saveIndex() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(INDEX_HEADER);
+        for (Entry entry : entries.values()) {
+            lines.add(entry.fileId() + " " + entry.hash() + " " + entry.size() + " " + entry.lastAccess()
+                + " " + entry.name());
+        }
+        Path temp = Files.createTempFile(dir, "index-", ".tmp");
+        try {
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // ---------------- Helpers ----------------
+
+    private Path pathOf(Entry entry) {
+        return dir.resolve(Integer.toString(entry.fileId())).resolve(entry.name());
+    }
+
+    private void deleteDirIfEmpty(Path fileDir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(fileDir)) {
+            if (files.iterator().hasNext()) {
+                return;
+            }
+        }
+        Files.deleteIfExists(fileDir);
+    }
+
+    // A file name that stays inside the file's directory on every platform
+    private static String safeName(String filename) {
+        String name = filename == null ? "" : filename.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").strip();
+        if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+            name = "file";
+        }
+        return name.length() > 200 ? name.substring(name.length() - 200) : name;
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest = BlobTransferService.sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
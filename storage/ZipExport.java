@@ -0,0 +1,153 @@
+package storage;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a ZIP archive straight to disk, one entry at a time
+ *
+ * Entries are copied through a fixed buffer, so memory use does not depend on the
+ * number or size of the files. The first bytes of each entry are sampled
+ * (BlobCompression.compresses): content that is already compressed, like most PDFs,
+ * is written at Deflater.NO_COMPRESSION (stored blocks, no CPU spent), the rest is
+ * deflated at the blob store's level.
+ *
+ * The archive is written to <target>.part and renamed over target by finish();
+ * close() without finish() deletes it, so a cancelled export leaves nothing behind.
+ *
+ * Usage:
+ * try (ZipExport zip = new ZipExport(target, compression)) {
+ *     zip.add("Group/Semester 3/notes.pdf", in);
+ *     ...
+ *     zip.finish();
+ * }
+ */
+public final class ZipExport implements Closeable {
+    private static final int SAMPLE_BYTES = 16 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path target;
+    private final Path part;
+    private final BlobCompression compression;
+    private final FileChannel channel;
+    private final ZipOutputStream zip;
+    private final Set<String> names = new HashSet<>();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int entries;
+    private int entriesDeflated;
+    private long bytesIn;
+    private boolean finished;
+
+    public ZipExport(Path target, BlobCompression compression) throws IOException {
+        this.target = target;
+        this.part = target.resolveSibling(target.getFileName() + ".part");
+        this.compression = compression;
+        this.channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+        this.zip = new ZipOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+    }
+
+    /**
+     * Add one entry, read from content to its end (content is not closed)
+     *
+     * @param name path inside the archive; made unique with " (2)", " (3)", ... if taken
+     */
+    public void add(String name, InputStream content) throws IOException {
+        int sampled = content.readNBytes(buffer, 0, SAMPLE_BYTES);
+        boolean deflate = compression.compresses(buffer, sampled);
+        zip.setLevel(deflate ? compression.getLevel() : Deflater.NO_COMPRESSION);
+        zip.putNextEntry(new ZipEntry(uniqueName(name)));
+        zip.write(buffer, 0, sampled);
+        long written = sampled;
+        for (int n; (n = content.read(buffer)) >= 0; ) {
+            zip.write(buffer, 0, n);
+            written += n;
+        }
+        zip.closeEntry();
+        entries++;
+        if (deflate) {
+            entriesDeflated++;
+        }
+        bytesIn += written;
+    }
+
+    /**
+     * Complete the archive and move it to target
+     */
+    public void finish() throws IOException {
+        zip.finish();
+        zip.flush();
+        channel.force(false);
+        zip.close();
+        finished = true;
+        try {
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        try {
+            zip.close();
+        } catch (IOException ignored) {
+            // the partial archive is deleted either way
+        } finally {
+            channel.close();
+            Files.deleteIfExists(part);
+        }
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public int getEntriesDeflated() {
+        return entriesDeflated;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    // ---------------- Helpers ----------------
+
+    private String uniqueName(String name) {
+        String unique = name;
+        int dot = name.lastIndexOf('.');
+        boolean hasExtension = dot > name.lastIndexOf('/') + 1;
+        for (int copy = 2; !names.add(unique); copy++) {
+            unique = hasExtension
+                ? name.substring(0, dot) + " (" + copy + ")" + name.substring(dot)
+                : name + " (" + copy + ")";
+        }
+        return unique;
+    }
+
+    /**
+     * A file or folder name that is safe as one path segment inside an archive
+     */
+    public static String segment(String name) {
+        String safe = name == null ? "" : name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").strip();
+        return safe.isEmpty() || safe.equals(".") || safe.equals("..") ? "_" : safe;
+    }
+}
@@ -0,0 +1,218 @@
+package tools;
+
+import db.CancelToken;
+import db.DBConnection;
+import db.QueryRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import repository.BlobRepository;
+import storage.BlobRef;
+import storage.BlobStore;
+import storage.LocalBlobStore;
+import storage.TransferProgress;
+import storage.TransferStream;
+
+/**
+ * Moves file contents out of files.filedata into the blob store
+ *
+ * Each row is copied into the store, checked against its stored length, and only then
+ * switched over (content_hash and file_size set, filedata cleared) in one transaction
+ * with its blob reference. Identical contents end up as one blob.
+ * The application can keep running: unmigrated rows are still served from filedata.
+ *
+ * Resuming: progress is the table itself. Stopping the tool (Ctrl+C) or a crash loses
+ * at most the row in flight; the next run picks up the rows that still have filedata.
+ * A blob written for a row whose UPDATE never happened is simply reused next time.
+ *
+ * Options:
+ * --max-mb-per-sec=N  throughput limit while reading blobs (default 10, 0 = unlimited)
+ * --batch=N           rows fetched per batch (default 50)
+ * --pause-ms=N        pause between rows to leave room for other traffic (default 0)
+ * --limit=N           stop after N rows (default: all)
+ *
+ * Usage:
+ * java -cp out:lib/* tools.BlobMigrator --max-mb-per-sec=20
+ * (uses -Dstudysync.blobstore.dir like the application)
+ */
+public class BlobMigrator {
+    private final BlobStore blobStore;
+    private final long maxBytesPerSecond;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final CancelToken stop = new CancelToken();
+
+    private long migrated;
+    private long bytesMoved;
+
+    public BlobMigrator(BlobStore blobStore, long maxBytesPerSecond, int batchSize, long pauseMillis) {
+        this.blobStore = blobStore;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    public static void main(String[] args) {
+        long maxMbPerSec = 10;
+        int batch = 50;
+        long pause = 0;
+        long limit = Long.MAX_VALUE;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            String value = kv.length > 1 ? kv[1] : "";
+            switch (kv[0]) {
+                case "--max-mb-per-sec" -> maxMbPerSec = Long.parseLong(value);
+                case "--batch" -> batch = Integer.parseInt(value);
+                case "--pause-ms" -> pause = Long.parseLong(value);
+                case "--limit" -> limit = Long.parseLong(value);
+                default -> {
+                    System.err.println("Unknown option: " + arg);
+                    System.err.println("Options: --max-mb-per-sec=N --batch=N --pause-ms=N --limit=N");
+                    System.exit(2);
+                }
+            }
+        }
+
+        BlobMigrator migrator = new BlobMigrator(LocalBlobStore.getDefault(),
+            maxMbPerSec * 1024 * 1024, batch, pause);
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            migrator.stop.cancel();
+            try {
+                main.join(30_000);
+            } catch (InterruptedException ignored) {
+                // exiting anyway
+            }
+        }, "blob-migrator-stop"));
+
+        try {
+            System.out.println("Migrating file contents to " + LocalBlobStore.getDefault());
+            migrator.printRemaining();
+            migrator.run(limit);
+            migrator.printRemaining();
+            System.out.println(LocalBlobStore.getDefault().getCompression());
+        } catch (SQLException | IOException e) {
+            System.err.println("Migration stopped: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Migrate up to limit rows, or until stopped
+     */
+    public void run(long limit) throws SQLException, IOException {
+        long lastId = 0;
+        long started = System.currentTimeMillis();
+        while (migrated < limit && !stop.isCancelled()) {
+            List<Integer> ids = nextBatch(lastId);
+            if (ids.isEmpty()) {
+                break;
+            }
+            for (int id : ids) {
+                if (migrated >= limit || stop.isCancelled()) {
+                    break;
+                }
+                migrate(id);
+                lastId = id;
+                pause();
+            }
+            long seconds = Math.max(1, (System.currentTimeMillis() - started) / 1000);
+            System.out.printf("Migrated %d files, %.1f MB (%.1f MB/s)%n",
+                migrated, bytesMoved / 1048576.0, bytesMoved / 1048576.0 / seconds);
+        }
+        System.out.println(stop.isCancelled() ? "Stopped; run again to continue" : "Done");
+    }
+
+    private List<Integer> nextBatch(long afterId) throws SQLException {
+        try (Connection conn = DBConnection.getWriteConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILES_INLINE_BATCH)) {
+            stmt.setLong(1, afterId);
+            stmt.setInt(2, batchSize);
+            ResultSet rs = stmt.executeQuery();
+            List<Integer> ids = new ArrayList<>();
+            while (rs.next()) {
+                ids.add(rs.getInt("id"));
+            }
+            return ids;
+        }
+    }
+
+    // Copy one row's contents into the store, then point the row at it
+    private void migrate(int id) throws SQLException, IOException {
+        try (Connection conn = DBConnection.getWriteConnection()) {
+            BlobRef blob;
+            boolean deleted;
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILE_INLINE_DATA)) {
+                stmt.setInt(1, id);
+                ResultSet rs = stmt.executeQuery();
+                if (!rs.next()) {
+                    return; // migrated or deleted meanwhile
+                }
+                deleted = rs.getBoolean("is_deleted");
+                long size = rs.getLong("size");
+                try (InputStream in = new TransferStream(rs.getBinaryStream("filedata"), size,
+                        TransferProgress.NONE, stop, maxBytesPerSecond)) {
+                    blob = blobStore.put(in);
+                }
+                if (blob.size() != size) {
+                    throw new IOException("File " + id + ": stored " + blob.size() + " of " + size + " bytes");
+                }
+            }
+
+            // Switch the row over and count its reference together
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILE_MOVE_TO_STORE)) {
+                stmt.setString(1, blob.hash());
+                stmt.setLong(2, blob.size());
+                stmt.setInt(3, id);
+                stmt.setBoolean(4, deleted); // deleted meanwhile: leave the row for the next run
+                if (stmt.executeUpdate() > 0) {
+                    if (deleted) {
+                        BlobRepository.register(conn, blob);
+                    } else {
+                        BlobRepository.addReference(conn, blob);
+                    }
+                    migrated++;
+                    bytesMoved += blob.size();
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (IOException e) {
+            if (stop.isCancelled()) {
+                return; // interrupted mid-copy; the row keeps its inline contents
+            }
+            throw e;
+        }
+    }
+
+    private void pause() {
+        if (pauseMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop.cancel();
+        }
+    }
+
+    private void printRemaining() throws SQLException {
+        try (Connection conn = DBConnection.getWriteConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.FILES_INLINE_REMAINING)) {
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                System.out.printf("Remaining inline: %d files, %.1f MB%n",
+                    rs.getLong("files"), rs.getLong("bytes") / 1048576.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package tools;
+
+import db.CancelToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import repository.Branch;
+import repository.FileRepository;
+import repository.ReferenceDataRepository;
+import repository.StoredFile;
+import repository.StudyGroup;
+import repository.UploadRequest;
+import storage.BlobRef;
+import storage.BlobStore;
+import storage.LocalBlobStore;
+import storage.TransferProgress;
+import storage.TransferStream;
+
+/**
+ * Loads a directory tree of PDFs without the upload dialog
+ *
+ * Layout:
+ * <root>/<group>/<branch>/<semester>/<CODE - Subject Name>/*.pdf
+ * Group and branch folders may use the code or the name (any case); the semester
+ * folder may be "3", "S3" or "Semester 3". Subjects are created on first use exactly
+ * as an upload from the dialog creates them.
+ *
+ * Pipeline:
+ * - A bounded pool of workers reads each file and stores it in the blob store
+ *   (hashing and, where it pays off, compressing it on the way)
+ * - One writer records the stored files in batches, one transaction per batch;
+ *   a failing batch is retried file by file so one bad file does not hold up the rest
+ * Blobs are written before their rows, so a row never points at missing content.
+ * The queues between the stages are bounded: memory use does not depend on the tree size.
+ *
+ * Resuming: every committed batch is appended to the manifest (path, size, modified
+ * time, file tag) and flushed to disk. A rerun skips files listed there unchanged.
+ * Stopping (Ctrl+C) or a crash loses at most the batch in flight; a file already in
+ * its subject under the same name and content is not added again.
+ *
+ * Options:
+ * --uploaded-by=USER  account recorded as uploader (required)
+ * --workers=N         files read and stored in parallel (default 4)
+ * --batch=N           files recorded per transaction (default 50)
+ * --manifest=PATH     resume manifest (default <root>/.studysync-ingest)
+ * --dry-run           only list what would be imported
+ *
+ * Usage:
+ * java -cp out:lib/* tools.BulkIngest /srv/semester-start --uploaded-by=admin --workers=8
+ * (uses -Dstudysync.blobstore.dir like the application)
+ */
+public class BulkIngest {
+    private static final Pattern SEMESTER = Pattern.compile("(?i)(?:s|sem|semester)?\\s*(\\d{1,2})");
+    private static final Pattern SUBJECT = Pattern.compile("(\\S+)\\s+-\\s+(.+)");
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+
+    private final Path root;
+    private final String uploadedBy;
+    private final int workers;
+    private final int batchSize;
+    private final Path manifest;
+    private final BlobStore blobStore;
+    private final FileRepository fileRepository;
+    private final CancelToken stop = new CancelToken();
+
+    private final LongAdder filesStored = new LongAdder();
+    private final LongAdder bytesStored = new LongAdder();
+    private final AtomicInteger failed = new AtomicInteger();
+    private long filesRecorded;
+    private long bytesRecorded;
+    private long duplicates;
+    private long skipped;
+
+    // A file found in the tree, with where it belongs
+    private record Candidate(Path file, String relative, long size, long modified, UploadRequest request) {
+    }
+
+    // A candidate whose content is in the blob store; blob == null marks the end of the stream
+    private record Stored(Candidate candidate, BlobRef blob) {
+    }
+
+    public BulkIngest(Path root, String uploadedBy, int workers, int batchSize, Path manifest, BlobStore blobStore) {
+        this.root = root;
+        this.uploadedBy = uploadedBy;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.manifest = manifest;
+        this.blobStore = blobStore;
+        this.fileRepository = new FileRepository(blobStore);
+    }
+
+    public static void main(String[] args) {
+        Path root = null;
+        String uploadedBy = null;
+        int workers = 4;
+        int batch = 50;
+        Path manifest = null;
+        boolean dryRun = false;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            String value = kv.length > 1 ? kv[1] : "";
+            switch (kv[0]) {
+                case "--uploaded-by" -> uploadedBy = value;
+                case "--workers" -> workers = Integer.parseInt(value);
+                case "--batch" -> batch = Integer.parseInt(value);
+                case "--manifest" -> manifest = Paths.get(value);
+                case "--dry-run" -> dryRun = true;
+                default -> {
+                    if (arg.startsWith("--") || root != null) {
+                        usage("Unknown option: " + arg);
+                    }
+                    root = Paths.get(arg);
+                }
+            }
+        }
+        if (root == null || !Files.isDirectory(root)) {
+            usage("Give the directory to import");
+        }
+        if (uploadedBy == null || uploadedBy.isBlank()) {
+            usage("--uploaded-by is required");
+        }
+
+        BulkIngest ingest = new BulkIngest(root, uploadedBy, Math.max(1, workers), Math.max(1, batch),
+            manifest != null ? manifest : root.resolve(".studysync-ingest"), LocalBlobStore.getDefault());
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            ingest.stop.cancel();
+            try {
+                main.join(30_000);
+            } catch (InterruptedException ignored) {
+                // exiting anyway
+            }
+        }, "bulk-ingest-stop"));
+
+        try {
+            List<Candidate> candidates = ingest.scan();
+            if (dryRun) {
+                ingest.printPlan(candidates);
+            } else {
+                System.out.println("Importing " + candidates.size() + " files into " + LocalBlobStore.getDefault());
+                ingest.run(candidates);
+                System.out.println(LocalBlobStore.getDefault().getCompression());
+            }
+        } catch (SQLException | IOException e) {
+            System.err.println("Import stopped: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.err.println("Import interrupted");
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: tools.BulkIngest <dir> --uploaded-by=USER [--workers=N] [--batch=N] "
+            + "[--manifest=PATH] [--dry-run]");
+        System.exit(2);
+    }
+
+    // ---------------- Scan ----------------
+
+    /**
+     * Every PDF in the tree that is not yet in the manifest, in path order
+     */
+    private List<Candidate> scan() throws SQLException, IOException {
+        ReferenceDataRepository referenceData = new ReferenceDataRepository();
+        List<StudyGroup> groups = referenceData.findActiveGroups();
+        List<Branch> branches = referenceData.findActiveBranches();
+        Set<String> done = readManifest();
+
+        List<Candidate> candidates = new ArrayList<>();
+        Set<Path> reported = new HashSet<>();
+        List<Path> pdfs;
+        try (Stream<Path> walk = Files.walk(root, 5)) {
+            pdfs = walk.filter(p -> p.getNameCount() - root.getNameCount() == 5)
+                .filter(p -> p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf"))
+                .filter(Files::isRegularFile)
+                .sorted()
+                .toList();
+        }
+        for (Path pdf : pdfs) {
+            Path relative = root.relativize(pdf);
+            Path subjectDir = pdf.getParent();
+            String group = matchGroup(groups, relative.getName(0).toString());
+            String branch = matchBranch(branches, relative.getName(1).toString());
+            Matcher semester = SEMESTER.matcher(relative.getName(2).toString());
+            Matcher subject = SUBJECT.matcher(relative.getName(3).toString());
+            if (group == null || branch == null || !semester.matches() || !subject.matches()) {
+                if (reported.add(subjectDir)) {
+                    System.err.println("Skipping " + root.relativize(subjectDir) + ": "
+                        + (group == null ? "unknown group" : branch == null ? "unknown branch"
+                        : !semester.matches() ? "semester folder is not a number" : "expected \"CODE - Subject Name\""));
+                }
+                continue;
+            }
+            long size = Files.size(pdf);
+            long modified = Files.getLastModifiedTime(pdf).toMillis();
+            String key = manifestKey(relative, size, modified);
+            if (done.contains(key)) {
+                skipped++;
+                continue;
+            }
+            UploadRequest request = new UploadRequest(group, branch, Integer.parseInt(semester.group(1)),
+                subject.group(2).strip(), subject.group(1).toUpperCase(Locale.ROOT), pdf, uploadedBy);
+            candidates.add(new Candidate(pdf, key.substring(0, key.indexOf('\t')), size, modified, request));
+        }
+        return candidates;
+    }
+
+    // The group's name as the repository looks it up
+    private static String matchGroup(List<StudyGroup> groups, String folder) {
+        for (StudyGroup group : groups) {
+            if (group.code().equalsIgnoreCase(folder) || group.name().equalsIgnoreCase(folder)) {
+                return group.name();
+            }
+        }
+        return null;
+    }
+
+    private static String matchBranch(List<Branch> branches, String folder) {
+        for (Branch branch : branches) {
+            if (branch.code().equalsIgnoreCase(folder) || branch.name().equalsIgnoreCase(folder)) {
+                return branch.name();
+            }
+        }
+        return null;
+    }
+
+    private void printPlan(List<Candidate> candidates) {
+        long bytes = 0;
+        for (Candidate candidate : candidates) {
+            UploadRequest request = candidate.request();
+            System.out.printf("%s -> %s / %s / semester %d / %s %s%n", candidate.relative(), request.groupName(),
+                request.branchName(), request.semester(), request.courseCode(), request.subjectName());
+            bytes += candidate.size();
+        }
+        System.out.printf("Dry run: %d files, %.1f MB would be imported; %d already in the manifest%n",
+            candidates.size(), bytes / 1048576.0, skipped);
+    }
+
+    // ---------------- Pipeline ----------------
+
+    /**
+     * Store and record the candidates, or as many as possible before a stop
+     */
+    private void run(List<Candidate> candidates) throws InterruptedException, IOException {
+        long started = System.currentTimeMillis();
+        BlockingQueue<Stored> stored = new ArrayBlockingQueue<>(batchSize * 2);
+        // Full queue: the submitting thread reads the next file itself, which slows the scan down
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(workers * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        IOException[] writerFailure = new IOException[1];
+        Thread writer = new Thread(() -> {
+            try {
+                record(stored, started);
+            } catch (IOException e) {
+                writerFailure[0] = e;
+                stop.cancel();
+            } catch (InterruptedException e) {
+                stop.cancel();
+            }
+        }, "bulk-ingest-writer");
+        writer.start();
+
+        try {
+            for (Candidate candidate : candidates) {
+                if (stop.isCancelled()) {
+                    break;
+                }
+                pool.execute(() -> store(candidate, stored));
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            Stored end = new Stored(null, null);
+            while (writer.isAlive() && !stored.offer(end, 1, TimeUnit.SECONDS)) {
+                // writer still busy with a full queue
+            }
+            writer.join();
+        }
+        if (writerFailure[0] != null) {
+            throw writerFailure[0];
+        }
+
+        report(started);
+        System.out.println(stop.isCancelled() ? "Stopped; run again to continue" : "Done");
+    }
+
+    // Worker: read, hash, compress and write the content
+    private void store(Candidate candidate, BlockingQueue<Stored> stored) {
+        if (stop.isCancelled()) {
+            return;
+        }
+        try (InputStream in = new TransferStream(Files.newInputStream(candidate.file()), candidate.size(),
+                TransferProgress.NONE, stop)) {
+            BlobRef blob = blobStore.put(in);
+            filesStored.increment();
+            bytesStored.add(blob.size());
+            // The writer cancels the stop token if it gives up, so this never waits forever
+            while (!stored.offer(new Stored(candidate, blob), 1, TimeUnit.SECONDS)) {
+                if (stop.isCancelled()) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            if (!stop.isCancelled()) {
+                failed.incrementAndGet();
+                System.err.println("Failed to read " + candidate.relative() + ": " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop.cancel();
+        }
+    }
+
+    // Writer: record stored files in batches until the end marker arrives
+    private void record(BlockingQueue<Stored> stored, long started) throws IOException, InterruptedException {
+        long lastProgress = System.currentTimeMillis();
+        List<Stored> batch = new ArrayList<>(batchSize);
+        boolean end = false;
+        while (!end) {
+            Stored next = stored.take();
+            batch.clear();
+            while (next.blob() != null) {
+                batch.add(next);
+                if (batch.size() >= batchSize || (next = stored.poll()) == null) {
+                    break;
+                }
+            }
+            end = next != null && next.blob() == null;
+            if (!batch.isEmpty()) {
+                recordBatch(batch);
+            }
+            if (System.currentTimeMillis() - lastProgress >= PROGRESS_INTERVAL_MS) {
+                lastProgress = System.currentTimeMillis();
+                report(started);
+            }
+        }
+    }
+
+    private void recordBatch(List<Stored> batch) throws IOException {
+        List<StoredFile> files = new ArrayList<>(batch.size());
+        for (Stored item : batch) {
+            files.add(new StoredFile(item.candidate().request(), item.blob()));
+        }
+        try {
+            appendToManifest(batch, fileRepository.insertBatch(files));
+            return;
+        } catch (SQLException | IllegalArgumentException e) {
+            if (batch.size() == 1) {
+                failed.incrementAndGet();
+                System.err.println("Failed to record " + batch.get(0).candidate().relative() + ": " + e.getMessage());
+                return;
+            }
+        }
+        // Find the file that failed the batch; the others go in one by one
+        for (Stored item : batch) {
+            recordBatch(List.of(item));
+        }
+    }
+
+    // ---------------- Manifest ----------------
+
+    private Set<String> readManifest() throws IOException {
+        Set<String> done = new HashSet<>();
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                int tag = line.lastIndexOf('\t');
+                if (tag > 0) {
+                    done.add(line.substring(0, tag));
+                }
+            }
+        }
+        return done;
+    }
+
+    // Written and forced to disk only after the batch committed
+    private void appendToManifest(List<Stored> batch, List<String> tags) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            Candidate candidate = batch.get(i).candidate();
+            String tag = tags.get(i);
+            if (tag == null) {
+                duplicates++;
+            } else {
+                filesRecorded++;
+                bytesRecorded += candidate.size();
+            }
+            lines.append(manifestKey(root.relativize(candidate.file()), candidate.size(), candidate.modified()))
+                .append('\t').append(tag == null ? "-" : tag).append('\n');
+        }
+        try (FileChannel channel = FileChannel.open(manifest, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    // Path with '/' separators, size and modified time: a changed file is imported again
+    private static String manifestKey(Path relative, long size, long modified) {
+        return relative.toString().replace('\\', '/') + "\t" + size + "\t" + modified;
+    }
+
+    // ---------------- Report ----------------
+
+    private void report(long started) {
+        double seconds = Math.max(0.001, (System.currentTimeMillis() - started) / 1000.0);
+        System.out.printf("Imported %d files, %.1f MB (%.1f files/s, %.1f MB/s); stored %d, "
+                + "%d already present, %d skipped (manifest), %d failed%n",
+            filesRecorded, bytesRecorded / 1048576.0, filesRecorded / seconds, bytesRecorded / 1048576.0 / seconds,
+            filesStored.sum(), duplicates, skipped, failed.get());
+    }
+}
@@ -0,0 +1,101 @@
+package tools;
+
+import db.CancelToken;
+import db.DBConnection;
+import db.QueryRegistry;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Optional;
+import repository.StorageReclaimer;
+import storage.LocalBlobStore;
+
+/**
+ * Runs the storage reclaimer once, e.g. from cron on a machine that does not run the UI
+ *
+ * Same work as the application's background reclaimer (see StorageReclaimer), with the
+ * limits given on the command line. If another client is reclaiming at the moment (it
+ * holds the reclaim lease), nothing is done and the exit status is 4. With --compact, the files table is rebuilt
+ * afterwards (OPTIMIZE TABLE, online in InnoDB) so the space of cleared inline contents
+ * is returned to the file system, not just reused. Rebuilding copies the whole table:
+ * schedule it for a quiet hour.
+ *
+ * Options:
+ * --retention-days=N  age of a deletion before its space is reclaimed (default 30)
+ * --max-mb-per-sec=N  limit on reclaimed bytes per second (default 20, 0 = unlimited)
+ * --batch=N           rows per batch (default 20)
+ * --compact           rebuild the files table if inline contents were cleared
+ *
+ * Usage:
+ * java -cp out:lib/* tools.Reclaim --retention-days=30 --compact
+ * (uses -Dstudysync.blobstore.dir like the application)
+ */
+public class Reclaim {
+
+    public static void main(String[] args) {
+        long retentionDays = Long.getLong("studysync.reclaim.retentionDays", 30);
+        long maxMbPerSec = Long.getLong("studysync.reclaim.maxMbPerSec", 20);
+        int batch = Integer.getInteger("studysync.reclaim.batchSize", 20);
+        boolean compact = false;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            String value = kv.length > 1 ? kv[1] : "";
+            switch (kv[0]) {
+                case "--retention-days" -> retentionDays = Long.parseLong(value);
+                case "--max-mb-per-sec" -> maxMbPerSec = Long.parseLong(value);
+                case "--batch" -> batch = Integer.parseInt(value);
+                case "--compact" -> compact = true;
+                default -> {
+                    System.err.println("Unknown option: " + arg);
+                    System.err.println("Options: --retention-days=N --max-mb-per-sec=N --batch=N --compact");
+                    System.exit(2);
+                }
+            }
+        }
+
+        StorageReclaimer reclaimer = new StorageReclaimer(LocalBlobStore.getDefault(), retentionDays * 86400,
+            Long.getLong("studysync.reclaim.orphanGraceHours", 24) * 3600_000, batch,
+            maxMbPerSec * 1024 * 1024, Long.getLong("studysync.reclaim.pauseMs", 500));
+        CancelToken stop = new CancelToken();
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop.cancel();
+            try {
+                main.join(30_000);
+            } catch (InterruptedException ignored) {
+                // exiting anyway
+            }
+        }, "reclaim-stop"));
+
+        try {
+            Optional<StorageReclaimer.Report> ran = reclaimer.runExclusively(stop);
+            if (ran.isEmpty()) {
+                System.err.println("Another client is reclaiming right now; try again later");
+                System.exit(4);
+            }
+            StorageReclaimer.Report report = ran.get();
+            System.out.println(report);
+            if (compact && report.inlineFiles() > 0 && !stop.isCancelled()) {
+                compactFiles();
+            }
+        } catch (SQLException | IOException e) {
+            System.err.println("Reclaim stopped: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void compactFiles() throws SQLException {
+        System.out.println("Rebuilding the files table...");
+        long started = System.currentTimeMillis();
+        try (Connection conn = DBConnection.getWriteConnection();
+             PreparedStatement stmt = QueryRegistry.prepare(conn, QueryRegistry.RECLAIM_COMPACT_FILES)) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                System.out.println("  " + rs.getString("Msg_type") + ": " + rs.getString("Msg_text"));
+            }
+        }
+        System.out.printf("Done in %.1f s%n", (System.currentTimeMillis() - started) / 1000.0);
+    }
+}
@@ -0,0 +1,87 @@
+package tools;
+
+import db.CancelToken;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import repository.StorageScrubber;
+import storage.LocalBlobStore;
+
+/**
+ * Runs the integrity scrubber once, or lists the files it found damaged
+ *
+ * Same work as the application's background scrubber (see StorageScrubber), with the
+ * limits given on the command line. Run it on one host that sees the shared blob store.
+ * If another client is scrubbing at the moment (it holds the scrub lease), nothing is
+ * verified and the exit status is 4. Stopping it (Ctrl+C) is safe: the next run continues
+ * with the blobs not verified yet.
+ *
+ * Options:
+ * --reverify-days=N   verify blobs last checked more than N days ago (default 30, 0 = all)
+ * --max-mb-per-sec=N  limit on bytes read per second (default 10, 0 = unlimited)
+ * --report            only list live files whose content is corrupt or missing
+ *
+ * Usage:
+ * java -cp out:lib/* tools.Scrub --max-mb-per-sec=50
+ * java -cp out:lib/* tools.Scrub --report
+ * (uses -Dstudysync.blobstore.dir like the application)
+ */
+public class Scrub {
+
+    public static void main(String[] args) {
+        long reverifyDays = Long.getLong("studysync.scrub.reverifyDays", 30);
+        long maxMbPerSec = Long.getLong("studysync.scrub.maxMbPerSec", 10);
+        boolean reportOnly = false;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            String value = kv.length > 1 ? kv[1] : "";
+            switch (kv[0]) {
+                case "--reverify-days" -> reverifyDays = Long.parseLong(value);
+                case "--max-mb-per-sec" -> maxMbPerSec = Long.parseLong(value);
+                case "--report" -> reportOnly = true;
+                default -> {
+                    System.err.println("Unknown option: " + arg);
+                    System.err.println("Options: --reverify-days=N --max-mb-per-sec=N --report");
+                    System.exit(2);
+                }
+            }
+        }
+
+        StorageScrubber scrubber = new StorageScrubber(LocalBlobStore.getDefault(), reverifyDays * 86400,
+            maxMbPerSec * 1024 * 1024, Double.parseDouble(System.getProperty("studysync.scrub.slowdownFactor", "3")),
+            Integer.getInteger("studysync.scrub.batchSize", 50));
+        CancelToken stop = new CancelToken();
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop.cancel();
+            try {
+                main.join(30_000);
+            } catch (InterruptedException ignored) {
+                // exiting anyway
+            }
+        }, "scrub-stop"));
+
+        try {
+            if (!reportOnly) {
+                Optional<StorageScrubber.Report> ran = scrubber.runExclusively(stop);
+                if (ran.isEmpty()) {
+                    System.err.println("Another client is scrubbing right now; try again later");
+                    System.exit(4);
+                }
+                System.out.println(ran.get());
+            }
+            List<StorageScrubber.Finding> damaged = scrubber.findDamaged();
+            System.out.println(damaged.isEmpty() ? "No damaged files" : damaged.size() + " damaged files:");
+            for (StorageScrubber.Finding finding : damaged) {
+                System.out.println("  " + finding);
+            }
+            if (!damaged.isEmpty()) {
+                System.exit(3);
+            }
+        } catch (SQLException | IOException e) {
+            System.err.println("Scrub stopped: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
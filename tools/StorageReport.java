@@ -0,0 +1,60 @@
+package tools;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import repository.BlobRepository;
+import repository.StorageStats;
+import storage.LocalBlobStore;
+
+/**
+ * Prints how much storage deduplication saves
+ *
+ * Reports live files and their total (logical) size, the distinct blobs actually stored,
+ * the space saved, blobs only used by deleted files, contents still inline in
+ * files.filedata, and the shared blobs that save the most. The blob store directory
+ * is measured too, showing what compression and shared chunks save on top.
+ *
+ * Usage:
+ * java -cp out:lib/* tools.StorageReport [top]
+ */
+public class StorageReport {
+
+    public static void main(String[] args) {
+        int top = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        try {
+            StorageStats stats = new BlobRepository().findStorageStats(top);
+            System.out.println(format(stats));
+            long onDisk = LocalBlobStore.getDefault().diskUsage();
+            System.out.printf("On disk:           %s (compression and shared chunks save %s)%n",
+                mb(onDisk), mb(stats.storedBytes() - onDisk));
+        } catch (SQLException | IOException e) {
+            System.err.println("Could not read storage statistics: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public static String format(StorageStats stats) {
+        StringBuilder sb = new StringBuilder("---- Storage ----\n");
+        sb.append(String.format("Live files:        %,d (%s)%n", stats.liveFiles(), mb(stats.logicalBytes())));
+        sb.append(String.format("Stored blobs:      %,d (%s)%n", stats.blobs(), mb(stats.storedBytes())));
+        sb.append(String.format("Saved by dedup:    %s (%.2fx)%n", mb(stats.savedBytes()), stats.dedupRatio()));
+        sb.append(String.format("Unreferenced:      %,d blobs (%s reclaimable)%n",
+            stats.unreferencedBlobs(), mb(stats.unreferencedBytes())));
+        if (stats.inlineFiles() > 0) {
+            sb.append(String.format("Still inline:      %,d files (%s), run tools.BlobMigrator%n",
+                stats.inlineFiles(), mb(stats.inlineBytes())));
+        }
+        if (!stats.mostShared().isEmpty()) {
+            sb.append("---- Most shared ----\n");
+            for (StorageStats.SharedBlob blob : stats.mostShared()) {
+                sb.append(String.format("%3dx %10s saves %10s  %s (%s)%n", blob.references(), mb(blob.size()),
+                    mb(blob.savedBytes()), blob.filename(), blob.hash().substring(0, 12)));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String mb(long bytes) {
+        return String.format("%.1f MB", bytes / 1048576.0);
+    }
+}
@@ -0,0 +1,72 @@
+package tools;
+
+import db.CancelToken;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import storage.LocalBlobStore;
+
+/**
+ * Moves cold file contents of the blob store into pack segments, e.g. nightly from cron
+ *
+ * Whole blobs and chunks nobody has read or written for the given number of days are
+ * appended to pack segments and their loose files deleted (see
+ * LocalBlobStore.tierCold). Files keep opening as before; content that is read again
+ * is promoted back to the hot tier. Does not need the database.
+ *
+ * Options:
+ * --cold-days=N       days without access before an object is packed
+ *                     (default -Dstudysync.blobstore.coldAfterDays, 30)
+ * --pack-mb=N         size of one pack segment (default -Dstudysync.blobstore.packSizeMb, 256)
+ * --max-mb-per-sec=N  limit on packed bytes per second (default 50, 0 = unlimited)
+ *
+ * Usage:
+ * java -cp out:lib/* tools.Tiering --cold-days=60
+ * (uses -Dstudysync.blobstore.dir like the application)
+ */
+public class Tiering {
+
+    public static void main(String[] args) {
+        long coldDays = Long.getLong("studysync.blobstore.coldAfterDays", 30);
+        long packMb = Long.getLong("studysync.blobstore.packSizeMb", 256);
+        long maxMbPerSec = 50;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            String value = kv.length > 1 ? kv[1] : "";
+            switch (kv[0]) {
+                case "--cold-days" -> coldDays = Long.parseLong(value);
+                case "--pack-mb" -> packMb = Long.parseLong(value);
+                case "--max-mb-per-sec" -> maxMbPerSec = Long.parseLong(value);
+                default -> {
+                    System.err.println("Unknown option: " + arg);
+                    System.err.println("Options: --cold-days=N --pack-mb=N --max-mb-per-sec=N");
+                    System.exit(2);
+                }
+            }
+        }
+
+        LocalBlobStore store = LocalBlobStore.getDefault();
+        CancelToken stop = new CancelToken();
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop.cancel();
+            try {
+                main.join(30_000);
+            } catch (InterruptedException ignored) {
+                // exiting anyway
+            }
+        }, "tiering-stop"));
+
+        try {
+            long started = System.currentTimeMillis();
+            LocalBlobStore.TierResult result = store.tierCold(TimeUnit.DAYS.toMillis(coldDays),
+                packMb * 1024 * 1024, maxMbPerSec * 1024 * 1024, stop);
+            System.out.printf("Packed %d objects (%.1f MB) into %d segments in %.1f s%s%n",
+                result.objects(), result.bytes() / 1048576.0, result.packs(),
+                (System.currentTimeMillis() - started) / 1000.0, stop.isCancelled() ? " (stopped early)" : "");
+            System.out.printf("%s now takes %.1f MB on disk%n", store, store.diskUsage() / 1048576.0);
+        } catch (IOException e) {
+            System.err.println("Tiering stopped: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}